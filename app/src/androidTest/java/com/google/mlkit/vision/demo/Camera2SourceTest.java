@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.media.Image;
+import androidx.camera.core.ImageProxy;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.rules.ActivityScenarioRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.rule.GrantPermissionRule;
+import com.google.mlkit.vision.demo.java.ChooserActivity;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Runs {@link Camera2Source} on the camera of the device, with a processor that hands every image
+ * back from another thread, as detectors do.
+ */
+@RunWith(AndroidJUnit4.class)
+public class Camera2SourceTest {
+
+	private static final int IMAGES_PER_RUN = 10;
+	private static final long TIMEOUT_MS = 10_000;
+
+	@Rule
+	public final GrantPermissionRule cameraPermission =
+			GrantPermissionRule.grant(Manifest.permission.CAMERA);
+
+	@Rule
+	public final ActivityScenarioRule<ChooserActivity> activityRule =
+			new ActivityScenarioRule<>(ChooserActivity.class);
+
+	private Activity activity;
+	private GraphicOverlay graphicOverlay;
+	private final ExecutorService processorExecutor = Executors.newSingleThreadExecutor();
+
+	@Before
+	public void setUp() {
+		assumeTrue(
+				ApplicationProvider.getApplicationContext()
+						.getPackageManager()
+						.hasSystemFeature(PackageManager.FEATURE_CAMERA_ANY));
+		activityRule
+				.getScenario()
+				.onActivity(
+						activity -> {
+							this.activity = activity;
+							graphicOverlay = new GraphicOverlay(activity, /* attrs= */ null);
+						});
+	}
+
+	@After
+	public void tearDown() {
+		processorExecutor.shutdownNow();
+	}
+
+	@Test
+	@SuppressWarnings("MissingPermission") // Granted by cameraPermission.
+	public void startAndStop_passesImagesToProcessorAndGetsThemAllBack() throws Exception {
+		RecordingProcessor processor = new RecordingProcessor();
+		Camera2Source source = new Camera2Source(activity, graphicOverlay);
+		source.setMachineLearningFrameProcessor(processor);
+
+		// Twice, since a stopped source must be able to start again.
+		for (int run = 0; run < 2; run++) {
+			CountDownLatch images = processor.expectImages(IMAGES_PER_RUN);
+			source.start();
+			try {
+				assertTrue("Too few images received", images.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+			} finally {
+				source.stop();
+			}
+			assertNull("Not a YUV_420_888 image", processor.error.get());
+			assertNotNull(source.getPreviewSize());
+		}
+
+		source.release();
+		assertTrue(
+				"The processor was not stopped after it handed back all images",
+				processor.stopped.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+		assertEquals(0, processor.heldImages.get());
+	}
+
+	/**
+	 * Checks the images it gets and hands them back on its own thread.
+	 */
+	private class RecordingProcessor implements VisionImageProcessor {
+
+		final AtomicInteger heldImages = new AtomicInteger();
+		final AtomicReference<String> error = new AtomicReference<>();
+		final CountDownLatch stopped = new CountDownLatch(1);
+		private volatile CountDownLatch expectedImages = new CountDownLatch(0);
+
+		CountDownLatch expectImages(int count) {
+			expectedImages = new CountDownLatch(count);
+			return expectedImages;
+		}
+
+		@Override
+		public void processMediaImage(
+				Image image,
+				int rotationDegrees,
+				GraphicOverlay graphicOverlay,
+				ImageReleaseCallback releaseCallback) {
+			heldImages.incrementAndGet();
+			if (image.getFormat() != ImageFormat.YUV_420_888 || image.getPlanes().length != 3) {
+				error.compareAndSet(null, "format " + image.getFormat());
+			}
+			processorExecutor.execute(
+					() -> {
+						expectedImages.countDown();
+						heldImages.decrementAndGet();
+						releaseCallback.onImageReleased(image);
+					});
+		}
+
+		@Override
+		public void stop() {
+			stopped.countDown();
+		}
+
+		@Override
+		public void processBitmap(Bitmap bitmap, GraphicOverlay graphicOverlay) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void processVideoFrame(Bitmap bitmap, GraphicOverlay graphicOverlay) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void processByteBuffer(
+				ByteBuffer data,
+				FrameMetadata frameMetadata,
+				GraphicOverlay graphicOverlay,
+				BufferReleaseCallback releaseCallback) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void processImageProxy(ImageProxy image, GraphicOverlay graphicOverlay) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Debug;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.mlkit.vision.demo.java.objectdetector.ObjectGraphic;
+import com.google.mlkit.vision.objects.DetectedObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the allocations of drawing results with the shared {@link GraphicStyles} to those of
+ * graphics that build their own Paints, as object and face graphics did before.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GraphicStylesAllocationTest {
+
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 480;
+	private static final int NUM_OBJECTS = 5;
+	private static final int WARM_UP_FRAMES = 10;
+	private static final int MEASURED_FRAMES = 30;
+	// Paints an object graphic built in its constructor: text, box and label per color.
+	private static final int PAINTS_PER_OLD_OBJECT_GRAPHIC = 3 * GraphicStyles.NUM_COLORS;
+
+	private final List<DetectedObject> objects = new ArrayList<>();
+	private GraphicOverlay graphicOverlay;
+	private Bitmap bitmap;
+	private Canvas canvas;
+	private InferenceInfoGraphic inferenceInfoGraphic;
+
+	@Before
+	public void setUp() {
+		Context context = ApplicationProvider.getApplicationContext();
+		InstrumentationRegistry.getInstrumentation()
+				.runOnMainSync(
+						() -> {
+							graphicOverlay = new GraphicOverlay(context, /* attrs= */ null);
+							graphicOverlay.layout(0, 0, WIDTH, HEIGHT);
+							graphicOverlay.setImageSourceInfo(WIDTH, HEIGHT, /* isFlipped= */ false);
+						});
+		bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+		canvas = new Canvas(bitmap);
+		for (int i = 0; i < NUM_OBJECTS; i++) {
+			Rect box = new Rect(40 + 110 * i, 200, 130 + 110 * i, 300);
+			objects.add(new DetectedObject(box, /* trackingId= */ i, Collections.emptyList()));
+		}
+		inferenceInfoGraphic = new InferenceInfoGraphic(graphicOverlay);
+	}
+
+	@After
+	public void tearDown() {
+		bitmap.recycle();
+	}
+
+	@Test
+	@SuppressWarnings("deprecation") // The Debug allocation counters are the only per-thread ones.
+	public void drawingObjects_sharedStylesAllocateNoPaints() {
+		for (int i = 0; i < WARM_UP_FRAMES; i++) {
+			drawFrameWithOwnPaints();
+			drawFrameWithSharedStyles();
+		}
+
+		int ownPaintsAllocations = countAllocations(this::drawFrameWithOwnPaints);
+		int sharedStylesAllocations = countAllocations(this::drawFrameWithSharedStyles);
+
+		// Every Paint is at least one object, so sharing must save at least the Paints built before.
+		int savedPaintsPerFrame = NUM_OBJECTS * PAINTS_PER_OLD_OBJECT_GRAPHIC + 1;
+		assertTrue(
+				"Allocations per frame with own Paints: "
+						+ ownPaintsAllocations / MEASURED_FRAMES
+						+ ", with shared styles: "
+						+ sharedStylesAllocations / MEASURED_FRAMES,
+				sharedStylesAllocations + MEASURED_FRAMES * savedPaintsPerFrame <= ownPaintsAllocations);
+	}
+
+	@SuppressWarnings("deprecation")
+	private static int countAllocations(Runnable frame) {
+		Debug.resetThreadAllocCount();
+		Debug.startAllocCounting();
+		try {
+			for (int i = 0; i < MEASURED_FRAMES; i++) {
+				frame.run();
+			}
+		} finally {
+			Debug.stopAllocCounting();
+		}
+		return Debug.getThreadAllocCount();
+	}
+
+	/**
+	 * Draws a frame the way the live preview did before, with Paints built by every graphic and a new
+	 * inference info graphic.
+	 */
+	private void drawFrameWithOwnPaints() {
+		for (DetectedObject object : objects) {
+			buildOldObjectGraphicPaints();
+			graphicOverlay.add(new ObjectGraphic(graphicOverlay, object));
+		}
+		buildOldInferenceInfoPaint();
+		graphicOverlay.add(new InferenceInfoGraphic(graphicOverlay));
+		graphicOverlay.publish();
+		graphicOverlay.draw(canvas);
+	}
+
+	/**
+	 * Draws a frame the way the live preview does now, with the shared styles and one inference info
+	 * graphic.
+	 */
+	private void drawFrameWithSharedStyles() {
+		for (DetectedObject object : objects) {
+			graphicOverlay.add(new ObjectGraphic(graphicOverlay, object));
+		}
+		graphicOverlay.add(inferenceInfoGraphic);
+		graphicOverlay.publish();
+		graphicOverlay.draw(canvas);
+	}
+
+	/**
+	 * Builds the Paints the constructor of an object graphic used to build, in one color, which does
+	 * not change what is allocated.
+	 */
+	private static Paint[] buildOldObjectGraphicPaints() {
+		Paint[] paints = new Paint[PAINTS_PER_OLD_OBJECT_GRAPHIC];
+		for (int i = 0; i < GraphicStyles.NUM_COLORS; i++) {
+			Paint textPaint = new Paint();
+			textPaint.setColor(Color.BLACK);
+			textPaint.setTextSize(54.0f);
+
+			Paint boxPaint = new Paint();
+			boxPaint.setColor(Color.WHITE);
+			boxPaint.setStyle(Paint.Style.STROKE);
+			boxPaint.setStrokeWidth(4.0f);
+
+			Paint labelPaint = new Paint();
+			labelPaint.setColor(Color.WHITE);
+			labelPaint.setStyle(Paint.Style.FILL);
+
+			paints[3 * i] = textPaint;
+			paints[3 * i + 1] = boxPaint;
+			paints[3 * i + 2] = labelPaint;
+		}
+		return paints;
+	}
+
+	/**
+	 * Builds the Paint the constructor of an inference info graphic used to build.
+	 */
+	private static Paint buildOldInferenceInfoPaint() {
+		Paint textPaint = new Paint();
+		textPaint.setColor(Color.WHITE);
+		textPaint.setTextSize(60.0f);
+		textPaint.setShadowLayer(5.0f, 0f, 0f, Color.BLACK);
+		return textPaint;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Debug;
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.FrameMetadata;
+import com.google.mlkit.vision.demo.GraphicOverlay;
+import com.google.mlkit.vision.demo.VisionImageProcessor.BufferReleaseCallback;
+import com.google.mlkit.vision.demo.pipeline.yuv.YuvKernels;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that the Camera1 path of {@link VisionProcessorBase} stays within a small allocation budget
+ * per frame once it is warmed up.
+ */
+@RunWith(AndroidJUnit4.class)
+public class VisionProcessorBaseAllocationTest {
+
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 480;
+	private static final int WARM_UP_FRAMES = 30;
+	private static final int MEASURED_FRAMES = 200;
+	private static final long FRAME_TIMEOUT_MS = 5000;
+	// Allocations that remain per frame: the InputImage wrapper, the LumaPlane view, the Task
+	// listeners and their bookkeeping, the snapshot array of GraphicOverlay.publish() and the default
+	// SharedPreferences lookups of PreferenceUtils. Frame-sized buffers, Bitmaps, FrameMetadata and
+	// graphics are reused, so the byte budget stays far below the size of a single frame.
+	private static final int MAX_ALLOCATIONS_PER_FRAME = 100;
+	private static final int MAX_BYTES_PER_FRAME = 16 * 1024;
+
+	private Context context;
+	private GraphicOverlay graphicOverlay;
+	private NoOpProcessor processor;
+
+	@Before
+	public void setUp() {
+		context = ApplicationProvider.getApplicationContext();
+		InstrumentationRegistry.getInstrumentation()
+				.runOnMainSync(
+						() -> {
+							graphicOverlay = new GraphicOverlay(context, /* attrs= */ null);
+							processor = new NoOpProcessor(context);
+						});
+	}
+
+	@After
+	public void tearDown() {
+		InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> processor.stop());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation") // The Debug allocation counters are the only per-process ones.
+	public void processByteBuffer_allocatesWithinBudgetPerFrame() throws InterruptedException {
+		ByteBuffer nv21 = ByteBuffer.wrap(new byte[YuvKernels.nv21Size(WIDTH, HEIGHT)]);
+		FrameMetadata frameMetadata =
+				new FrameMetadata.Builder().setWidth(WIDTH).setHeight(HEIGHT).setRotation(90).build();
+		Semaphore releasedBuffers = new Semaphore(0);
+		BufferReleaseCallback releaseCallback = data -> releasedBuffers.release();
+
+		// Fills the camera image ring, the reused graphics and the memory pools.
+		for (int i = 0; i < WARM_UP_FRAMES; i++) {
+			processFrame(nv21, frameMetadata, releaseCallback, releasedBuffers);
+		}
+
+		Debug.resetAllCounts();
+		Debug.startAllocCounting();
+		try {
+			for (int i = 0; i < MEASURED_FRAMES; i++) {
+				processFrame(nv21, frameMetadata, releaseCallback, releasedBuffers);
+			}
+		} finally {
+			Debug.stopAllocCounting();
+		}
+
+		// Global counts, since the results are published on the main thread.
+		int allocationsPerFrame = Debug.getGlobalAllocCount() / MEASURED_FRAMES;
+		int bytesPerFrame = Debug.getGlobalAllocSize() / MEASURED_FRAMES;
+		assertTrue(
+				"Allocations per frame: " + allocationsPerFrame,
+				allocationsPerFrame <= MAX_ALLOCATIONS_PER_FRAME);
+		assertTrue("Bytes allocated per frame: " + bytesPerFrame, bytesPerFrame <= MAX_BYTES_PER_FRAME);
+	}
+
+	/**
+	 * Passes one frame to the processor and waits until it is handed back, that is done.
+	 */
+	private void processFrame(
+			ByteBuffer nv21,
+			FrameMetadata frameMetadata,
+			BufferReleaseCallback releaseCallback,
+			Semaphore releasedBuffers)
+			throws InterruptedException {
+		processor.processByteBuffer(nv21, frameMetadata, graphicOverlay, releaseCallback);
+		assertTrue(
+				"The frame was not handed back",
+				releasedBuffers.tryAcquire(FRAME_TIMEOUT_MS, MILLISECONDS));
+	}
+
+	/**
+	 * Detects nothing, through a Task that completed already, so that only the allocations of the
+	 * frame path itself are counted.
+	 */
+	private static class NoOpProcessor extends VisionProcessorBase<Object> {
+
+		private final Task<Object> results = Tasks.forResult(new Object());
+
+		NoOpProcessor(Context context) {
+			super(context);
+		}
+
+		@Override
+		protected Task<Object> detectInImage(InputImage image) {
+			return results;
+		}
+
+		@Override
+		protected void onSuccess(@NonNull Object results, @NonNull GraphicOverlay graphicOverlay) {
+		}
+
+		@Override
+		protected void onFailure(@NonNull Exception e) {
+			throw new AssertionError("Detection failed", e);
+		}
+	}
+}
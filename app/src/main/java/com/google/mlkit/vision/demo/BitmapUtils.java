@@ -16,61 +16,87 @@
 
 package com.google.mlkit.vision.demo;
 
-import android.annotation.TargetApi;
 import android.content.ContentResolver;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Matrix;
 import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.media.Image;
 import android.media.Image.Plane;
 import android.net.Uri;
 import android.os.Build.VERSION_CODES;
-import android.provider.MediaStore;
-import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.camera.core.ExperimentalGetImage;
 import androidx.camera.core.ImageProxy;
-import androidx.exifinterface.media.ExifInterface;
 
-import java.io.ByteArrayOutputStream;
+import com.google.mlkit.vision.demo.java.memory.MemoryGovernor;
+import com.google.mlkit.vision.demo.pipeline.yuv.YuvKernels;
+
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 
 /**
  * Utils functions for bitmap conversions.
  */
 public class BitmapUtils {
-	private static final String TAG = "BitmapUtils";
 
 	/**
-	 * Converts NV21 format byte buffer to bitmap.
+	 * Converts NV21 format byte buffer to bitmap, rotated by the rotation of {@code metadata}.
 	 */
 	@Nullable
 	public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata) {
-		data.rewind();
-		byte[] imageInBuffer = new byte[data.limit()];
-		data.get(imageInBuffer, 0, imageInBuffer.length);
-		try {
-			YuvImage image =
-					new YuvImage(
-							imageInBuffer, ImageFormat.NV21, metadata.getWidth(), metadata.getHeight(), null);
-			ByteArrayOutputStream stream = new ByteArrayOutputStream();
-			image.compressToJpeg(new Rect(0, 0, metadata.getWidth(), metadata.getHeight()), 80, stream);
-
-			Bitmap bmp = BitmapFactory.decodeByteArray(stream.toByteArray(), 0, stream.size());
+		return getBitmap(data, metadata, /* reuse= */ null);
+	}
 
-			stream.close();
-			return rotateBitmap(bmp, metadata.getRotation(), false, false);
-		} catch (Exception e) {
-			Log.e("VisionProcessorBase", "Error: " + e.getMessage());
+	/**
+	 * Like {@link #getBitmap(ByteBuffer, FrameMetadata)}, but writes into {@code reuse} if it is a
+	 * mutable ARGB_8888 Bitmap of the rotated frame size. Otherwise a new mutable Bitmap is returned
+	 * that can be passed in for the next frame.
+	 */
+	public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata, @Nullable Bitmap reuse) {
+		int width = metadata.getWidth();
+		int height = metadata.getHeight();
+		int rotation = metadata.getRotation();
+		MemoryGovernor memoryGovernor = MemoryGovernor.getInstance();
+
+		byte[] nv21;
+		int offset;
+		byte[] copy = null;
+		if (data.hasArray()) {
+			nv21 = data.array();
+			offset = data.arrayOffset();
+		} else {
+			data.rewind();
+			copy = memoryGovernor.getFramePool().acquire(data.limit());
+			data.get(copy, 0, copy.length);
+			nv21 = copy;
+			offset = 0;
+		}
+		int[] argb = memoryGovernor.getPixelPool().acquire(width * height);
+		try {
+			YuvKernels.nv21ToArgb(nv21, offset, width, height, rotation, /* mirror= */ false, argb);
+			boolean isSwapped = rotation == 90 || rotation == 270;
+			int bitmapWidth = isSwapped ? height : width;
+			int bitmapHeight = isSwapped ? width : height;
+			if (reuse == null) {
+				return Bitmap.createBitmap(argb, bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888);
+			}
+			Bitmap bitmap = reuse;
+			if (!reuse.isMutable()
+					|| reuse.isRecycled()
+					|| reuse.getConfig() != Bitmap.Config.ARGB_8888
+					|| reuse.getWidth() != bitmapWidth
+					|| reuse.getHeight() != bitmapHeight) {
+				bitmap = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888);
+			}
+			bitmap.setPixels(argb, 0, bitmapWidth, 0, 0, bitmapWidth, bitmapHeight);
+			return bitmap;
+		} finally {
+			memoryGovernor.getPixelPool().release(argb);
+			if (copy != null) {
+				memoryGovernor.getFramePool().release(copy);
+			}
 		}
-		return null;
 	}
 
 	/**
@@ -80,219 +106,124 @@ public class BitmapUtils {
 	@Nullable
 	@ExperimentalGetImage
 	public static Bitmap getBitmap(ImageProxy image) {
+		return getBitmap(image.getImage(), image.getImageInfo().getRotationDegrees());
+	}
+
+	/**
+	 * Converts a YUV_420_888 media Image, e.g. from an ImageReader, to a bitmap.
+	 */
+	@RequiresApi(VERSION_CODES.KITKAT)
+	public static Bitmap getBitmap(Image image, int rotationDegrees) {
 		FrameMetadata frameMetadata =
 				new FrameMetadata.Builder()
 						.setWidth(image.getWidth())
 						.setHeight(image.getHeight())
-						.setRotation(image.getImageInfo().getRotationDegrees())
+						.setRotation(rotationDegrees)
 						.build();
 
 		ByteBuffer nv21Buffer =
-				yuv420ThreePlanesToNV21(image.getImage().getPlanes(), image.getWidth(), image.getHeight());
-		return getBitmap(nv21Buffer, frameMetadata);
-	}
-
-	/**
-	 * Rotates a bitmap if it is converted from a bytebuffer.
-	 */
-	private static Bitmap rotateBitmap(
-			Bitmap bitmap, int rotationDegrees, boolean flipX, boolean flipY) {
-		Matrix matrix = new Matrix();
-
-		// Rotate the image back to straight.
-		matrix.postRotate(rotationDegrees);
-
-		// Mirror the image along the X or Y axis.
-		matrix.postScale(flipX ? -1.0f : 1.0f, flipY ? -1.0f : 1.0f);
-		Bitmap rotatedBitmap =
-				Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-
-		// Recycle the old bitmap if it has changed.
-		if (rotatedBitmap != bitmap) {
-			bitmap.recycle();
-		}
-		return rotatedBitmap;
+				yuv420ThreePlanesToNV21(image.getPlanes(), image.getWidth(), image.getHeight());
+		Bitmap bitmap = getBitmap(nv21Buffer, frameMetadata);
+		releaseNV21(nv21Buffer);
+		return bitmap;
 	}
 
 	@Nullable
 	public static Bitmap getBitmapFromContentUri(ContentResolver contentResolver, Uri imageUri)
 			throws IOException {
-		Bitmap decodedBitmap = MediaStore.Images.Media.getBitmap(contentResolver, imageUri);
-		if (decodedBitmap == null) {
-			return null;
-		}
-		int orientation = getExifOrientationTag(contentResolver, imageUri);
-
-		int rotationDegrees = 0;
-		boolean flipX = false;
-		boolean flipY = false;
-		// See e.g. https://magnushoff.com/articles/jpeg-orientation/ for a detailed explanation on each
-		// orientation.
-		switch (orientation) {
-			case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
-				flipX = true;
-				break;
-			case ExifInterface.ORIENTATION_ROTATE_90:
-				rotationDegrees = 90;
-				break;
-			case ExifInterface.ORIENTATION_TRANSPOSE:
-				rotationDegrees = 90;
-				flipX = true;
-				break;
-			case ExifInterface.ORIENTATION_ROTATE_180:
-				rotationDegrees = 180;
-				break;
-			case ExifInterface.ORIENTATION_FLIP_VERTICAL:
-				flipY = true;
-				break;
-			case ExifInterface.ORIENTATION_ROTATE_270:
-				rotationDegrees = -90;
-				break;
-			case ExifInterface.ORIENTATION_TRANSVERSE:
-				rotationDegrees = -90;
-				flipX = true;
-				break;
-			case ExifInterface.ORIENTATION_UNDEFINED:
-			case ExifInterface.ORIENTATION_NORMAL:
-			default:
-				// No transformations necessary in this case.
-		}
-
-		return rotateBitmap(decodedBitmap, rotationDegrees, flipX, flipY);
+		return getBitmapFromContentUri(contentResolver, imageUri, 0, 0);
 	}
 
-	private static int getExifOrientationTag(ContentResolver resolver, Uri imageUri) {
-		// We only support parsing EXIF orientation tag from local file on the device.
-		// See also:
-		// https://android-developers.googleblog.com/2016/12/introducing-the-exifinterface-support-library.html
-		if (!ContentResolver.SCHEME_CONTENT.equals(imageUri.getScheme())
-				&& !ContentResolver.SCHEME_FILE.equals(imageUri.getScheme())) {
-			return 0;
-		}
-
-		ExifInterface exif;
-		try (InputStream inputStream = resolver.openInputStream(imageUri)) {
-			if (inputStream == null) {
-				return 0;
-			}
-
-			exif = new ExifInterface(inputStream);
-		} catch (IOException e) {
-			Log.e(TAG, "failed to open file to read rotation meta data: " + imageUri, e);
-			return 0;
-		}
-
-		return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+	/**
+	 * Decodes the image at {@code imageUri} with its EXIF orientation applied, scaled to fit into
+	 * {@code targetWidth} x {@code targetHeight}, or at its original size if either is 0. The image is
+	 * read through a single stream, see {@link StillImageLoader}.
+	 */
+	@Nullable
+	public static Bitmap getBitmapFromContentUri(
+			ContentResolver contentResolver, Uri imageUri, int targetWidth, int targetHeight)
+			throws IOException {
+		return StillImageLoader.load(contentResolver, imageUri, targetWidth, targetHeight);
 	}
 
 	/**
 	 * Converts YUV_420_888 to NV21 bytebuffer.
 	 *
-	 * <p>The NV21 format consists of a single byte array containing the Y, U and V values. For an
-	 * image of size S, the first S positions of the array contain all the Y values. The remaining
-	 * positions contain interleaved V and U values. U and V are subsampled by a factor of 2 in both
-	 * dimensions, so there are S/4 U values and S/4 V values. In summary, the NV21 array will contain
-	 * S Y values followed by S/4 VU values: YYYYYYYYYYYYYY(...)YVUVUVUVU(...)VU
-	 *
-	 * <p>YUV_420_888 is a generic format that can describe any YUV image where U and V are subsampled
-	 * by a factor of 2 in both dimensions. {@link Image#getPlanes} returns an array with the Y, U and
-	 * V planes. The Y plane is guaranteed not to be interleaved, so we can just copy its values into
-	 * the first part of the NV21 array. The U and V planes may already have the representation in the
-	 * NV21 format. This happens if the planes share the same buffer, the V buffer is one position
-	 * before the U buffer and the planes have a pixelStride of 2. If this is case, we can just copy
-	 * them to the NV21 array.
+	 * <p>The returned buffer is taken from the frame pool, see {@link #releaseNV21(ByteBuffer)}.
 	 */
 	@RequiresApi(VERSION_CODES.KITKAT)
-	private static ByteBuffer yuv420ThreePlanesToNV21(
+	public static ByteBuffer yuv420ThreePlanesToNV21(
 			Plane[] yuv420888planes, int width, int height) {
-		int imageSize = width * height;
-		byte[] out = new byte[imageSize + 2 * (imageSize / 4)];
-
-		if (areUVPlanesNV21(yuv420888planes, width, height)) {
-			// Copy the Y values.
-			yuv420888planes[0].getBuffer().get(out, 0, imageSize);
-
-			ByteBuffer uBuffer = yuv420888planes[1].getBuffer();
-			ByteBuffer vBuffer = yuv420888planes[2].getBuffer();
-			// Get the first V value from the V buffer, since the U buffer does not contain it.
-			vBuffer.get(out, imageSize, 1);
-			// Copy the first U value and the remaining VU values from the U buffer.
-			uBuffer.get(out, imageSize + 1, 2 * imageSize / 4 - 1);
-		} else {
-			// Fallback to copying the UV values one by one, which is slower but also works.
-			// Unpack Y.
-			unpackPlane(yuv420888planes[0], width, height, out, 0, 1);
-			// Unpack U.
-			unpackPlane(yuv420888planes[1], width, height, out, imageSize + 1, 2);
-			// Unpack V.
-			unpackPlane(yuv420888planes[2], width, height, out, imageSize, 2);
-		}
-
+		byte[] out = MemoryGovernor.getInstance().getFramePool().acquire(YuvKernels.nv21Size(width, height));
+		yuv420ThreePlanesToNV21(yuv420888planes, width, height, out);
 		return ByteBuffer.wrap(out);
 	}
 
 	/**
-	 * Checks if the UV plane buffers of a YUV_420_888 image are in the NV21 format.
+	 * Converts YUV_420_888 to NV21 into {@code out}, which must hold at least {@code width * height *
+	 * 3 / 2} bytes. Nothing is allocated per frame; see {@link YuvKernels#yuv420ToNv21} for the
+	 * supported plane layouts.
 	 */
 	@RequiresApi(VERSION_CODES.KITKAT)
-	private static boolean areUVPlanesNV21(Plane[] planes, int width, int height) {
-		int imageSize = width * height;
-
-		ByteBuffer uBuffer = planes[1].getBuffer();
-		ByteBuffer vBuffer = planes[2].getBuffer();
-
-		// Backup buffer properties.
-		int vBufferPosition = vBuffer.position();
-		int uBufferLimit = uBuffer.limit();
-
-		// Advance the V buffer by 1 byte, since the U buffer will not contain the first V value.
-		vBuffer.position(vBufferPosition + 1);
-		// Chop off the last byte of the U buffer, since the V buffer will not contain the last U value.
-		uBuffer.limit(uBufferLimit - 1);
-
-		// Check that the buffers are equal and have the expected number of elements.
-		boolean areNV21 =
-				(vBuffer.remaining() == (2 * imageSize / 4 - 2)) && (vBuffer.compareTo(uBuffer) == 0);
-
-		// Restore buffers to their initial state.
-		vBuffer.position(vBufferPosition);
-		uBuffer.limit(uBufferLimit);
-
-		return areNV21;
+	public static void yuv420ThreePlanesToNV21(
+			Plane[] yuv420888planes, int width, int height, byte[] out) {
+		Plane yPlane = yuv420888planes[0];
+		Plane uPlane = yuv420888planes[1];
+		Plane vPlane = yuv420888planes[2];
+		YuvKernels.yuv420ToNv21(
+				yPlane.getBuffer(),
+				yPlane.getRowStride(),
+				yPlane.getPixelStride(),
+				uPlane.getBuffer(),
+				uPlane.getRowStride(),
+				uPlane.getPixelStride(),
+				vPlane.getBuffer(),
+				vPlane.getRowStride(),
+				vPlane.getPixelStride(),
+				width,
+				height,
+				out);
 	}
 
 	/**
-	 * Unpack an image plane into a byte array.
+	 * Copies the given region of an NV21 buffer into a new NV21 buffer. The region must start at even
+	 * coordinates and have an even size, since the VU values are shared by 2x2 pixel blocks.
 	 *
-	 * <p>The input plane data will be copied in 'out', starting at 'offset' and every pixel will be
-	 * spaced by 'pixelStride'. Note that there is no row padding on the output.
+	 * <p>The returned buffer is taken from the frame pool, see {@link #releaseNV21(ByteBuffer)}.
 	 */
-	@TargetApi(VERSION_CODES.KITKAT)
-	private static void unpackPlane(
-			Plane plane, int width, int height, byte[] out, int offset, int pixelStride) {
-		ByteBuffer buffer = plane.getBuffer();
-		buffer.rewind();
+	public static ByteBuffer cropNV21(ByteBuffer nv21, int width, int height, Rect crop) {
+		byte[] out =
+				MemoryGovernor.getInstance()
+						.getFramePool()
+						.acquire(YuvKernels.nv21Size(crop.width(), crop.height()));
+		YuvKernels.cropNv21(
+				nv21, width, height, crop.left, crop.top, crop.width(), crop.height(), out);
+		return ByteBuffer.wrap(out);
+	}
 
-		// Compute the size of the current plane.
-		// We assume that it has the aspect ratio as the original image.
-		int numRow = (buffer.limit() + plane.getRowStride() - 1) / plane.getRowStride();
-		if (numRow == 0) {
-			return;
-		}
-		int scaleFactor = height / numRow;
-		int numCol = width / scaleFactor;
+	/**
+	 * Hands a buffer returned by {@link #yuv420ThreePlanesToNV21} or {@link #cropNV21} back to the
+	 * frame pool once nothing reads it anymore. Releasing is optional, buffers that are not released
+	 * are garbage collected as usual.
+	 */
+	public static void releaseNV21(ByteBuffer nv21) {
+		MemoryGovernor.getInstance().getFramePool().release(nv21.array());
+	}
 
-		// Extract the data in the output buffer.
-		int outputPos = offset;
-		int rowStart = 0;
-		for (int row = 0; row < numRow; row++) {
-			int inputPos = rowStart;
-			for (int col = 0; col < numCol; col++) {
-				out[outputPos] = buffer.get(inputPos);
-				outputPos += pixelStride;
-				inputPos += plane.getPixelStride();
-			}
-			rowStart += plane.getRowStride();
+	/**
+	 * Maps a rectangle of an image with the given size to the image rotated clockwise by {@code
+	 * rotationDegrees}, which must be one of 0, 90, 180 or 270.
+	 */
+	public static Rect rotateRect(Rect rect, int width, int height, int rotationDegrees) {
+		switch (rotationDegrees) {
+			case 90:
+				return new Rect(height - rect.bottom, rect.left, height - rect.top, rect.right);
+			case 180:
+				return new Rect(width - rect.right, height - rect.bottom, width - rect.left, height - rect.top);
+			case 270:
+				return new Rect(rect.top, width - rect.right, rect.bottom, width - rect.left);
+			default:
+				return new Rect(rect);
 		}
 	}
 }
@@ -0,0 +1,696 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.WindowManager;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresPermission;
+
+import com.google.android.gms.common.images.Size;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Manages the camera through the Camera2 API, as a sibling of {@link CameraSource}. Frames are read
+ * from an {@link ImageReader} in YUV_420_888 and passed to {@link
+ * VisionImageProcessor#processMediaImage}. All camera and reader callbacks run on a dedicated
+ * {@link HandlerThread}.
+ *
+ * <p>The analysis stream has its own, usually low, resolution. When started with a SurfaceHolder, a
+ * separate preview stream with the same aspect ratio but a higher resolution is displayed on it, so
+ * the preview stays sharp while the detector runs on small frames.
+ *
+ * <p>The processor gets one image at a time. While it works on it, the newest image is kept pending
+ * if {@link #setMaxImages(int)} leaves room, and older ones are closed right away. One reader slot is
+ * always kept free, so the camera never waits on the reader.
+ */
+public class Camera2Source implements CameraPreviewSource {
+
+	private static final String TAG = "MIDemoApp:Camera2Source";
+
+	public static final int DEFAULT_ANALYSIS_WIDTH = 640;
+	public static final int DEFAULT_ANALYSIS_HEIGHT = 480;
+	public static final int DEFAULT_MAX_IMAGES = 3;
+
+	private static final int MAX_PREVIEW_WIDTH = 1920;
+	private static final int MAX_PREVIEW_HEIGHT = 1080;
+	private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
+	private static final long OPEN_CLOSE_TIMEOUT_MS = 2500;
+
+	private final Activity activity;
+	private final GraphicOverlay graphicOverlay;
+	// The processor new images go to, swapped without waiting for images in flight.
+	private final AtomicReference<ImageProcessorSlot> processorSlot = new AtomicReference<>();
+	// Keeps the camera from being closed while it is being opened, and vice versa.
+	private final Semaphore cameraOpenCloseLock = new Semaphore(1);
+	// Guards the reader and the images acquired from it, which are handed back on any thread.
+	private final Object imageLock = new Object();
+	private final Runnable drainRunnable = this::drainReader;
+
+	private int facing = CameraSource.CAMERA_FACING_BACK;
+	private int maxImages = DEFAULT_MAX_IMAGES;
+	private int requestedAnalysisWidth = DEFAULT_ANALYSIS_WIDTH;
+	private int requestedAnalysisHeight = DEFAULT_ANALYSIS_HEIGHT;
+
+	@Nullable
+	private HandlerThread cameraThread;
+	@Nullable
+	private volatile Handler cameraHandler;
+	@Nullable
+	private volatile CameraDevice cameraDevice;
+	@Nullable
+	private volatile CameraCaptureSession captureSession;
+	@Nullable
+	private Size analysisSize;
+	// Rotation of the analysis images relative to the upright device.
+	private volatile int rotationDegrees;
+
+	@GuardedBy("imageLock")
+	@Nullable
+	private ImageReader imageReader;
+	@GuardedBy("imageLock")
+	@Nullable
+	private Image processingImage;
+	@GuardedBy("imageLock")
+	@Nullable
+	private Image pendingImage;
+	// A reader of a stopped camera, closed once the processor hands back retiredImage.
+	@GuardedBy("imageLock")
+	@Nullable
+	private ImageReader retiredReader;
+	@GuardedBy("imageLock")
+	@Nullable
+	private Image retiredImage;
+	@GuardedBy("imageLock")
+	private int droppedImageCount;
+
+	public Camera2Source(Activity activity, GraphicOverlay overlay) {
+		this.activity = activity;
+		graphicOverlay = overlay;
+		graphicOverlay.clear();
+	}
+
+	// ==============================================================================================
+	// Public
+	// ==============================================================================================
+
+	/**
+	 * Changes the facing of the camera, to {@link CameraSource#CAMERA_FACING_BACK} or {@link
+	 * CameraSource#CAMERA_FACING_FRONT}. Takes effect on the next start.
+	 */
+	public synchronized void setFacing(int facing) {
+		if ((facing != CameraSource.CAMERA_FACING_BACK) && (facing != CameraSource.CAMERA_FACING_FRONT)) {
+			throw new IllegalArgumentException("Invalid camera: " + facing);
+		}
+		this.facing = facing;
+	}
+
+	/**
+	 * Sets how many images the analysis reader holds, at least 2. With 2 images, frames that arrive
+	 * while the processor is busy are dropped; with more, the newest one is kept for when it is done.
+	 * Takes effect on the next start.
+	 */
+	public synchronized void setMaxImages(int maxImages) {
+		if (maxImages < 2) {
+			throw new IllegalArgumentException("Invalid max images: " + maxImages);
+		}
+		this.maxImages = maxImages;
+	}
+
+	/**
+	 * Sets the size the analysis stream should come closest to. Takes effect on the next start.
+	 */
+	public synchronized void setRequestedAnalysisSize(int width, int height) {
+		requestedAnalysisWidth = width;
+		requestedAnalysisHeight = height;
+	}
+
+	@Override
+	@RequiresPermission(Manifest.permission.CAMERA)
+	public synchronized Camera2Source start() throws IOException {
+		open(/* surfaceHolder= */ null);
+		return this;
+	}
+
+	@Override
+	@RequiresPermission(Manifest.permission.CAMERA)
+	public synchronized Camera2Source start(SurfaceHolder surfaceHolder) throws IOException {
+		open(surfaceHolder);
+		return this;
+	}
+
+	@Override
+	public synchronized void stop() {
+		HandlerThread thread = cameraThread;
+		Handler handler = cameraHandler;
+		if (thread != null && handler != null) {
+			boolean isLocked = false;
+			try {
+				// Waits for an open in progress, whose callbacks run on the camera thread.
+				isLocked = cameraOpenCloseLock.tryAcquire(OPEN_CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+				if (!isLocked) {
+					Log.e(TAG, "Timed out waiting for the camera to open before closing it.");
+				}
+			} catch (InterruptedException e) {
+				Log.d(TAG, "Interrupted while closing the camera.");
+				Thread.currentThread().interrupt();
+			}
+			// Closed on the camera thread after the callbacks queued so far, so that none of them runs
+			// while the camera is closed. The thread ends right after.
+			handler.post(this::closeCamera);
+			thread.quitSafely();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Log.d(TAG, "Camera thread interrupted on stop.");
+				Thread.currentThread().interrupt();
+			}
+			cameraThread = null;
+			cameraHandler = null;
+			if (isLocked) {
+				cameraOpenCloseLock.release();
+			}
+		}
+
+		synchronized (imageLock) {
+			if (pendingImage != null) {
+				pendingImage.close();
+				pendingImage = null;
+			}
+			if (imageReader != null) {
+				if (processingImage == null) {
+					imageReader.close();
+				} else {
+					// The processor still reads an image of this reader, which closing it would invalidate.
+					if (retiredReader != null) {
+						retiredReader.close();
+					}
+					retiredReader = imageReader;
+					retiredImage = processingImage;
+					processingImage = null;
+				}
+				imageReader = null;
+				Log.i(TAG, "Dropped images: " + droppedImageCount);
+			}
+		}
+	}
+
+	/**
+	 * Stops the camera and releases the resources of the camera and underlying detector.
+	 */
+	@Override
+	public void release() {
+		stop();
+		graphicOverlay.clear();
+
+		ProcessorSlot slot = processorSlot.getAndSet(null);
+		if (slot != null) {
+			slot.retire();
+		}
+	}
+
+	/**
+	 * Sends the next images to {@code processor}. Does not wait for the previous processor: images it
+	 * is still working on drain in the background, and it is stopped once it handed them all back.
+	 */
+	public void setMachineLearningFrameProcessor(VisionImageProcessor processor) {
+		ProcessorSlot current = processorSlot.get();
+		if (current != null && current.getProcessor() == processor) {
+			return;
+		}
+		ProcessorSlot previous = processorSlot.getAndSet(new ImageProcessorSlot(processor));
+		graphicOverlay.clear();
+		if (previous != null) {
+			previous.retire();
+		}
+	}
+
+	/**
+	 * Returns the size of the analysis images, which graphics are drawn relative to. The preview
+	 * stream has the same aspect ratio.
+	 */
+	@Override
+	@Nullable
+	public Size getPreviewSize() {
+		return analysisSize;
+	}
+
+	@Override
+	public int getCameraFacing() {
+		return facing;
+	}
+
+	/**
+	 * Returns how many analysis images were closed without being processed, because a newer one
+	 * arrived while the processor was busy.
+	 */
+	public int getDroppedImageCount() {
+		synchronized (imageLock) {
+			return droppedImageCount;
+		}
+	}
+
+	// ==============================================================================================
+	// Camera setup
+	// ==============================================================================================
+
+	@RequiresPermission(Manifest.permission.CAMERA)
+	private void open(@Nullable SurfaceHolder surfaceHolder) throws IOException {
+		if (cameraThread != null) {
+			return;
+		}
+
+		CameraManager manager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
+		String cameraId;
+		CameraCharacteristics characteristics;
+		try {
+			cameraId = getIdForRequestedCamera(manager, facing);
+			if (cameraId == null) {
+				throw new IOException("Could not find requested camera.");
+			}
+			characteristics = manager.getCameraCharacteristics(cameraId);
+		} catch (CameraAccessException e) {
+			throw new IOException("Could not access camera.", e);
+		}
+
+		StreamConfigurationMap map =
+				characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+		if (map == null) {
+			throw new IOException("Could not read camera stream configurations.");
+		}
+		android.util.Size analysis =
+				selectClosestSize(
+						map.getOutputSizes(ImageFormat.YUV_420_888),
+						requestedAnalysisWidth,
+						requestedAnalysisHeight);
+		if (analysis == null) {
+			throw new IOException("Could not find suitable analysis size.");
+		}
+		analysisSize = new Size(analysis.getWidth(), analysis.getHeight());
+		rotationDegrees = getRotationDegrees(characteristics);
+		Log.v(TAG, "Camera analysis size: " + analysisSize + ", rotation: " + rotationDegrees);
+
+		HandlerThread thread = new HandlerThread("Camera2Source");
+		thread.start();
+		cameraThread = thread;
+		Handler handler = new Handler(thread.getLooper());
+		cameraHandler = handler;
+
+		List<Surface> surfaces = new ArrayList<>();
+		synchronized (imageLock) {
+			imageReader =
+					ImageReader.newInstance(
+							analysis.getWidth(), analysis.getHeight(), ImageFormat.YUV_420_888, maxImages);
+			imageReader.setOnImageAvailableListener(reader -> drainReader(), handler);
+			surfaces.add(imageReader.getSurface());
+		}
+		if (surfaceHolder != null) {
+			android.util.Size preview =
+					selectPreviewSize(map.getOutputSizes(SurfaceHolder.class), analysis);
+			Log.v(TAG, "Camera preview size: " + preview);
+			surfaceHolder.setFixedSize(preview.getWidth(), preview.getHeight());
+			surfaces.add(surfaceHolder.getSurface());
+		}
+
+		try {
+			if (!cameraOpenCloseLock.tryAcquire(OPEN_CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				throw new IOException("Timed out waiting for the camera to close.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while opening the camera.", e);
+		}
+		try {
+			manager.openCamera(
+					cameraId, new DeviceStateCallback(surfaces, characteristics), handler);
+		} catch (CameraAccessException | RuntimeException e) {
+			cameraOpenCloseLock.release();
+			stop();
+			throw new IOException("Could not open camera.", e);
+		}
+	}
+
+	/**
+	 * Closes the capture session and the camera. Runs on the camera thread.
+	 */
+	private void closeCamera() {
+		CameraCaptureSession session = captureSession;
+		if (session != null) {
+			session.close();
+			captureSession = null;
+		}
+		CameraDevice device = cameraDevice;
+		if (device != null) {
+			device.close();
+			cameraDevice = null;
+		}
+	}
+
+	@Nullable
+	private static String getIdForRequestedCamera(CameraManager manager, int facing)
+			throws CameraAccessException {
+		int lensFacing =
+				facing == CameraSource.CAMERA_FACING_FRONT
+						? CameraCharacteristics.LENS_FACING_FRONT
+						: CameraCharacteristics.LENS_FACING_BACK;
+		for (String id : manager.getCameraIdList()) {
+			Integer cameraFacing =
+					manager.getCameraCharacteristics(id).get(CameraCharacteristics.LENS_FACING);
+			if (cameraFacing != null && cameraFacing == lensFacing) {
+				return id;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the size whose width and height differ the least from the requested ones, like {@link
+	 * CameraSource} does for preview sizes.
+	 */
+	@Nullable
+	private static android.util.Size selectClosestSize(
+			@Nullable android.util.Size[] sizes, int desiredWidth, int desiredHeight) {
+		if (sizes == null) {
+			return null;
+		}
+		android.util.Size selected = null;
+		int minDiff = Integer.MAX_VALUE;
+		for (android.util.Size size : sizes) {
+			int diff =
+					Math.abs(size.getWidth() - desiredWidth) + Math.abs(size.getHeight() - desiredHeight);
+			if (diff < minDiff) {
+				selected = size;
+				minDiff = diff;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Returns the largest preview size up to 1080p with the aspect ratio of the analysis stream, or
+	 * the analysis size if there is none.
+	 */
+	private static android.util.Size selectPreviewSize(
+			@Nullable android.util.Size[] sizes, android.util.Size analysis) {
+		float aspectRatio = (float) analysis.getWidth() / analysis.getHeight();
+		android.util.Size selected = analysis;
+		if (sizes == null) {
+			return selected;
+		}
+		for (android.util.Size size : sizes) {
+			if (size.getWidth() > MAX_PREVIEW_WIDTH || size.getHeight() > MAX_PREVIEW_HEIGHT) {
+				continue;
+			}
+			float sizeAspectRatio = (float) size.getWidth() / size.getHeight();
+			if (Math.abs(aspectRatio - sizeAspectRatio) < ASPECT_RATIO_TOLERANCE
+					&& (long) size.getWidth() * size.getHeight()
+					> (long) selected.getWidth() * selected.getHeight()) {
+				selected = size;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Returns the rotation of the camera images relative to the upright device, as in {@link
+	 * CameraSource}.
+	 */
+	private int getRotationDegrees(CameraCharacteristics characteristics) {
+		WindowManager windowManager = (WindowManager) activity.getSystemService(Context.WINDOW_SERVICE);
+		int degrees = 0;
+		int rotation = windowManager.getDefaultDisplay().getRotation();
+		switch (rotation) {
+			case Surface.ROTATION_0:
+				degrees = 0;
+				break;
+			case Surface.ROTATION_90:
+				degrees = 90;
+				break;
+			case Surface.ROTATION_180:
+				degrees = 180;
+				break;
+			case Surface.ROTATION_270:
+				degrees = 270;
+				break;
+			default:
+				Log.e(TAG, "Bad rotation value: " + rotation);
+		}
+
+		Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+		int orientation = sensorOrientation != null ? sensorOrientation : 0;
+		if (facing == CameraSource.CAMERA_FACING_FRONT) {
+			return (orientation + degrees) % 360;
+		}
+		return (orientation - degrees + 360) % 360;
+	}
+
+	private static boolean isAutoFocusModeAvailable(CameraCharacteristics characteristics, int mode) {
+		int[] modes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+		if (modes != null) {
+			for (int available : modes) {
+				if (available == mode) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// ==============================================================================================
+	// Frame processing
+	// ==============================================================================================
+
+	/**
+	 * Acquires the images the reader has available, keeping only the newest, and hands it to the
+	 * processor if it is idle. Runs on the camera thread.
+	 */
+	private void drainReader() {
+		Image image = null;
+		synchronized (imageLock) {
+			if (imageReader == null) {
+				return;
+			}
+			while (countAcquiredImages() < maxImages) {
+				Image next = imageReader.acquireNextImage();
+				if (next == null) {
+					break;
+				}
+				if (pendingImage != null) {
+					pendingImage.close();
+					droppedImageCount++;
+				}
+				pendingImage = next;
+			}
+			if (pendingImage != null) {
+				if (processingImage == null) {
+					processingImage = pendingImage;
+					pendingImage = null;
+					image = processingImage;
+				} else if (countAcquiredImages() >= maxImages) {
+					// Keep a slot free for the next frame, so the camera does not wait on the reader.
+					pendingImage.close();
+					pendingImage = null;
+					droppedImageCount++;
+				}
+			}
+		}
+		if (image == null) {
+			return;
+		}
+
+		ImageProcessorSlot slot = ProcessorSlot.acquire(processorSlot);
+		if (slot == null) {
+			returnImage(image);
+			return;
+		}
+		slot.process(image);
+	}
+
+	@GuardedBy("imageLock")
+	private int countAcquiredImages() {
+		return (processingImage != null ? 1 : 0) + (pendingImage != null ? 1 : 0);
+	}
+
+	/**
+	 * Closes an image the processor no longer reads, and moves on to the pending one. May be called
+	 * on any thread.
+	 */
+	private void returnImage(Image image) {
+		synchronized (imageLock) {
+			image.close();
+			if (image == processingImage) {
+				processingImage = null;
+			} else if (image == retiredImage) {
+				retiredImage = null;
+				retiredReader.close();
+				retiredReader = null;
+				return;
+			}
+		}
+		Handler handler = cameraHandler;
+		if (handler != null) {
+			handler.post(drainRunnable);
+		}
+	}
+
+	/**
+	 * Opens the capture session once the camera is open.
+	 */
+	private class DeviceStateCallback extends CameraDevice.StateCallback {
+
+		private final List<Surface> surfaces;
+		private final CameraCharacteristics characteristics;
+
+		DeviceStateCallback(List<Surface> surfaces, CameraCharacteristics characteristics) {
+			this.surfaces = surfaces;
+			this.characteristics = characteristics;
+		}
+
+		@Override
+		public void onOpened(@NonNull CameraDevice device) {
+			cameraDevice = device;
+			cameraOpenCloseLock.release();
+			try {
+				device.createCaptureSession(
+						surfaces, new SessionStateCallback(surfaces, characteristics), cameraHandler);
+			} catch (CameraAccessException | IllegalStateException e) {
+				Log.e(TAG, "Failed to create capture session.", e);
+			}
+		}
+
+		@Override
+		public void onDisconnected(@NonNull CameraDevice device) {
+			cameraOpenCloseLock.release();
+			device.close();
+			cameraDevice = null;
+		}
+
+		@Override
+		public void onError(@NonNull CameraDevice device, int error) {
+			Log.e(TAG, "Camera error: " + error);
+			cameraOpenCloseLock.release();
+			device.close();
+			cameraDevice = null;
+		}
+	}
+
+	/**
+	 * Starts the repeating request to all streams once the session is configured.
+	 */
+	private class SessionStateCallback extends CameraCaptureSession.StateCallback {
+
+		private final List<Surface> surfaces;
+		private final CameraCharacteristics characteristics;
+
+		SessionStateCallback(List<Surface> surfaces, CameraCharacteristics characteristics) {
+			this.surfaces = surfaces;
+			this.characteristics = characteristics;
+		}
+
+		@Override
+		public void onConfigured(@NonNull CameraCaptureSession session) {
+			CameraDevice device = cameraDevice;
+			if (device == null) {
+				// The camera was closed in the meantime.
+				session.close();
+				return;
+			}
+			captureSession = session;
+			try {
+				CaptureRequest.Builder request = device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+				for (Surface surface : surfaces) {
+					request.addTarget(surface);
+				}
+				if (isAutoFocusModeAvailable(
+						characteristics, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO)) {
+					request.set(
+							CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO);
+				} else {
+					Log.i(TAG, "Camera auto focus is not supported on this device.");
+				}
+				session.setRepeatingRequest(request.build(), /* listener= */ null, cameraHandler);
+			} catch (CameraAccessException | IllegalStateException e) {
+				Log.e(TAG, "Failed to start the camera streams.", e);
+			}
+		}
+
+		@Override
+		public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+			Log.e(TAG, "Failed to configure the camera streams.");
+		}
+	}
+
+	/**
+	 * The slot of a processor, which also receives the images it hands back.
+	 */
+	private final class ImageProcessorSlot extends ProcessorSlot
+			implements VisionImageProcessor.ImageReleaseCallback {
+
+		ImageProcessorSlot(VisionImageProcessor processor) {
+			super(processor);
+		}
+
+		/**
+		 * Hands an image held by {@link #tryHold()} to the processor.
+		 */
+		void process(Image image) {
+			try {
+				// The processor owns the image from here on and hands it back through this callback
+				// once it is done reading it.
+				getProcessor().processMediaImage(image, rotationDegrees, graphicOverlay, this);
+			} catch (Exception e) {
+				Log.e(TAG, "Exception thrown from receiver.", e);
+				// Processors only throw before they take the image, see
+				// VisionImageProcessor#processMediaImage, so it is still ours to hand back.
+				onImageReleased(image);
+			}
+		}
+
+		@Override
+		public void onImageReleased(Image image) {
+			returnImage(image);
+			release();
+		}
+	}
+}
@@ -33,6 +33,10 @@ public class CameraImageGraphic extends Graphic {
 		this.bitmap = bitmap;
 	}
 
+	public Bitmap getBitmap() {
+		return bitmap;
+	}
+
 	@Override
 	public void draw(Canvas canvas) {
 		canvas.drawBitmap(bitmap, getTransformationMatrix(), null);
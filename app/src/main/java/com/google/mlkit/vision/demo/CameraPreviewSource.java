@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import android.Manifest;
+import android.view.SurfaceHolder;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresPermission;
+
+import com.google.android.gms.common.images.Size;
+
+import java.io.IOException;
+
+/**
+ * A camera source that {@link CameraSourcePreview} can show, e.g. {@link CameraSource} or {@link
+ * Camera2Source}.
+ */
+public interface CameraPreviewSource {
+
+	/**
+	 * Opens the camera and starts sending frames to the processor, without displaying them.
+	 */
+	@RequiresPermission(Manifest.permission.CAMERA)
+	CameraPreviewSource start() throws IOException;
+
+	/**
+	 * Opens the camera and starts sending frames to the processor, displaying them on {@code
+	 * surfaceHolder}.
+	 */
+	@RequiresPermission(Manifest.permission.CAMERA)
+	CameraPreviewSource start(SurfaceHolder surfaceHolder) throws IOException;
+
+	/**
+	 * Closes the camera. The source may be started again.
+	 */
+	void stop();
+
+	/**
+	 * Closes the camera and stops the processor.
+	 */
+	void release();
+
+	/**
+	 * Returns the size of the frames passed to the processor, or null before the source was
+	 * started. Graphics are drawn in this coordinate space.
+	 */
+	@Nullable
+	Size getPreviewSize();
+
+	/**
+	 * Returns {@link CameraSource#CAMERA_FACING_BACK} or {@link CameraSource#CAMERA_FACING_FRONT}.
+	 */
+	int getCameraFacing();
+}
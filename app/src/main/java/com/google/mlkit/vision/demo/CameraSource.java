@@ -24,6 +24,9 @@ import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Surface;
 import android.view.SurfaceHolder;
@@ -33,20 +36,27 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresPermission;
 
 import com.google.android.gms.common.images.Size;
+import com.google.mlkit.vision.demo.pipeline.buffers.CallbackBufferPolicy;
+import com.google.mlkit.vision.demo.pipeline.buffers.IndexedBuffer;
+import com.google.mlkit.vision.demo.pipeline.buffers.IndexedBufferSet;
+import com.google.mlkit.vision.demo.pipeline.handoff.FrameMailbox;
+import com.google.mlkit.vision.demo.pipeline.metrics.LatencyHistogram;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Manages the camera and allows UI updates on top of it (e.g. overlaying extra Graphics or
  * displaying extra information). This receives preview frames from the camera at a specified rate,
  * sending those frames to child classes' detectors / classifiers as fast as it is able to process.
  */
-public class CameraSource {
+public class CameraSource implements CameraPreviewSource {
   @SuppressLint("InlinedApi")
   public static final int CAMERA_FACING_BACK = CameraInfo.CAMERA_FACING_BACK;
 
@@ -73,19 +83,33 @@ public class CameraSource {
   private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
   private static final float REQUESTED_FPS = 30.0f;
   private static final boolean REQUESTED_AUTO_FOCUS = true;
+  // Range of the preview buffer pool when it sizes itself, see CallbackBufferPolicy.
+  private static final int MIN_CALLBACK_BUFFERS = 3;
+  private static final int DEFAULT_CALLBACK_BUFFERS = 4;
+  private static final int MAX_CALLBACK_BUFFERS = 8;
   private final GraphicOverlay graphicOverlay;
   private final FrameProcessingRunnable processingRunnable;
-  private final Object processorLock = new Object();
   /**
-   * Map to convert between a byte array, received from the camera, and its associated byte buffer.
-   * We use byte buffers internally because this is a more efficient way to call into native code
-   * later (avoids a potential copy).
-   *
-   * <p><b>Note:</b> uses IdentityHashMap here instead of HashMap because the behavior of an array's
-   * equals, hashCode and toString methods is both useless and unexpected. IdentityHashMap enforces
-   * identity ('==') check on the keys.
+   * The processor new frames go to, swapped without waiting for frames in flight. Null until a
+   * processor is set.
+   */
+  private final AtomicReference<BufferProcessorSlot> processorSlot = new AtomicReference<>();
+  /**
+   * The preview buffers of the current camera, to convert between a byte array, received from the
+   * camera, and its associated byte buffer. We use byte buffers internally because this is a more
+   * efficient way to call into native code later (avoids a potential copy). Lookups take no lock.
+   */
+  private final IndexedBufferSet previewBuffers = new IndexedBufferSet();
+  // Intervals between preview callbacks of the current camera, whose spread is the delivery jitter.
+  private final LatencyHistogram callbackIntervals = new LatencyHistogram();
+  /**
+   * Guards handing buffers back to the camera, which may happen on any thread, against the camera
+   * being stopped. Also guards the buffer policy below.
    */
-  private final IdentityHashMap<byte[], ByteBuffer> bytesToByteBuffer = new IdentityHashMap<>();
+  private final Object bufferLock = new Object();
+  // Sizes the preview buffer pool of the current camera and counts its starvation.
+  @Nullable
+  private CallbackBufferPolicy bufferPolicy;
   protected Activity activity;
   private Camera camera;
   private int facing = CAMERA_FACING_BACK;
@@ -103,7 +127,15 @@ public class CameraSource {
    * frames become available from the camera.
    */
   private Thread processingThread;
-  private VisionImageProcessor frameProcessor;
+  /**
+   * Dedicated thread the camera is opened, driven and closed on, so that preview callbacks do not
+   * wait behind layout and drawing on the main thread. Null while stopped, or if the camera runs on
+   * the calling thread.
+   */
+  @Nullable
+  private HandlerThread cameraThread;
+  @Nullable
+  private Handler cameraHandler;
 
   public CameraSource(Activity activity, GraphicOverlay overlay) {
     this.activity = activity;
@@ -168,6 +200,33 @@ public class CameraSource {
     return selectedPair;
   }
 
+  /**
+   * Selects the largest preview size that the current processor is predicted to keep up with at the
+   * requested frame rate, see {@link PreviewSizeTuner}. Returns null if there is no processor yet, or
+   * its costs on this camera were not learned yet.
+   */
+  @Nullable
+  private SizePair selectTunedSizePair(Camera camera, int cameraId) {
+    BufferProcessorSlot slot = processorSlot.get();
+    if (slot == null) {
+      return null;
+    }
+    List<SizePair> validPreviewSizes = generateValidPreviewSizeList(camera);
+    List<Size> sizes = new ArrayList<>(validPreviewSizes.size());
+    for (SizePair sizePair : validPreviewSizes) {
+      sizes.add(sizePair.preview);
+    }
+    int selected =
+            PreviewSizeTuner.getInstance()
+                    .selectSize(
+                            activity,
+                            cameraId,
+                            slot.getProcessor().getClass().getName(),
+                            sizes,
+                            REQUESTED_FPS);
+    return selected == -1 ? null : validPreviewSizes.get(selected);
+  }
+
   /**
    * Generates a list of acceptable preview sizes. Preview sizes are not acceptable if there is not
    * a corresponding picture size of the same aspect ratio. If there is a corresponding picture size
@@ -248,14 +307,14 @@ public class CameraSource {
   /**
    * Stops the camera and releases the resources of the camera and underlying detector.
    */
+  @Override
   public void release() {
-    synchronized (processorLock) {
-      stop();
-      cleanScreen();
+    stop();
+    cleanScreen();
 
-      if (frameProcessor != null) {
-        frameProcessor.stop();
-      }
+    ProcessorSlot slot = processorSlot.getAndSet(null);
+    if (slot != null) {
+      slot.retire();
     }
   }
 
@@ -266,15 +325,20 @@ public class CameraSource {
    * @throws IOException if the camera's preview texture or display could not be initialized
    */
   @RequiresPermission(Manifest.permission.CAMERA)
+  @Override
   public synchronized CameraSource start() throws IOException {
     if (camera != null) {
       return this;
     }
 
-    camera = createCamera();
-    dummySurfaceTexture = new SurfaceTexture(DUMMY_TEXTURE_NAME);
-    camera.setPreviewTexture(dummySurfaceTexture);
-    camera.startPreview();
+    startCameraThread();
+    runOnCameraThread(
+            () -> {
+              camera = createCamera();
+              dummySurfaceTexture = new SurfaceTexture(DUMMY_TEXTURE_NAME);
+              camera.setPreviewTexture(dummySurfaceTexture);
+              camera.startPreview();
+            });
 
     processingThread = new Thread(processingRunnable);
     processingRunnable.setActive(true);
@@ -290,14 +354,19 @@ public class CameraSource {
    * @throws IOException if the supplied surface holder could not be used as the preview display
    */
   @RequiresPermission(Manifest.permission.CAMERA)
+  @Override
   public synchronized CameraSource start(SurfaceHolder surfaceHolder) throws IOException {
     if (camera != null) {
       return this;
     }
 
-    camera = createCamera();
-    camera.setPreviewDisplay(surfaceHolder);
-    camera.startPreview();
+    startCameraThread();
+    runOnCameraThread(
+            () -> {
+              camera = createCamera();
+              camera.setPreviewDisplay(surfaceHolder);
+              camera.startPreview();
+            });
 
     processingThread = new Thread(processingRunnable);
     processingRunnable.setActive(true);
@@ -314,8 +383,10 @@ public class CameraSource {
    * <p>Call {@link #release()} instead to completely shut down this camera source and release the
    * resources of the underlying detector.
    */
+  @Override
   public synchronized void stop() {
     processingRunnable.setActive(false);
+    PreviewSizeTuner.getInstance().stop();
     if (processingThread != null) {
       try {
         // Wait for the thread to complete to ensure that we can't have multiple threads
@@ -328,22 +399,142 @@ public class CameraSource {
       processingThread = null;
     }
 
-    if (camera != null) {
-      camera.stopPreview();
-      camera.setPreviewCallbackWithBuffer(null);
-      try {
-        camera.setPreviewTexture(null);
-        dummySurfaceTexture = null;
-        camera.setPreviewDisplay(null);
-      } catch (Exception e) {
-        Log.e(TAG, "Failed to clear camera preview: " + e);
+    try {
+      // On the camera thread, after the callbacks it already has queued.
+      runOnCameraThread(this::releaseCamera);
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to release camera: " + e);
+    }
+    stopCameraThread();
+  }
+
+  private void releaseCamera() {
+    synchronized (bufferLock) {
+      if (camera != null) {
+        camera.stopPreview();
+        camera.setPreviewCallbackWithBuffer(null);
+        try {
+          camera.setPreviewTexture(null);
+          dummySurfaceTexture = null;
+          camera.setPreviewDisplay(null);
+        } catch (Exception e) {
+          Log.e(TAG, "Failed to clear camera preview: " + e);
+        }
+        camera.release();
+        camera = null;
+        Log.i(TAG, "Preview callback intervals: " + callbackIntervals);
+      }
+
+      // Release the reference to any image buffers, since these will no longer be in use. Buffers
+      // the processor still holds are dropped when it releases them.
+      previewBuffers.clear();
+      if (bufferPolicy != null) {
+        Log.i(TAG, "Preview buffer stats: " + bufferPolicy);
       }
-      camera.release();
-      camera = null;
     }
+  }
 
-    // Release the reference to any image buffers, since these will no longer be in use.
-    bytesToByteBuffer.clear();
+  /**
+   * Starts the camera thread, unless the camera should run on the calling thread. The camera
+   * delivers its callbacks on the looper of the thread it is opened on.
+   */
+  private void startCameraThread() {
+    if (cameraThread != null || !PreferenceUtils.isCameraThreadEnabled(activity)) {
+      return;
+    }
+    cameraThread = new HandlerThread("CameraSource");
+    cameraThread.start();
+    cameraHandler = new Handler(cameraThread.getLooper());
+  }
+
+  private void stopCameraThread() {
+    if (cameraThread == null) {
+      return;
+    }
+    cameraThread.quitSafely();
+    try {
+      cameraThread.join();
+    } catch (InterruptedException e) {
+      Log.d(TAG, "Camera thread interrupted on release.");
+      Thread.currentThread().interrupt();
+    }
+    cameraThread = null;
+    cameraHandler = null;
+  }
+
+  /**
+   * Runs {@code task} on the camera thread and waits for it, or runs it right away if there is no
+   * camera thread.
+   *
+   * @throws IOException if the task threw it, or was interrupted
+   */
+  private void runOnCameraThread(CameraTask task) throws IOException {
+    if (cameraHandler == null) {
+      task.run();
+      return;
+    }
+    FutureTask<Void> future =
+            new FutureTask<>(
+                    () -> {
+                      task.run();
+                      return null;
+                    });
+    cameraHandler.post(future);
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the camera thread.", e);
+    }
+  }
+
+  /**
+   * Returns how often the camera ran out of free preview buffers since it was created. Every such
+   * event makes the camera driver drop frames.
+   */
+  public int getBufferStarvationCount() {
+    synchronized (bufferLock) {
+      return bufferPolicy != null ? bufferPolicy.getStarvationCount() : 0;
+    }
+  }
+
+  /**
+   * Returns the estimated number of preview frames the camera dropped for lack of a free buffer
+   * since it was created.
+   */
+  public int getDroppedFrameCount() {
+    synchronized (bufferLock) {
+      return bufferPolicy != null ? bufferPolicy.getDroppedFrameCount() : 0;
+    }
+  }
+
+  /**
+   * Returns the total time in milliseconds the camera waited for a free preview buffer since it was
+   * created.
+   */
+  public long getBufferStarvationWaitMs() {
+    synchronized (bufferLock) {
+      return bufferPolicy != null ? bufferPolicy.getStarvationWaitMs() : 0;
+    }
+  }
+
+  /**
+   * Returns the size, occupancy, starvation and wait times of the preview buffer pool, e.g. for
+   * logging.
+   */
+  public String getBufferStats() {
+    synchronized (bufferLock) {
+      return bufferPolicy != null ? bufferPolicy.toString() : "no camera";
+    }
   }
 
   /**
@@ -359,6 +550,7 @@ public class CameraSource {
   /**
    * Returns the preview size that is currently in use by the underlying camera.
    */
+  @Override
   public Size getPreviewSize() {
     return previewSize;
   }
@@ -367,6 +559,7 @@ public class CameraSource {
    * Returns the selected camera; one of {@link #CAMERA_FACING_BACK} or {@link
    * #CAMERA_FACING_FRONT}.
    */
+  @Override
   public int getCameraFacing() {
     return facing;
   }
@@ -385,6 +578,9 @@ public class CameraSource {
     Camera camera = Camera.open(requestedCameraId);
 
     SizePair sizePair = PreferenceUtils.getCameraPreviewSizePair(activity, requestedCameraId);
+    if (sizePair == null) {
+      sizePair = selectTunedSizePair(camera, requestedCameraId);
+    }
     if (sizePair == null) {
       sizePair =
               selectSizePair(
@@ -399,6 +595,7 @@ public class CameraSource {
 
     previewSize = sizePair.preview;
     Log.v(TAG, "Camera preview size: " + previewSize);
+    PreviewSizeTuner.getInstance().start(activity, requestedCameraId, previewSize);
 
     int[] previewFpsRange = selectPreviewFpsRange(camera, REQUESTED_FPS);
     if (previewFpsRange == null) {
@@ -433,22 +630,32 @@ public class CameraSource {
 
     camera.setParameters(parameters);
 
-    // Four frame buffers are needed for working with the camera:
+    // Frame buffers are needed for working with the camera:
     //
     //   one for the frame that is currently being executed upon in doing detection
     //   one for the next pending frame to process immediately upon completing detection
-    //   two for the frames that the camera uses to populate future preview images
+    //   at least one for the frames that the camera uses to populate future preview images
+    //
+    // Frames that are superseded before detection picks them up are handed back to the camera
+    // right away, see returnBuffer().
     //
-    // Through trial and error it appears that two free buffers, in addition to the two buffers
-    // used in this code, are needed for the camera to work properly.  Perhaps the camera has
-    // one thread for acquiring images, and another thread for calling into user code.  If only
-    // three buffers are used, then the camera will spew thousands of warning messages when
-    // detection takes a non-trivial amount of time.
+    // How many free buffers the camera needs on top depends on the device, the preview size and
+    // how long the processor holds on to frames. Unless a fixed count is set, the pool starts with
+    // four buffers, grows whenever the camera runs out of them and shrinks while some sit idle.
+    int bufferCount = PreferenceUtils.getPreviewBufferCount(activity);
+    callbackIntervals.reset();
     camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+    synchronized (bufferLock) {
+      bufferPolicy =
+              bufferCount > 0
+                      ? new CallbackBufferPolicy(bufferCount, bufferCount, bufferCount)
+                      : new CallbackBufferPolicy(
+                              DEFAULT_CALLBACK_BUFFERS, MIN_CALLBACK_BUFFERS, MAX_CALLBACK_BUFFERS);
+      while (bufferPolicy.getAllocatedCount() < bufferPolicy.getTargetCount()) {
+        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+        bufferPolicy.onAllocated();
+      }
+    }
 
     return camera;
   }
@@ -504,7 +711,8 @@ public class CameraSource {
 
   /**
    * Creates one buffer for the camera preview callback. The size of the buffer is based off of the
-   * camera preview size and the format of the camera image.
+   * camera preview size and the format of the camera image. The buffer carries the metadata of its
+   * frames, which is reused for every frame it holds.
    *
    * @return a new preview buffer of the appropriate size for the current camera settings
    */
@@ -515,26 +723,58 @@ public class CameraSource {
     int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
 
     // Creating the byte array this way and wrapping it, as opposed to using .allocate(),
-    // should guarantee that there will be an array to work with.
+    // guarantees that there will be an array to work with.
     byte[] byteArray = new byte[bufferSize];
-    ByteBuffer buffer = ByteBuffer.wrap(byteArray);
-    if (!buffer.hasArray() || (buffer.array() != byteArray)) {
-      // I don't think that this will ever happen.  But if it does, then we wouldn't be
-      // passing the preview content to the underlying detector later.
-      throw new IllegalStateException("Failed to create valid buffer for camera source.");
+    previewBuffers
+            .add(byteArray)
+            .setAttachment(
+                    new FrameMetadata.Builder()
+                            .setWidth(previewSize.getWidth())
+                            .setHeight(previewSize.getHeight())
+                            .setRotation(rotationDegrees)
+                            .build());
+    return byteArray;
+  }
+
+  /**
+   * Hands a preview buffer back to the camera once nothing reads it anymore. May be called on any
+   * thread. Buffers that belong to a camera that was stopped in the meantime, or that are no longer
+   * needed because the pool shrank, are dropped.
+   */
+  private void returnBuffer(ByteBuffer data) {
+    IndexedBuffer buffer = previewBuffers.find(data);
+    if (buffer != null) {
+      returnBuffer(buffer);
     }
+  }
 
-    bytesToByteBuffer.put(byteArray, buffer);
-    return byteArray;
+  private void returnBuffer(IndexedBuffer buffer) {
+    synchronized (bufferLock) {
+      if (camera == null || previewBuffers.find(buffer.getData()) != buffer) {
+        return;
+      }
+      if (!bufferPolicy.onBufferReturned(SystemClock.elapsedRealtime())) {
+        previewBuffers.remove(buffer);
+        Log.d(TAG, "Dropped an idle preview buffer, " + bufferPolicy);
+        return;
+      }
+      camera.addCallbackBuffer(buffer.getData());
+    }
   }
 
+  /**
+   * Sends the next frames to {@code processor}. Does not wait for the previous processor: frames it
+   * is still working on drain in the background, and it is stopped once it handed them all back.
+   */
   public void setMachineLearningFrameProcessor(VisionImageProcessor processor) {
-    synchronized (processorLock) {
-      cleanScreen();
-      if (frameProcessor != null) {
-        frameProcessor.stop();
-      }
-      frameProcessor = processor;
+    ProcessorSlot current = processorSlot.get();
+    if (current != null && current.getProcessor() == processor) {
+      return;
+    }
+    ProcessorSlot previous = processorSlot.getAndSet(new BufferProcessorSlot(processor));
+    cleanScreen();
+    if (previous != null) {
+      previous.retire();
     }
   }
 
@@ -572,11 +812,25 @@ public class CameraSource {
   }
 
   /**
-   * Called when the camera has a new preview frame.
+   * Work to do with the camera on its thread.
+   */
+  private interface CameraTask {
+    void run() throws IOException;
+  }
+
+  /**
+   * Called when the camera has a new preview frame, on the thread the camera was opened on.
    */
   private class CameraPreviewCallback implements Camera.PreviewCallback {
+    private long lastFrameMs;
+
     @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
+      long nowMs = SystemClock.elapsedRealtime();
+      if (lastFrameMs != 0) {
+        callbackIntervals.record(nowMs - lastFrameMs);
+      }
+      lastFrameMs = nowMs;
       processingRunnable.setNextFrame(data, camera);
     }
   }
@@ -590,26 +844,31 @@ public class CameraSource {
    * frames come in, the most recent frame is held onto as pending. As soon as detection and its
    * associated processing is done for the previous frame, detection on the mostly recently received
    * frame will immediately start on the same thread.
+   *
+   * <p>Frames are handed over through a {@link FrameMailbox}, so the camera callback never waits
+   * for the processing thread.
    */
   private class FrameProcessingRunnable implements Runnable {
 
-    // This lock guards all of the member variables below.
-    private final Object lock = new Object();
-    private boolean active = true;
-
-    // These pending variables hold the state associated with the new frame awaiting processing.
-    private ByteBuffer pendingFrameData;
+    // Holds the pending frame awaiting processing. Closed while the camera source is stopped.
+    private final FrameMailbox<IndexedBuffer> mailbox = new FrameMailbox<>();
 
     FrameProcessingRunnable() {
     }
 
     /**
-     * Marks the runnable as active/not active. Signals any blocked threads to continue.
+     * Marks the runnable as active/not active. Wakes the processing thread if it is waiting.
      */
     void setActive(boolean active) {
-      synchronized (lock) {
-        this.active = active;
-        lock.notifyAll();
+      if (active) {
+        // A frame still pending may belong to the camera that was stopped, in which case it is
+        // dropped, or may have been delivered already by the new one.
+        IndexedBuffer pending = mailbox.open();
+        if (pending != null) {
+          returnBuffer(pending);
+        }
+      } else {
+        mailbox.close();
       }
     }
 
@@ -617,34 +876,39 @@ public class CameraSource {
      * Sets the frame data received from the camera. This adds the previous unused frame buffer (if
      * present) back to the camera, and keeps a pending reference to the frame data for future use.
      */
-    @SuppressWarnings("ByteBufferBackingArray")
     void setNextFrame(byte[] data, Camera camera) {
-      synchronized (lock) {
-        if (pendingFrameData != null) {
-          camera.addCallbackBuffer(pendingFrameData.array());
-          pendingFrameData = null;
-        }
-
-        if (!bytesToByteBuffer.containsKey(data)) {
-          Log.d(
-                  TAG,
-                  "Skipping frame. Could not find ByteBuffer associated with the image "
-                          + "data from the camera.");
-          return;
+      long nowMs = SystemClock.elapsedRealtime();
+      synchronized (bufferLock) {
+        if (bufferPolicy != null && bufferPolicy.onFrameDelivered(nowMs)) {
+          camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+          bufferPolicy.onAllocated();
+          Log.d(TAG, "Camera ran short of preview buffers, added one: " + bufferPolicy);
         }
+      }
 
-        pendingFrameData = bytesToByteBuffer.get(data);
+      IndexedBuffer frame = previewBuffers.find(data);
+      if (frame == null) {
+        Log.d(
+                TAG,
+                "Skipping frame. Could not find ByteBuffer associated with the image "
+                        + "data from the camera.");
+        return;
+      }
+      // Camera1 does not report capture times, so the time the frame was delivered is used
+      // instead. The buffer is owned by this thread until it is offered below.
+      ((FrameMetadata) frame.getAttachment()).setCaptureTimeMs(nowMs);
 
-        // Notify the processor thread if it is waiting on the next frame (see below).
-        lock.notifyAll();
+      IndexedBuffer superseded = mailbox.offer(frame);
+      if (superseded != null) {
+        returnBuffer(superseded);
       }
     }
 
     /**
      * As long as the processing thread is active, this executes detection on frames continuously.
      * The next pending frame is either immediately available or hasn't been received yet. Once it
-     * is available, we transfer the frame info to local variables and run detection on that frame.
-     * It immediately loops back for the next frame without pausing.
+     * is available, we take it out of the mailbox and run detection on that frame. It immediately
+     * loops back for the next frame without pausing.
      *
      * <p>If detection takes longer than the time in between new frames from the camera, this will
      * mean that this loop will run without ever waiting on a frame, avoiding any context switching
@@ -654,60 +918,68 @@ public class CameraSource {
      * FPS setting above to allow for some idle time in between frames.
      */
     @SuppressLint("InlinedApi")
-    @SuppressWarnings({"GuardedBy", "ByteBufferBackingArray"})
     @Override
     public void run() {
-      ByteBuffer data;
-
       while (true) {
-        synchronized (lock) {
-          while (active && (pendingFrameData == null)) {
-            try {
-              // Wait for the next frame to be received from the camera, since we
-              // don't have it yet.
-              lock.wait();
-            } catch (InterruptedException e) {
-              Log.d(TAG, "Frame processing loop terminated.", e);
-              return;
-            }
-          }
-
-          if (!active) {
-            // Exit the loop once this camera source is stopped or released.  We check
-            // this here, immediately after the wait() above, to handle the case where
-            // setActive(false) had been called, triggering the termination of this
-            // loop.
-            return;
-          }
-
-          // Hold onto the frame data locally, so that we can use this for detection
-          // below.  We need to clear pendingFrameData to ensure that this buffer isn't
-          // recycled back to the camera before we are done using that data.
-          data = pendingFrameData;
-          pendingFrameData = null;
+        IndexedBuffer frame;
+        try {
+          // Parks until the camera delivers the next frame, unless one is pending already.
+          frame = mailbox.take();
+        } catch (InterruptedException e) {
+          Log.d(TAG, "Frame processing loop terminated.", e);
+          return;
+        }
+        if (frame == null) {
+          // The mailbox is closed once this camera source is stopped or released.
+          return;
         }
 
-        // The code below needs to run outside of synchronization, because this will allow
-        // the camera to add pending frame(s) while we are running detection on the current
-        // frame.
+        // Taking the frame out of the mailbox ensures that this buffer isn't recycled back to the
+        // camera by a newer frame before we are done using that data. The code below runs while
+        // the camera keeps adding pending frames.
 
-        try {
-          synchronized (processorLock) {
-            frameProcessor.processByteBuffer(
-                    data,
-                    new FrameMetadata.Builder()
-                            .setWidth(previewSize.getWidth())
-                            .setHeight(previewSize.getHeight())
-                            .setRotation(rotationDegrees)
-                            .build(),
-                    graphicOverlay);
-          }
-        } catch (Exception t) {
-          Log.e(TAG, "Exception thrown from receiver.", t);
-        } finally {
-          camera.addCallbackBuffer(data.array());
+        BufferProcessorSlot slot = ProcessorSlot.acquire(processorSlot);
+        if (slot == null) {
+          returnBuffer(frame);
+          continue;
         }
+        slot.process(frame);
       }
     }
   }
+
+  /**
+   * The slot of a processor, which also receives the buffers it hands back.
+   */
+  private final class BufferProcessorSlot extends ProcessorSlot
+          implements VisionImageProcessor.BufferReleaseCallback {
+
+    BufferProcessorSlot(VisionImageProcessor processor) {
+      super(processor);
+    }
+
+    /**
+     * Hands a frame held by {@link #tryHold()} to the processor.
+     */
+    void process(IndexedBuffer frame) {
+      try {
+        // The processor owns the buffer from here on and hands it back through this callback
+        // once it is done reading it.
+        getProcessor()
+                .processByteBuffer(
+                        frame.getBuffer(), (FrameMetadata) frame.getAttachment(), graphicOverlay, this);
+      } catch (Exception t) {
+        Log.e(TAG, "Exception thrown from receiver.", t);
+        // Processors only throw before they take the buffer, see
+        // VisionImageProcessor#processByteBuffer, so it is still ours to hand back.
+        onBufferReleased(frame.getBuffer());
+      }
+    }
+
+    @Override
+    public void onBufferReleased(ByteBuffer buffer) {
+      returnBuffer(buffer);
+      release();
+    }
+  }
 }
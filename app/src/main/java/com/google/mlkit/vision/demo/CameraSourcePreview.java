@@ -39,7 +39,7 @@ public class CameraSourcePreview extends ViewGroup {
 	private final SurfaceView surfaceView;
 	private boolean startRequested;
 	private boolean surfaceAvailable;
-	private CameraSource cameraSource;
+	private CameraPreviewSource cameraSource;
 
 	private GraphicOverlay overlay;
 
@@ -54,7 +54,7 @@ public class CameraSourcePreview extends ViewGroup {
 		addView(surfaceView);
 	}
 
-	private void start(CameraSource cameraSource) throws IOException {
+	private void start(CameraPreviewSource cameraSource) throws IOException {
 		this.cameraSource = cameraSource;
 
 		if (this.cameraSource != null) {
@@ -63,7 +63,7 @@ public class CameraSourcePreview extends ViewGroup {
 		}
 	}
 
-	public void start(CameraSource cameraSource, GraphicOverlay overlay) throws IOException {
+	public void start(CameraPreviewSource cameraSource, GraphicOverlay overlay) throws IOException {
 		this.overlay = overlay;
 		start(cameraSource);
 	}
@@ -18,17 +18,22 @@ package com.google.mlkit.vision.demo;
 
 /**
  * Describing a frame info.
+ *
+ * <p>{@link CameraSource} keeps one instance per preview buffer and updates its capture time when
+ * the buffer is filled again, so processors must not read it after handing the buffer back.
  */
 public class FrameMetadata {
 
 	private final int width;
 	private final int height;
 	private final int rotation;
+	private long captureTimeMs;
 
-	private FrameMetadata(int width, int height, int rotation) {
+	private FrameMetadata(int width, int height, int rotation, long captureTimeMs) {
 		this.width = width;
 		this.height = height;
 		this.rotation = rotation;
+		this.captureTimeMs = captureTimeMs;
 	}
 
 	public int getWidth() {
@@ -43,6 +48,21 @@ public class FrameMetadata {
 		return rotation;
 	}
 
+	/**
+	 * Returns when the frame was captured, in the {@link android.os.SystemClock#elapsedRealtime()}
+	 * time base, or 0 if unknown.
+	 */
+	public long getCaptureTimeMs() {
+		return captureTimeMs;
+	}
+
+	/**
+	 * Reuses this instance for the next frame of the same buffer.
+	 */
+	void setCaptureTimeMs(long captureTimeMs) {
+		this.captureTimeMs = captureTimeMs;
+	}
+
 	/**
 	 * Builder of {@link FrameMetadata}.
 	 */
@@ -51,6 +71,7 @@ public class FrameMetadata {
 		private int width;
 		private int height;
 		private int rotation;
+		private long captureTimeMs;
 
 		public Builder setWidth(int width) {
 			this.width = width;
@@ -67,8 +88,13 @@ public class FrameMetadata {
 			return this;
 		}
 
+		public Builder setCaptureTimeMs(long captureTimeMs) {
+			this.captureTimeMs = captureTimeMs;
+			return this;
+		}
+
 		public FrameMetadata build() {
-			return new FrameMetadata(width, height, rotation);
+			return new FrameMetadata(width, height, rotation, captureTimeMs);
 		}
 	}
 }
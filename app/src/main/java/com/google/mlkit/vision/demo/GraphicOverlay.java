@@ -18,13 +18,16 @@ package com.google.mlkit.vision.demo;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.DashPathEffect;
 import android.graphics.Matrix;
+import android.graphics.PathEffect;
 import android.util.AttributeSet;
 import android.view.View;
 
 import com.google.common.base.Preconditions;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -32,6 +35,11 @@ import java.util.List;
  * (i.e., the camera preview). The creator can add graphics objects, update the objects, and remove
  * them, triggering the appropriate drawing and invalidation within the view.
  *
+ * <p>Graphics are double-buffered: {@link #add(Graphic)} builds the next scene, which {@link
+ * #publish()} shows in place of the current one in a single swap. Drawing iterates an immutable
+ * snapshot of the shown scene, so a slow draw does not hold up producers, and producers adding
+ * graphics do not hold up drawing or show a half-built scene.
+ *
  * <p>Supports scaling and mirroring of the graphics relative the camera's preview properties. The
  * idea is that detection items are expressed in terms of an image size, but need to be scaled up
  * to the full view size, and also mirrored in the case of the front-facing camera.
@@ -47,8 +55,21 @@ import java.util.List;
  * </ol>
  */
 public class GraphicOverlay extends View {
+	private static final Graphic[] NO_GRAPHICS = new Graphic[0];
+
+	// Guards the image source info and the transformation derived from it.
 	private final Object lock = new Object();
-	private final List<Graphic> graphics = new ArrayList<>();
+	// Guards the scene being built. Never held while drawing.
+	private final Object sceneLock = new Object();
+	// The next scene, built by add() and shown by publish().
+	private final List<Graphic> nextGraphics = new ArrayList<>();
+	// The scene shown, replaced as a whole and never modified.
+	private volatile Graphic[] shownGraphics = NO_GRAPHICS;
+	// Number of the scene shown, counted by publish(). remove() and clear() only take graphics away
+	// from it, so they keep the number.
+	private long shownScene;
+	// Number of the last scene drawn completely. Only written on the main thread.
+	private volatile long drawnScene;
 	// Matrix for transforming from image coordinates to overlay view coordinates.
 	private final Matrix transformationMatrix = new Matrix();
 
@@ -74,30 +95,58 @@ public class GraphicOverlay extends View {
 	}
 
 	/**
-	 * Removes all graphics from the overlay.
+	 * Removes all graphics from the overlay, and discards the scene being built.
 	 */
 	public void clear() {
-		synchronized (lock) {
-			graphics.clear();
+		synchronized (sceneLock) {
+			nextGraphics.clear();
+			shownGraphics = NO_GRAPHICS;
 		}
 		postInvalidate();
 	}
 
 	/**
-	 * Adds a graphic to the overlay.
+	 * Adds a graphic to the scene being built. It is shown by the next {@link #publish()}.
 	 */
 	public void add(Graphic graphic) {
-		synchronized (lock) {
-			graphics.add(graphic);
+		synchronized (sceneLock) {
+			nextGraphics.add(graphic);
+		}
+	}
+
+	/**
+	 * Shows the scene built since the last publish in place of the current one, and starts building
+	 * the next one. Returns the number of the scene, see {@link #getDrawnScene()}.
+	 */
+	public long publish() {
+		long scene;
+		synchronized (sceneLock) {
+			shownGraphics = nextGraphics.toArray(NO_GRAPHICS);
+			nextGraphics.clear();
+			scene = ++shownScene;
 		}
+		postInvalidate();
+		return scene;
+	}
+
+	/**
+	 * Returns the number of the last published scene that was drawn completely, or 0 if none was.
+	 * Graphics that were published in an older scene only are no longer drawn.
+	 */
+	public long getDrawnScene() {
+		return drawnScene;
 	}
 
 	/**
-	 * Removes a graphic from the overlay.
+	 * Removes a graphic from the overlay, both from the scene shown and the one being built.
 	 */
 	public void remove(Graphic graphic) {
-		synchronized (lock) {
-			graphics.remove(graphic);
+		synchronized (sceneLock) {
+			nextGraphics.remove(graphic);
+			List<Graphic> shown = new ArrayList<>(Arrays.asList(shownGraphics));
+			if (shown.remove(graphic)) {
+				shownGraphics = shown.toArray(NO_GRAPHICS);
+			}
 		}
 		postInvalidate();
 	}
@@ -169,20 +218,38 @@ public class GraphicOverlay extends View {
 
 		synchronized (lock) {
 			updateTransformationIfNeeded();
+		}
 
-			for (Graphic graphic : graphics) {
-				graphic.draw(canvas);
-			}
+		Graphic[] graphics;
+		long scene;
+		synchronized (sceneLock) {
+			graphics = shownGraphics;
+			scene = shownScene;
 		}
+		for (Graphic graphic : graphics) {
+			graphic.draw(canvas);
+		}
+		drawnScene = scene;
 	}
 
 	/**
 	 * Base class for a custom graphics object to be rendered within the graphic overlay. Subclass
 	 * this and implement the {@link Graphic#draw(Canvas)} method to define the graphics element. Add
-	 * instances to the overlay using {@link GraphicOverlay#add(Graphic)}.
+	 * instances to the overlay using {@link GraphicOverlay#add(Graphic)}, and show them using {@link
+	 * GraphicOverlay#publish()}.
 	 */
 	public abstract static class Graphic {
+		/**
+		 * Path effect for outlines of graphics that are predicted rather than detected.
+		 */
+		protected static final PathEffect PREDICTED_PATH_EFFECT =
+				new DashPathEffect(new float[]{20.0f, 10.0f}, 0);
+
 		private GraphicOverlay overlay;
+		// Offset applied to image coordinates before they are transformed to view coordinates.
+		private float imageOffsetX;
+		private float imageOffsetY;
+		private boolean isPredicted;
 
 		public Graphic(GraphicOverlay overlay) {
 			this.overlay = overlay;
@@ -221,14 +288,35 @@ public class GraphicOverlay extends View {
 			return overlay.isImageFlipped;
 		}
 
+		/**
+		 * Shifts everything this graphic draws by the given amount in image coordinates, e.g. to move
+		 * previous results to the position predicted for the current frame.
+		 */
+		public void setImageOffset(float dx, float dy) {
+			imageOffsetX = dx;
+			imageOffsetY = dy;
+		}
+
+		/**
+		 * Marks this graphic as predicted from previous results rather than detected in the current
+		 * frame.
+		 */
+		public void setPredicted(boolean isPredicted) {
+			this.isPredicted = isPredicted;
+		}
+
+		public boolean isPredicted() {
+			return isPredicted;
+		}
+
 		/**
 		 * Adjusts the x coordinate from the image's coordinate system to the view coordinate system.
 		 */
 		public float translateX(float x) {
 			if (overlay.isImageFlipped) {
-				return overlay.getWidth() - (scale(x) - overlay.postScaleWidthOffset);
+				return overlay.getWidth() - (scale(x + imageOffsetX) - overlay.postScaleWidthOffset);
 			} else {
-				return scale(x) - overlay.postScaleWidthOffset;
+				return scale(x + imageOffsetX) - overlay.postScaleWidthOffset;
 			}
 		}
 
@@ -236,7 +324,7 @@ public class GraphicOverlay extends View {
 		 * Adjusts the y coordinate from the image's coordinate system to the view coordinate system.
 		 */
 		public float translateY(float y) {
-			return scale(y) - overlay.postScaleHeightOffset;
+			return scale(y + imageOffsetY) - overlay.postScaleHeightOffset;
 		}
 
 		/**
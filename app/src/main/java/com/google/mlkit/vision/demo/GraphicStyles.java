@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared paints of the graphics that color results by tracking id, e.g. faces and objects, and of
+ * the text drawn straight on the camera image, e.g. inference info.
+ *
+ * <p>There is one set of paints per text size and stroke width, created on first use and shared by
+ * all graphics after, rather than created by every graphic of every frame. Paints are indexed by
+ * color, see {@link #getColorIndex(Integer)}, and role. They are shared between graphics and must
+ * not be modified.
+ */
+public final class GraphicStyles {
+
+	private static final int[][] COLORS =
+			new int[][]{
+					// {Text color, background color}
+					{Color.BLACK, Color.WHITE},
+					{Color.WHITE, Color.MAGENTA},
+					{Color.BLACK, Color.LTGRAY},
+					{Color.WHITE, Color.RED},
+					{Color.WHITE, Color.BLUE},
+					{Color.WHITE, Color.DKGRAY},
+					{Color.BLACK, Color.CYAN},
+					{Color.BLACK, Color.YELLOW},
+					{Color.WHITE, Color.BLACK},
+					{Color.BLACK, Color.GREEN}
+			};
+
+	public static final int NUM_COLORS = COLORS.length;
+
+	private static final float INFO_TEXT_SHADOW_RADIUS = 5.0f;
+
+	private static final List<GraphicStyles> cache = new ArrayList<>();
+
+	private final float textSize;
+	private final float strokeWidth;
+	private final Paint[] textPaints = new Paint[NUM_COLORS];
+	private final Paint[] boxPaints = new Paint[NUM_COLORS];
+	private final Paint[] predictedBoxPaints = new Paint[NUM_COLORS];
+	private final Paint[] labelPaints = new Paint[NUM_COLORS];
+	private final Paint infoTextPaint = new Paint();
+
+	private GraphicStyles(float textSize, float strokeWidth) {
+		this.textSize = textSize;
+		this.strokeWidth = strokeWidth;
+		for (int i = 0; i < NUM_COLORS; i++) {
+			textPaints[i] = new Paint();
+			textPaints[i].setColor(COLORS[i][0] /* text color */);
+			textPaints[i].setTextSize(textSize);
+
+			boxPaints[i] = new Paint();
+			boxPaints[i].setColor(COLORS[i][1] /* background color */);
+			boxPaints[i].setStyle(Paint.Style.STROKE);
+			boxPaints[i].setStrokeWidth(strokeWidth);
+
+			predictedBoxPaints[i] = new Paint(boxPaints[i]);
+			predictedBoxPaints[i].setPathEffect(GraphicOverlay.Graphic.PREDICTED_PATH_EFFECT);
+
+			labelPaints[i] = new Paint();
+			labelPaints[i].setColor(COLORS[i][1] /* background color */);
+			labelPaints[i].setStyle(Paint.Style.FILL);
+		}
+
+		infoTextPaint.setColor(Color.WHITE);
+		infoTextPaint.setTextSize(textSize);
+		infoTextPaint.setShadowLayer(INFO_TEXT_SHADOW_RADIUS, 0f, 0f, Color.BLACK);
+	}
+
+	/**
+	 * Returns the paints for the given text size and stroke width, created on the first call.
+	 */
+	public static synchronized GraphicStyles get(float textSize, float strokeWidth) {
+		for (GraphicStyles styles : cache) {
+			if (styles.textSize == textSize && styles.strokeWidth == strokeWidth) {
+				return styles;
+			}
+		}
+		GraphicStyles styles = new GraphicStyles(textSize, strokeWidth);
+		cache.add(styles);
+		return styles;
+	}
+
+	/**
+	 * Returns the color of a result, picked by its tracking id, or the first color if it has none.
+	 */
+	public static int getColorIndex(@Nullable Integer trackingId) {
+		return trackingId == null ? 0 : Math.abs(trackingId % NUM_COLORS);
+	}
+
+	/**
+	 * Returns the paint for text on a label.
+	 */
+	public Paint getTextPaint(int colorIndex) {
+		return textPaints[colorIndex];
+	}
+
+	/**
+	 * Returns the paint for the outline of a result, dashed if the result is predicted.
+	 */
+	public Paint getBoxPaint(int colorIndex, boolean isPredicted) {
+		return isPredicted ? predictedBoxPaints[colorIndex] : boxPaints[colorIndex];
+	}
+
+	/**
+	 * Returns the paint for the background of a label.
+	 */
+	public Paint getLabelPaint(int colorIndex) {
+		return labelPaints[colorIndex];
+	}
+
+	/**
+	 * Returns the paint for text without a label, which has a shadow to stay readable on any image.
+	 */
+	public Paint getInfoTextPaint() {
+		return infoTextPaint;
+	}
+}
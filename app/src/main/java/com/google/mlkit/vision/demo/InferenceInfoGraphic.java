@@ -17,7 +17,6 @@
 package com.google.mlkit.vision.demo;
 
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 
 import androidx.annotation.Nullable;
@@ -27,17 +26,16 @@ import androidx.annotation.Nullable;
  */
 public class InferenceInfoGraphic extends GraphicOverlay.Graphic {
 
-	private static final int TEXT_COLOR = Color.WHITE;
 	private static final float TEXT_SIZE = 60.0f;
+	private static final GraphicStyles STYLES = GraphicStyles.get(TEXT_SIZE, /* strokeWidth= */ 0f);
 
-	private final Paint textPaint;
 	private final GraphicOverlay overlay;
-	private final long frameLatency;
-	private final long detectorLatency;
+	private long frameLatency;
+	private long detectorLatency;
 
 	// Only valid when a stream of input images is being processed. Null for single image mode.
 	@Nullable
-	private final Integer framesPerSecond;
+	private Integer framesPerSecond;
 	private boolean showLatencyInfo = true;
 
 	public InferenceInfoGraphic(
@@ -50,13 +48,19 @@ public class InferenceInfoGraphic extends GraphicOverlay.Graphic {
 		this.frameLatency = frameLatency;
 		this.detectorLatency = detectorLatency;
 		this.framesPerSecond = framesPerSecond;
-		textPaint = new Paint();
-		textPaint.setColor(TEXT_COLOR);
-		textPaint.setTextSize(TEXT_SIZE);
-		textPaint.setShadowLayer(5.0f, 0f, 0f, Color.BLACK);
 		postInvalidate();
 	}
 
+	/**
+	 * Shows the info of a new frame, so that a stream can keep reusing one instance.
+	 */
+	public synchronized void update(
+			long frameLatency, long detectorLatency, @Nullable Integer framesPerSecond) {
+		this.frameLatency = frameLatency;
+		this.detectorLatency = detectorLatency;
+		this.framesPerSecond = framesPerSecond;
+	}
+
 	/**
 	 * Creates an {@link InferenceInfoGraphic} to only display image size.
 	 */
@@ -69,6 +73,7 @@ public class InferenceInfoGraphic extends GraphicOverlay.Graphic {
 	public synchronized void draw(Canvas canvas) {
 		float x = TEXT_SIZE * 0.5f;
 		float y = TEXT_SIZE * 1.5f;
+		Paint textPaint = STYLES.getInfoTextPaint();
 
 		canvas.drawText(
 				"InputImage size: " + overlay.getImageHeight() + "x" + overlay.getImageWidth(),
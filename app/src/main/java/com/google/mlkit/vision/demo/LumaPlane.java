@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import android.media.Image;
+
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only view of the Y (luma) plane of a camera frame, for stages that do not need color. The
+ * plane is not copied, so the view is only valid as long as the frame it was taken from.
+ *
+ * <p>The luma of the pixel at {@code (x, y)} is at {@code y * getRowStride() + x * getPixelStride()}
+ * of {@link #getBuffer()}; rows may be padded beyond {@code width * pixelStride} bytes.
+ */
+public final class LumaPlane {
+
+	private final ByteBuffer buffer;
+	private final int width;
+	private final int height;
+	private final int rowStride;
+	private final int pixelStride;
+	private final int rotation;
+
+	private LumaPlane(
+			ByteBuffer buffer, int width, int height, int rowStride, int pixelStride, int rotation) {
+		this.buffer = buffer;
+		this.width = width;
+		this.height = height;
+		this.rowStride = rowStride;
+		this.pixelStride = pixelStride;
+		this.rotation = rotation;
+	}
+
+	/**
+	 * Returns a view of the first {@code width * height} bytes of an NV21 buffer.
+	 */
+	public static LumaPlane fromNv21(ByteBuffer nv21, FrameMetadata metadata) {
+		ByteBuffer luma = nv21.asReadOnlyBuffer();
+		luma.clear();
+		luma.limit(metadata.getWidth() * metadata.getHeight());
+		return new LumaPlane(
+				luma.slice(),
+				metadata.getWidth(),
+				metadata.getHeight(),
+				metadata.getWidth(),
+				/* pixelStride= */ 1,
+				metadata.getRotation());
+	}
+
+	/**
+	 * Returns a view of the first plane of a YUV_420_888 image from CameraX.
+	 */
+	public static LumaPlane fromImageProxy(ImageProxy image) {
+		ImageProxy.PlaneProxy plane = image.getPlanes()[0];
+		ByteBuffer luma = plane.getBuffer().asReadOnlyBuffer();
+		luma.rewind();
+		return new LumaPlane(
+				luma,
+				image.getWidth(),
+				image.getHeight(),
+				plane.getRowStride(),
+				plane.getPixelStride(),
+				image.getImageInfo().getRotationDegrees());
+	}
+
+	/**
+	 * Returns a view of the first plane of a YUV_420_888 media Image, e.g. from an ImageReader.
+	 */
+	public static LumaPlane fromMediaImage(Image image, int rotation) {
+		Image.Plane plane = image.getPlanes()[0];
+		ByteBuffer luma = plane.getBuffer().asReadOnlyBuffer();
+		luma.rewind();
+		return new LumaPlane(
+				luma,
+				image.getWidth(),
+				image.getHeight(),
+				plane.getRowStride(),
+				plane.getPixelStride(),
+				rotation);
+	}
+
+	/**
+	 * Returns the plane. It is shared by all readers of the view, so only absolute gets should be used
+	 * on it.
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getRowStride() {
+		return rowStride;
+	}
+
+	public int getPixelStride() {
+		return pixelStride;
+	}
+
+	/**
+	 * Returns the clockwise rotation that makes the frame upright, in degrees.
+	 */
+	public int getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * Returns the luma of the pixel at {@code (x, y)}, from 0 to 255.
+	 */
+	public int getLuma(int x, int y) {
+		return buffer.get(y * rowStride + x * pixelStride) & 0xFF;
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.common.images.Size;
+import com.google.mlkit.vision.demo.pipeline.sizing.PreviewCostModel;
+import com.google.mlkit.vision.demo.preference.PreferenceUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Selects Camera1 preview sizes with a {@link PreviewCostModel} learned per camera and detector,
+ * and feeds the models the cost of the frames processed while a camera runs.
+ *
+ * <p>Models are persisted, so the first run of a camera with a detector uses the default preview
+ * size, and later runs the largest size predicted to keep up with the requested frame rate. Every
+ * run refines the model with the size it actually ran at. Models are written to the preferences
+ * outside the lock of the tuner, so that selecting a size never waits for a write.
+ */
+public final class PreviewSizeTuner {
+
+	private static final String TAG = "PreviewSizeTuner";
+
+	private static final PreviewSizeTuner instance = new PreviewSizeTuner();
+
+	// Models loaded or learned by this process, by camera and detector.
+	@GuardedBy("this")
+	private final Map<String, PreviewCostModel> models = new HashMap<>();
+	@GuardedBy("this")
+	@Nullable
+	private Context context;
+	// The camera whose frames are recorded, or -1 while none runs.
+	@GuardedBy("this")
+	private int activeCameraId = -1;
+	@GuardedBy("this")
+	private long activePixels;
+
+	private PreviewSizeTuner() {
+	}
+
+	public static PreviewSizeTuner getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the index of the largest of {@code sizes} predicted to keep up with {@code targetFps}
+	 * when {@code detector} processes the frames of the camera, or -1 if the model is not trained
+	 * yet.
+	 *
+	 * @param detector the class name of the processor
+	 */
+	public synchronized int selectSize(
+			Context context, int cameraId, String detector, List<Size> sizes, float targetFps) {
+		PreviewCostModel model = getModel(context, getKey(cameraId, detector));
+		if (!model.isTrained() || sizes.isEmpty()) {
+			return -1;
+		}
+		long[] pixelCounts = new long[sizes.size()];
+		for (int i = 0; i < pixelCounts.length; i++) {
+			pixelCounts[i] = (long) sizes.get(i).getWidth() * sizes.get(i).getHeight();
+		}
+		double budgetMs = PreviewCostModel.getFrameBudgetMs(targetFps);
+		int selected = model.selectLargestWithinBudget(pixelCounts, budgetMs);
+		Log.i(
+				TAG,
+				String.format(
+						Locale.US,
+						"Preview size %s predicted at %.1f ms per frame, budget %.1f ms; model: %s",
+						sizes.get(selected),
+						model.predictFrameMs(pixelCounts[selected]),
+						budgetMs,
+						model));
+		return selected;
+	}
+
+	/**
+	 * Starts recording the frames of the camera, which runs at {@code previewSize}.
+	 */
+	public synchronized void start(Context context, int cameraId, Size previewSize) {
+		this.context = context.getApplicationContext();
+		activeCameraId = cameraId;
+		activePixels = (long) previewSize.getWidth() * previewSize.getHeight();
+	}
+
+	/**
+	 * Records the cost of a camera frame processed by {@code detector}. Frames of another size than
+	 * the running preview, e.g. of still images, are ignored.
+	 *
+	 * @param conversionMs the time from the frame's arrival until it was handed to the detector
+	 * @param detectorMs   the time the detector took on it
+	 */
+	public void recordFrame(
+			String detector, int width, int height, long conversionMs, long detectorMs) {
+		Context context;
+		String key;
+		String serializedModel;
+		synchronized (this) {
+			if (activeCameraId == -1 || (long) width * height != activePixels) {
+				return;
+			}
+			context = this.context;
+			key = getKey(activeCameraId, detector);
+			PreviewCostModel model = getModel(context, key);
+			boolean wasTrained = model.isTrained();
+			model.addFrame(activePixels, conversionMs, detectorMs);
+			if (wasTrained || !model.isTrained()) {
+				return;
+			}
+			serializedModel = model.serialize();
+		}
+		// Saved right away, in case the camera is not stopped cleanly.
+		PreferenceUtils.savePreviewCostModel(context, key, serializedModel);
+	}
+
+	/**
+	 * Stops recording, and persists the models of the camera.
+	 */
+	public void stop() {
+		Context context;
+		List<String> keys = new ArrayList<>();
+		List<String> serializedModels = new ArrayList<>();
+		synchronized (this) {
+			if (activeCameraId == -1) {
+				return;
+			}
+			context = this.context;
+			String prefix = getKey(activeCameraId, "");
+			for (Map.Entry<String, PreviewCostModel> entry : models.entrySet()) {
+				if (entry.getKey().startsWith(prefix) && entry.getValue().isTrained()) {
+					keys.add(entry.getKey());
+					serializedModels.add(entry.getValue().serialize());
+					Log.d(TAG, "Preview cost model of " + entry.getKey() + ": " + entry.getValue());
+				}
+			}
+			activeCameraId = -1;
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			PreferenceUtils.savePreviewCostModel(context, keys.get(i), serializedModels.get(i));
+		}
+	}
+
+	@GuardedBy("this")
+	private PreviewCostModel getModel(Context context, String key) {
+		PreviewCostModel model = models.get(key);
+		if (model == null) {
+			model = PreferenceUtils.getPreviewCostModel(context, key);
+			if (model == null) {
+				model = new PreviewCostModel();
+			}
+			models.put(key, model);
+		}
+		return model;
+	}
+
+	private static String getKey(int cameraId, String detector) {
+		return cameraId + "/" + detector;
+	}
+}
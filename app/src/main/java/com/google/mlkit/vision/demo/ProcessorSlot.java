@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A processor a camera source hands frames to, swapped through an {@link AtomicReference} without
+ * waiting for the frames it is still working on.
+ *
+ * <p>The slot counts the frames the processor has not handed back yet, plus one while it is the
+ * current processor, and stops the processor once the count drops to zero, i.e. once it was
+ * swapped out with {@link #retire()} and has drained.
+ */
+class ProcessorSlot {
+
+	private final VisionImageProcessor processor;
+	private final AtomicInteger holds = new AtomicInteger(1);
+
+	ProcessorSlot(VisionImageProcessor processor) {
+		this.processor = processor;
+	}
+
+	/**
+	 * Returns the current slot of {@code ref}, held for one frame, or null if there is none. Retries
+	 * if the slot is swapped out concurrently, so a stopped processor never gets a frame.
+	 */
+	@Nullable
+	static <S extends ProcessorSlot> S acquire(AtomicReference<S> ref) {
+		while (true) {
+			S slot = ref.get();
+			if (slot == null || slot.tryHold()) {
+				return slot;
+			}
+		}
+	}
+
+	VisionImageProcessor getProcessor() {
+		return processor;
+	}
+
+	/**
+	 * Holds the processor for one more frame. Returns false if it was stopped already.
+	 */
+	boolean tryHold() {
+		while (true) {
+			int count = holds.get();
+			if (count == 0) {
+				return false;
+			}
+			if (holds.compareAndSet(count, count + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Gives up one hold, e.g. when the processor hands a frame back.
+	 */
+	void release() {
+		if (holds.decrementAndGet() == 0) {
+			processor.stop();
+		}
+	}
+
+	/**
+	 * Called once the processor is swapped out. It is stopped as soon as it has drained.
+	 */
+	void retire() {
+		release();
+	}
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Loads still images from content URIs, reading each one through a single stream.
+ *
+ * <p>{@link #open} reads the header: the EXIF orientation and the image bounds are parsed from the
+ * start of the stream, which is buffered so it can be rewound. {@link Source#decode} then decodes
+ * the image from the same stream, subsampled near the requested size. Only headers larger than
+ * {@link #HEADER_LIMIT} make the stream be opened a second time.
+ *
+ * <p>{@link #loadAll} pipelines the two stages for batches, so the next images are opened while the
+ * current ones are decoded.
+ */
+public final class StillImageLoader {
+
+	private static final String TAG = "StillImageLoader";
+
+	/**
+	 * Bytes kept for rewinding after the header was parsed. Covers the largest EXIF segment (64 KB)
+	 * and the metadata that precedes the image data in common files.
+	 */
+	private static final int HEADER_LIMIT = 256 * 1024;
+
+	private StillImageLoader() {
+	}
+
+	/**
+	 * Decodes the image at {@code imageUri}, see {@link Source#decode}.
+	 */
+	@Nullable
+	public static Bitmap load(
+			ContentResolver contentResolver, Uri imageUri, int targetWidth, int targetHeight)
+			throws IOException {
+		try (Source source = open(contentResolver, imageUri)) {
+			return source.decode(targetWidth, targetHeight);
+		}
+	}
+
+	/**
+	 * Opens the image at {@code imageUri} and reads its orientation and bounds. The returned source
+	 * must be closed.
+	 */
+	public static Source open(ContentResolver contentResolver, Uri imageUri) throws IOException {
+		Source source = new Source(contentResolver, imageUri);
+		try {
+			source.readHeader();
+		} catch (IOException | RuntimeException e) {
+			source.close();
+			throw e;
+		}
+		return source;
+	}
+
+	/**
+	 * Loads {@code uris} in a pipeline. Images are opened and their headers read on {@code
+	 * ioExecutor}, then decoded on {@code decodeExecutor}, where the callback is invoked in completion
+	 * order. At most {@code maxOpen} images are open and not yet handed to the callback; a callback
+	 * that blocks therefore also holds back the I/O. Every image is reported exactly once, also if
+	 * opening or decoding it throws.
+	 */
+	public static void loadAll(
+			ContentResolver contentResolver,
+			List<Uri> uris,
+			int targetWidth,
+			int targetHeight,
+			Executor ioExecutor,
+			Executor decodeExecutor,
+			int maxOpen,
+			Callback callback) {
+		Semaphore openSlots = new Semaphore(maxOpen);
+		for (int i = 0; i < uris.size(); i++) {
+			final int index = i;
+			ioExecutor.execute(
+					() -> {
+						try {
+							openSlots.acquire();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							callback.onFailed(
+									index, new InterruptedIOException("Interrupted before opening the image"));
+							return;
+						}
+						Source source;
+						try {
+							source = open(contentResolver, uris.get(index));
+						} catch (IOException | RuntimeException e) {
+							openSlots.release();
+							callback.onFailed(index, e);
+							return;
+						}
+						decodeExecutor.execute(
+								() -> {
+									Bitmap bitmap;
+									try (Source openSource = source) {
+										bitmap = openSource.decode(targetWidth, targetHeight);
+										if (bitmap == null) {
+											throw new IOException("Could not decode " + openSource.imageUri);
+										}
+									} catch (IOException | RuntimeException e) {
+										openSlots.release();
+										callback.onFailed(index, e);
+										return;
+									}
+									try {
+										callback.onLoaded(index, bitmap);
+									} finally {
+										openSlots.release();
+									}
+								});
+					});
+		}
+	}
+
+	/**
+	 * Receives the images of {@link #loadAll}.
+	 */
+	public interface Callback {
+		void onLoaded(int index, Bitmap bitmap);
+
+		/**
+		 * Called if the image could not be opened or decoded, with an {@link IOException} or the
+		 * {@link RuntimeException} that was thrown, e.g. a {@link SecurityException} for a URI the app
+		 * has no access to.
+		 */
+		void onFailed(int index, Exception e);
+	}
+
+	/**
+	 * An opened image whose header was read.
+	 */
+	public static final class Source implements Closeable {
+
+		private final ContentResolver contentResolver;
+		private final Uri imageUri;
+		private BufferedInputStream stream;
+		private int orientation = ExifInterface.ORIENTATION_NORMAL;
+		private int encodedWidth;
+		private int encodedHeight;
+
+		private Source(ContentResolver contentResolver, Uri imageUri) {
+			this.contentResolver = contentResolver;
+			this.imageUri = imageUri;
+		}
+
+		/**
+		 * Returns the width of the image after its orientation is applied.
+		 */
+		public int getWidth() {
+			return isTransposed() ? encodedHeight : encodedWidth;
+		}
+
+		/**
+		 * Returns the height of the image after its orientation is applied.
+		 */
+		public int getHeight() {
+			return isTransposed() ? encodedWidth : encodedHeight;
+		}
+
+		/**
+		 * Returns one of the {@code ORIENTATION_} constants of {@link ExifInterface}.
+		 */
+		public int getOrientation() {
+			return orientation;
+		}
+
+		/**
+		 * Decodes the image with its EXIF orientation applied, scaled to fit into {@code targetWidth}
+		 * x {@code targetHeight}, or at its original size if either is 0. Can only be called once.
+		 *
+		 * <p>The image is decoded with the largest power of two subsampling that still covers the
+		 * target size, so the full size image is never held in memory. The remaining scale is applied
+		 * together with the orientation in one transform.
+		 */
+		@Nullable
+		public Bitmap decode(int targetWidth, int targetHeight) throws IOException {
+			if (encodedWidth <= 0 || encodedHeight <= 0) {
+				return null;
+			}
+			float scaleFactor = 1;
+			if (targetWidth > 0 && targetHeight > 0) {
+				scaleFactor =
+						Math.max(
+								(float) getWidth() / (float) targetWidth,
+								(float) getHeight() / (float) targetHeight);
+			}
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = 1;
+			while (options.inSampleSize * 2 <= scaleFactor) {
+				options.inSampleSize *= 2;
+			}
+			rewind();
+			Bitmap decodedBitmap = BitmapFactory.decodeStream(stream, null, options);
+			if (decodedBitmap == null) {
+				return null;
+			}
+
+			// The decoder rounds the subsampled size, so the remaining scale is based on the actual size.
+			int decodedWidth = isTransposed() ? decodedBitmap.getHeight() : decodedBitmap.getWidth();
+			float remainingScale = getWidth() / scaleFactor / decodedWidth;
+			return transform(decodedBitmap, remainingScale, orientation);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (stream != null) {
+				stream.close();
+				stream = null;
+			}
+		}
+
+		private void readHeader() throws IOException {
+			InputStream inputStream = contentResolver.openInputStream(imageUri);
+			if (inputStream == null) {
+				throw new IOException("Unable to open " + imageUri);
+			}
+			stream = new BufferedInputStream(inputStream);
+			stream.mark(HEADER_LIMIT);
+
+			// We only support parsing EXIF orientation tag from local file on the device.
+			// See also:
+			// https://android-developers.googleblog.com/2016/12/introducing-the-exifinterface-support-library.html
+			if (ContentResolver.SCHEME_CONTENT.equals(imageUri.getScheme())
+					|| ContentResolver.SCHEME_FILE.equals(imageUri.getScheme())) {
+				try {
+					orientation =
+							new ExifInterface(stream)
+									.getAttributeInt(
+											ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+				} catch (IOException e) {
+					Log.e(TAG, "failed to read rotation meta data: " + imageUri, e);
+				}
+				rewind();
+			}
+
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inJustDecodeBounds = true;
+			BitmapFactory.decodeStream(stream, null, options);
+			encodedWidth = options.outWidth;
+			encodedHeight = options.outHeight;
+		}
+
+		/**
+		 * Goes back to the start of the image, reopening it if the header did not fit into the mark.
+		 */
+		private void rewind() throws IOException {
+			try {
+				stream.reset();
+			} catch (IOException e) {
+				Log.d(TAG, "Header larger than " + HEADER_LIMIT + " bytes, reopening " + imageUri);
+				stream.close();
+				InputStream inputStream = contentResolver.openInputStream(imageUri);
+				if (inputStream == null) {
+					throw new IOException("Unable to reopen " + imageUri);
+				}
+				stream = new BufferedInputStream(inputStream);
+			}
+			stream.mark(HEADER_LIMIT);
+		}
+
+		private boolean isTransposed() {
+			switch (orientation) {
+				case ExifInterface.ORIENTATION_ROTATE_90:
+				case ExifInterface.ORIENTATION_TRANSPOSE:
+				case ExifInterface.ORIENTATION_ROTATE_270:
+				case ExifInterface.ORIENTATION_TRANSVERSE:
+					return true;
+				default:
+					return false;
+			}
+		}
+	}
+
+	/**
+	 * Scales a bitmap and applies an EXIF orientation to it in one transform.
+	 */
+	private static Bitmap transform(Bitmap bitmap, float scale, int orientation) {
+		int rotationDegrees = 0;
+		boolean flipX = false;
+		boolean flipY = false;
+		// See e.g. https://magnushoff.com/articles/jpeg-orientation/ for a detailed explanation on each
+		// orientation.
+		switch (orientation) {
+			case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+				flipX = true;
+				break;
+			case ExifInterface.ORIENTATION_ROTATE_90:
+				rotationDegrees = 90;
+				break;
+			case ExifInterface.ORIENTATION_TRANSPOSE:
+				rotationDegrees = 90;
+				flipX = true;
+				break;
+			case ExifInterface.ORIENTATION_ROTATE_180:
+				rotationDegrees = 180;
+				break;
+			case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+				flipY = true;
+				break;
+			case ExifInterface.ORIENTATION_ROTATE_270:
+				rotationDegrees = -90;
+				break;
+			case ExifInterface.ORIENTATION_TRANSVERSE:
+				rotationDegrees = -90;
+				flipX = true;
+				break;
+			case ExifInterface.ORIENTATION_UNDEFINED:
+			case ExifInterface.ORIENTATION_NORMAL:
+			default:
+				// No transformations necessary in this case.
+		}
+
+		Matrix matrix = new Matrix();
+		matrix.postScale(scale, scale);
+
+		// Rotate the image back to straight.
+		matrix.postRotate(rotationDegrees);
+
+		// Mirror the image along the X or Y axis.
+		matrix.postScale(flipX ? -1.0f : 1.0f, flipY ? -1.0f : 1.0f);
+		Bitmap transformedBitmap =
+				Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+
+		// Recycle the old bitmap if it has changed.
+		if (transformedBitmap != bitmap) {
+			bitmap.recycle();
+		}
+		return transformedBitmap;
+	}
+}
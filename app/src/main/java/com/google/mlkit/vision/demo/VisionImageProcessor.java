@@ -17,6 +17,7 @@
 package com.google.mlkit.vision.demo;
 
 import android.graphics.Bitmap;
+import android.media.Image;
 import android.os.Build.VERSION_CODES;
 
 import androidx.annotation.RequiresApi;
@@ -36,11 +37,24 @@ public interface VisionImageProcessor {
 	 */
 	void processBitmap(Bitmap bitmap, GraphicOverlay graphicOverlay);
 
+	/**
+	 * Processes a bitmap that is one frame of a stream, e.g. used for the video playback case.
+	 */
+	void processVideoFrame(Bitmap bitmap, GraphicOverlay graphicOverlay);
+
 	/**
 	 * Processes ByteBuffer image data, e.g. used for Camera1 live preview case.
+	 *
+	 * <p>The processor owns {@code data} until it passes it to {@code releaseCallback}, which must
+	 * happen exactly once, as soon as the buffer is no longer read. If this method throws, the buffer
+	 * was not taken and stays with the caller; a processor that fails after taking the buffer must
+	 * hand it back itself and not throw.
 	 */
 	void processByteBuffer(
-			ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay)
+			ByteBuffer data,
+			FrameMetadata frameMetadata,
+			GraphicOverlay graphicOverlay,
+			BufferReleaseCallback releaseCallback)
 			throws MlKitException;
 
 	/**
@@ -49,8 +63,40 @@ public interface VisionImageProcessor {
 	@RequiresApi(VERSION_CODES.KITKAT)
 	void processImageProxy(ImageProxy image, GraphicOverlay graphicOverlay) throws MlKitException;
 
+	/**
+	 * Processes a YUV_420_888 media Image, e.g. used for the Camera2 live preview case.
+	 *
+	 * <p>The processor owns {@code image} until it passes it to {@code releaseCallback}, which must
+	 * happen exactly once, as soon as the image is no longer read. The processor must not close the
+	 * image itself. If this method throws, the image was not taken and stays with the caller; a
+	 * processor that fails after taking the image must hand it back itself and not throw.
+	 */
+	@RequiresApi(VERSION_CODES.KITKAT)
+	void processMediaImage(
+			Image image,
+			int rotationDegrees,
+			GraphicOverlay graphicOverlay,
+			ImageReleaseCallback releaseCallback)
+			throws MlKitException;
+
 	/**
 	 * Stops the underlying machine learning model and release resources.
 	 */
 	void stop();
+
+	/**
+	 * Receives the buffers passed to {@link #processByteBuffer} back from the processor. May be
+	 * called on any thread.
+	 */
+	interface BufferReleaseCallback {
+		void onBufferReleased(ByteBuffer data);
+	}
+
+	/**
+	 * Receives the images passed to {@link #processMediaImage} back from the processor. May be
+	 * called on any thread.
+	 */
+	interface ImageReleaseCallback {
+		void onImageReleased(Image image);
+	}
 }
@@ -59,6 +59,7 @@ import com.google.mlkit.vision.demo.R;
 import com.google.mlkit.vision.demo.VisionImageProcessor;
 import com.google.mlkit.vision.demo.java.facedetector.FaceDetectorProcessor;
 import com.google.mlkit.vision.demo.java.objectdetector.ObjectDetectorProcessor;
+import com.google.mlkit.vision.demo.java.scheduling.ThrottlePolicy;
 import com.google.mlkit.vision.demo.java.segmenter.SegmenterProcessor;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import com.google.mlkit.vision.demo.preference.SettingsActivity;
@@ -80,6 +81,8 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity implemen
     private static final String FACE_DETECTION = "Face Detection";
     private static final String SELFIE_SEGMENTATION = "Selfie Segmentation";
     private static final String STATE_SELECTED_MODEL = "selected_model";
+    // Resolution ImageAnalysis picks if none is set, scaled down while the device is throttled.
+    private static final Size DEFAULT_ANALYSIS_RESOLUTION = new Size(640, 480);
 
     private PreviewView previewView;
     private GraphicOverlay graphicOverlay;
@@ -97,6 +100,8 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity implemen
     private String selectedModel = OBJECT_DETECTION;
     private int lensFacing = CameraSelector.LENS_FACING_BACK;
     private CameraSelector cameraSelector;
+    // Resolution and detector modes only change with a new analysis use case and processor.
+    private final ThrottlePolicy.Listener throttleListener = level -> bindAnalysisUseCase();
 
     private static boolean isPermissionGranted(Context context, String permission) {
         if (ContextCompat.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED) {
@@ -212,12 +217,14 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity implemen
     @Override
     public void onResume() {
         super.onResume();
+        ThrottlePolicy.getInstance(this).addListener(throttleListener);
         bindAllCameraUseCases();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        ThrottlePolicy.getInstance(this).removeListener(throttleListener);
         if (imageProcessor != null) {
             imageProcessor.stop();
         }
@@ -297,6 +304,14 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity implemen
 
         ImageAnalysis.Builder builder = new ImageAnalysis.Builder();
         Size targetResolution = PreferenceUtils.getCameraXTargetResolution(this, lensFacing);
+        float resolutionScale = ThrottlePolicy.getInstance(this).getResolutionScale();
+        if (resolutionScale < 1f) {
+            Size baseResolution = targetResolution != null ? targetResolution : DEFAULT_ANALYSIS_RESOLUTION;
+            targetResolution =
+                    new Size(
+                            Math.round(baseResolution.getWidth() * resolutionScale),
+                            Math.round(baseResolution.getHeight() * resolutionScale));
+        }
         if (targetResolution != null) {
             builder.setTargetResolution(targetResolution);
         }
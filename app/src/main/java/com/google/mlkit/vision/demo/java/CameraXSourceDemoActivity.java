@@ -69,6 +69,8 @@ public final class CameraXSourceDemoActivity extends AppCompatActivity implement
 
     private PreviewView previewView;
     private GraphicOverlay graphicOverlay;
+    // Shown with the results of every frame, so it is created once.
+    private InferenceInfoGraphic inferenceInfoGraphic;
 
     private boolean needUpdateGraphicOverlayImageSourceInfo;
 
@@ -174,7 +176,6 @@ public final class CameraXSourceDemoActivity extends AppCompatActivity implement
     }
 
     private void onDetectionTaskSuccess(List<DetectedObject> results) {
-        graphicOverlay.clear();
         if (needUpdateGraphicOverlayImageSourceInfo) {
             Size size = cameraXSource.getPreviewSize();
             if (size != null) {
@@ -197,8 +198,11 @@ public final class CameraXSourceDemoActivity extends AppCompatActivity implement
         for (DetectedObject object : results) {
             graphicOverlay.add(new ObjectGraphic(graphicOverlay, object));
         }
-        graphicOverlay.add(new InferenceInfoGraphic(graphicOverlay));
-        graphicOverlay.postInvalidate();
+        if (inferenceInfoGraphic == null) {
+            inferenceInfoGraphic = new InferenceInfoGraphic(graphicOverlay);
+        }
+        graphicOverlay.add(inferenceInfoGraphic);
+        graphicOverlay.publish();
     }
 
     private void onDetectionTaskFailure(Exception e) {
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Alternates frames between the {@code MlImage} and the {@code InputImage} path, and measures the
+ * cost of each: the time spent wrapping a frame and handing it to the detector on the frame
+ * thread, and the detector latency until the results arrive.
+ *
+ * <p>Frames are dispatched on the frame thread while results arrive on the executor thread, so
+ * all methods are synchronized.
+ */
+class ImageInputComparison {
+
+	private final PathStats mlImageStats = new PathStats();
+	private final PathStats inputImageStats = new PathStats();
+	private boolean nextIsMlImage = true;
+
+	/**
+	 * Returns true if the next frame should go through the {@code MlImage} path.
+	 */
+	synchronized boolean nextIsMlImage() {
+		boolean isMlImage = nextIsMlImage;
+		nextIsMlImage = !nextIsMlImage;
+		return isMlImage;
+	}
+
+	/**
+	 * Records the time from the start of wrapping a frame until the detector accepted it.
+	 */
+	synchronized void onDispatched(boolean isMlImage, long dispatchNs) {
+		PathStats stats = isMlImage ? mlImageStats : inputImageStats;
+		stats.frames++;
+		stats.totalDispatchNs += dispatchNs;
+	}
+
+	/**
+	 * Records the detector latency of a frame.
+	 */
+	synchronized void onDetected(boolean isMlImage, long detectorMs) {
+		PathStats stats = isMlImage ? mlImageStats : inputImageStats;
+		stats.detections++;
+		stats.totalDetectorMs += detectorMs;
+	}
+
+	synchronized void resetStats() {
+		mlImageStats.reset();
+		inputImageStats.reset();
+	}
+
+	@NonNull
+	@Override
+	public synchronized String toString() {
+		return "MlImage: " + mlImageStats + "; InputImage: " + inputImageStats;
+	}
+
+	private static class PathStats {
+		int frames;
+		long totalDispatchNs;
+		int detections;
+		long totalDetectorMs;
+
+		void reset() {
+			frames = 0;
+			totalDispatchNs = 0;
+			detections = 0;
+			totalDetectorMs = 0;
+		}
+
+		@NonNull
+		@Override
+		public String toString() {
+			return String.format(
+					Locale.US,
+					"frames=%d, wrap+dispatch avg=%d us, detector avg=%d ms",
+					frames,
+					frames == 0 ? 0 : totalDispatchNs / frames / 1000,
+					detections == 0 ? 0 : totalDetectorMs / detections);
+		}
+	}
+}
@@ -16,8 +16,7 @@
 
 package com.google.mlkit.vision.demo.java;
 
-import static java.lang.Math.max;
-
+import android.content.ClipData;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.content.res.Configuration;
@@ -38,6 +37,7 @@ import android.widget.PopupMenu;
 import android.widget.Spinner;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.android.gms.common.annotation.KeepName;
@@ -45,12 +45,21 @@ import com.google.mlkit.vision.demo.BitmapUtils;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.R;
 import com.google.mlkit.vision.demo.VisionImageProcessor;
+import com.google.mlkit.vision.demo.java.batch.BatchImageProcessor;
 import com.google.mlkit.vision.demo.java.facedetector.FaceDetectorProcessor;
 import com.google.mlkit.vision.demo.java.objectdetector.ObjectDetectorProcessor;
 import com.google.mlkit.vision.demo.java.segmenter.SegmenterProcessor;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import com.google.mlkit.vision.demo.preference.SettingsActivity;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.objects.DetectedObject;
+import com.google.mlkit.vision.objects.ObjectDetection;
 import com.google.mlkit.vision.objects.defaults.ObjectDetectorOptions;
+import com.google.mlkit.vision.segmentation.Segmentation;
+import com.google.mlkit.vision.segmentation.SegmentationMask;
+import com.google.mlkit.vision.segmentation.selfie.SelfieSegmenterOptions;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -78,6 +87,11 @@ public final class StillImageActivity extends AppCompatActivity {
 
     private static final int REQUEST_IMAGE_CAPTURE = 1001;
     private static final int REQUEST_CHOOSE_IMAGE = 1002;
+    private static final int REQUEST_CHOOSE_BATCH = 1003;
+
+    // Batches run once per parallelism level, doubling up to the max, to compare throughput.
+    private static final int MAX_BATCH_PARALLELISM = 4;
+    private static final int BATCH_IO_THREADS = 2;
     boolean isLandScape;
     private ImageView preview;
     private GraphicOverlay graphicOverlay;
@@ -102,6 +116,9 @@ public final class StillImageActivity extends AppCompatActivity {
                 if (itemId == R.id.select_images_from_local) {
                     startChooseImageIntentForResult();
                     return true;
+                } else if (itemId == R.id.select_images_for_batch) {
+                    startChooseBatchIntentForResult();
+                    return true;
                 } else if (itemId == R.id.take_photo_using_camera) {
                     startCameraIntentForResult();
                     return true;
@@ -256,6 +273,14 @@ public final class StillImageActivity extends AppCompatActivity {
         startActivityForResult(Intent.createChooser(intent, "Select Picture"), REQUEST_CHOOSE_IMAGE);
     }
 
+    private void startChooseBatchIntentForResult() {
+        Intent intent = new Intent();
+        intent.setType("image/*");
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        intent.setAction(Intent.ACTION_GET_CONTENT);
+        startActivityForResult(Intent.createChooser(intent, "Select Pictures"), REQUEST_CHOOSE_BATCH);
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == REQUEST_IMAGE_CAPTURE && resultCode == RESULT_OK) {
@@ -264,6 +289,17 @@ public final class StillImageActivity extends AppCompatActivity {
             // In this case, imageUri is returned by the chooser, save it.
             imageUri = data.getData();
             tryReloadAndDetectInImage();
+        } else if (requestCode == REQUEST_CHOOSE_BATCH && resultCode == RESULT_OK) {
+            List<Uri> uris = new ArrayList<>();
+            ClipData clipData = data.getClipData();
+            if (clipData != null) {
+                for (int i = 0; i < clipData.getItemCount(); i++) {
+                    uris.add(clipData.getItemAt(i).getUri());
+                }
+            } else if (data.getData() != null) {
+                uris.add(data.getData());
+            }
+            startBatch(uris);
         } else {
             super.onActivityResult(requestCode, resultCode, data);
         }
@@ -281,26 +317,21 @@ public final class StillImageActivity extends AppCompatActivity {
                 return;
             }
 
-            Bitmap imageBitmap = BitmapUtils.getBitmapFromContentUri(getContentResolver(), imageUri);
-            if (imageBitmap == null) {
-                return;
-            }
-
-            // Clear the overlay first
-            graphicOverlay.clear();
-
+            // The image is decoded near the targeted size, so the original is never held in memory.
             Bitmap resizedBitmap;
             if (selectedSize.equals(SIZE_ORIGINAL)) {
-                resizedBitmap = imageBitmap;
+                resizedBitmap = BitmapUtils.getBitmapFromContentUri(getContentResolver(), imageUri);
             } else {
                 // Get the dimensions of the image view
                 Pair<Integer, Integer> targetedSize = getTargetedWidthHeight();
-
-                // Determine how much to scale down the image
-                float scaleFactor = max((float) imageBitmap.getWidth() / (float) targetedSize.first, (float) imageBitmap.getHeight() / (float) targetedSize.second);
-
-                resizedBitmap = Bitmap.createScaledBitmap(imageBitmap, (int) (imageBitmap.getWidth() / scaleFactor), (int) (imageBitmap.getHeight() / scaleFactor), true);
+                resizedBitmap = BitmapUtils.getBitmapFromContentUri(getContentResolver(), imageUri, targetedSize.first, targetedSize.second);
             }
+            if (resizedBitmap == null) {
+                return;
+            }
+
+            // Clear the overlay first
+            graphicOverlay.clear();
 
             preview.setImageBitmap(resizedBitmap);
 
@@ -340,6 +371,64 @@ public final class StillImageActivity extends AppCompatActivity {
         return new Pair<>(targetWidth, targetHeight);
     }
 
+    private void startBatch(List<Uri> uris) {
+        Toast.makeText(getApplicationContext(), "Processing " + uris.size() + " images, see logs", Toast.LENGTH_SHORT).show();
+        switch (selectedMode) {
+            case OBJECT_DETECTION:
+                ObjectDetectorOptions objectDetectorOptions = PreferenceUtils.getObjectDetectorOptionsForStillImage(this);
+                BatchImageProcessor.DetectorFactory<List<DetectedObject>> objectDetectorFactory =
+                        () -> ObjectDetection.getClient(objectDetectorOptions);
+                runBatch(OBJECT_DETECTION + objectDetectorOptions.hashCode(), objectDetectorFactory, uris, /* parallelism= */ 1);
+                break;
+            case FACE_DETECTION:
+                FaceDetectorOptions faceDetectorOptions = PreferenceUtils.getFaceDetectorOptions(this);
+                BatchImageProcessor.DetectorFactory<List<Face>> faceDetectorFactory =
+                        () -> FaceDetection.getClient(faceDetectorOptions);
+                runBatch(FACE_DETECTION + faceDetectorOptions.hashCode(), faceDetectorFactory, uris, /* parallelism= */ 1);
+                break;
+            case SELFIE_SEGMENTATION:
+                SelfieSegmenterOptions segmenterOptions = new SelfieSegmenterOptions.Builder()
+                        .setDetectorMode(SelfieSegmenterOptions.SINGLE_IMAGE_MODE)
+                        .build();
+                BatchImageProcessor.DetectorFactory<SegmentationMask> segmenterFactory =
+                        () -> Segmentation.getClient(segmenterOptions);
+                runBatch(SELFIE_SEGMENTATION + segmenterOptions.hashCode(), segmenterFactory, uris, /* parallelism= */ 1);
+                break;
+            default:
+                Log.e(TAG, "Unknown selectedMode: " + selectedMode);
+        }
+    }
+
+    /**
+     * Runs the batch with the given parallelism, then again with twice the parallelism up to
+     * MAX_BATCH_PARALLELISM. {@code detectorKey} identifies the detector options in the detector
+     * cache, so later runs reuse the clients of earlier ones.
+     */
+    private <T> void runBatch(String detectorKey, BatchImageProcessor.DetectorFactory<T> factory, List<Uri> uris, int parallelism) {
+        BatchImageProcessor<T> batchProcessor = new BatchImageProcessor<>(this, detectorKey, factory, parallelism, BATCH_IO_THREADS);
+        batchProcessor.processUris(uris, new BatchImageProcessor.Callback<T>() {
+            @Override
+            public void onResult(int index, @NonNull T results) {
+                Log.v(TAG, "Batch image " + uris.get(index) + ": " + results);
+            }
+
+            @Override
+            public void onFailure(int index, @NonNull Exception e) {
+                Log.e(TAG, "Batch image " + uris.get(index) + " failed", e);
+            }
+
+            @Override
+            public void onComplete(@NonNull BatchImageProcessor.BatchStats stats) {
+                batchProcessor.close();
+                if (parallelism < MAX_BATCH_PARALLELISM) {
+                    runBatch(detectorKey, factory, uris, parallelism * 2);
+                } else {
+                    runOnUiThread(() -> Toast.makeText(getApplicationContext(), "Batch done: " + stats, Toast.LENGTH_LONG).show());
+                }
+            }
+        });
+    }
+
     private void createImageProcessor() {
         if (imageProcessor != null) {
             imageProcessor.stop();
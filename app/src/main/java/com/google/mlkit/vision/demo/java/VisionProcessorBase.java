@@ -19,10 +19,11 @@ package com.google.mlkit.vision.demo.java;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
-import android.app.ActivityManager;
-import android.app.ActivityManager.MemoryInfo;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.media.Image;
 import android.os.Build.VERSION_CODES;
 import android.os.SystemClock;
 import android.util.Log;
@@ -35,6 +36,7 @@ import androidx.annotation.RequiresApi;
 import androidx.camera.core.ExperimentalGetImage;
 import androidx.camera.core.ImageProxy;
 
+import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.TaskExecutors;
 import com.google.android.gms.tasks.Tasks;
@@ -49,34 +51,61 @@ import com.google.mlkit.vision.demo.CameraImageGraphic;
 import com.google.mlkit.vision.demo.FrameMetadata;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.InferenceInfoGraphic;
+import com.google.mlkit.vision.demo.LumaPlane;
+import com.google.mlkit.vision.demo.PreviewSizeTuner;
 import com.google.mlkit.vision.demo.ScopedExecutor;
 import com.google.mlkit.vision.demo.VisionImageProcessor;
+import com.google.mlkit.vision.demo.java.gating.MotionGate;
+import com.google.mlkit.vision.demo.java.memory.MemoryGovernor;
+import com.google.mlkit.vision.demo.java.scheduling.ThrottlePolicy;
+import com.google.mlkit.vision.demo.java.tracking.BoxTracker;
+import com.google.mlkit.vision.demo.java.tracking.RoiPlanner;
+import com.google.mlkit.vision.demo.pipeline.metrics.LatencyHistogram;
+import com.google.mlkit.vision.demo.pipeline.scheduling.DetectionScheduler;
+import com.google.mlkit.vision.demo.pipeline.scheduling.FrameDeadline;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Abstract base class for vision frame processors. Subclasses need to implement {@link
  * #onSuccess(Object, GraphicOverlay)} to define what they want to with the detection results and
  * {@link #detectInImage(InputImage)} to specify the detector object.
  *
+ * <p>For streams, the detector may be skipped on some frames (see {@link DetectionScheduler}). The
+ * last results are then passed to {@link #onSuccess(Object, GraphicOverlay)} again, and subclasses
+ * that support tracking move their graphics to the predicted position with {@link
+ * #track(GraphicOverlay.Graphic, Integer, Rect)}. Camera frames whose luma did not change are
+ * skipped by a {@link MotionGate}, and the last results are republished as they are. In ROI mode
+ * the detector only runs on the region around the last results (see {@link RoiPlanner}), and
+ * track() maps the results back to full-frame coordinates. Camera frames that waited past the
+ * configured deadline are dropped before any conversion (see {@link FrameDeadline}).
+ *
  * @param <T> The type of the detected feature.
  */
 public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 
 	protected static final String MANUAL_TESTING_LOG = "LogTagForTest";
 	private static final String TAG = "VisionProcessorBase";
+	// Camera images of the Camera1 path in flight: one shown, one possibly still being rendered and
+	// one being converted, so that a Bitmap is never overwritten while it is drawn.
+	private static final int CAMERA_IMAGE_RING_SIZE = 3;
+	// States of a camera image of the ring, other than the number of the overlay scene it was
+	// published in.
+	private static final long CAMERA_IMAGE_NOT_SHOWN = -1;
+	private static final long CAMERA_IMAGE_IN_FLIGHT = Long.MAX_VALUE;
 
-	private final ActivityManager activityManager;
 	private final Timer fpsTimer = new Timer();
 	private final ScopedExecutor executor;
 
 	private OnProcessingCompleteListener onProcessingCompleteListener;
 
 	// Whether this processor is already shut down
-	private boolean isShutdown;
+	private volatile boolean isShutdown;
 
 	// Used to calculate latency, running in the same thread, no sync needed.
 	private int numRuns = 0;
@@ -86,6 +115,8 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 	private long totalDetectorMs = 0;
 	private long maxDetectorMs = 0;
 	private long minDetectorMs = Long.MAX_VALUE;
+	private final LatencyHistogram frameLatencies = new LatencyHistogram();
+	private final LatencyHistogram detectorLatencies = new LatencyHistogram();
 
 	// Frame count that have been processed so far in an one second interval to calculate FPS.
 	private int frameProcessedInOneSecondInterval = 0;
@@ -97,16 +128,97 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 
 	@GuardedBy("this")
 	private FrameMetadata latestImageMetaData;
-	// To keep the images and metadata in process.
+
+	@GuardedBy("this")
+	private BufferReleaseCallback latestImageReleaseCallback;
+	// To keep the images and metadata in process. processingImage is handed back as soon as it is no
+	// longer read, while processingMetaData stays set until the frame is done.
 	@GuardedBy("this")
 	private ByteBuffer processingImage;
 
 	@GuardedBy("this")
 	private FrameMetadata processingMetaData;
 
+	@GuardedBy("this")
+	private BufferReleaseCallback processingImageReleaseCallback;
+
+	// Crop of the frame in process, handed back to the frame pool once the frame is done.
+	@GuardedBy("this")
+	@Nullable
+	private ByteBuffer processingCrop;
+
+	// Reused between frames, so that the Camera1 path does not allocate in steady state.
+	@GuardedBy("this")
+	private final Bitmap[] cameraImages = new Bitmap[CAMERA_IMAGE_RING_SIZE];
+	// Per camera image: converted and not published yet, never shown, or the scene it was published
+	// in. An image is only overwritten once the overlay has drawn a later scene.
+	@GuardedBy("this")
+	private final long[] cameraImageScenes = new long[CAMERA_IMAGE_RING_SIZE];
+	@GuardedBy("this")
+	private int nextCameraImage;
+	// Size and timing of the Camera1 frame in process, whose cost the finish listener records.
+	@GuardedBy("this")
+	private int previewCostWidth;
+	@GuardedBy("this")
+	private int previewCostHeight;
+	@GuardedBy("this")
+	private long previewCostConversionMs;
+	@GuardedBy("this")
+	private long previewCostDispatchedMs;
+	@GuardedBy("this")
+	@Nullable
+	private GraphicOverlay finishListenerOverlay;
+	@GuardedBy("this")
+	@Nullable
+	private OnCompleteListener<T> finishListener;
+	// Graphics reused for the overlay they were created for. Only touched on the executor thread.
+	@Nullable
+	private GraphicOverlay graphicsOverlay;
+	private final CameraImageGraphic[] cameraImageGraphics =
+			new CameraImageGraphic[CAMERA_IMAGE_RING_SIZE];
+	private int nextCameraImageGraphic;
+	@Nullable
+	private InferenceInfoGraphic inferenceInfoGraphic;
+
+	// Decides which stream frames run the detector, the frames in between are served by boxTracker.
+	private final DetectionScheduler detectionScheduler;
+	private final BoxTracker boxTracker = new BoxTracker();
+	// Results of the last detector run on a stream frame, written on the executor thread.
+	@Nullable
+	private volatile T lastResults;
+	// Skips camera frames that did not change since the last analyzed one.
+	private final MotionGate motionGate;
+	// Plans the region the detector runs on for stream frames, null if ROI mode is off.
+	@Nullable
+	private final RoiPlanner roiPlanner;
+	// Drops camera frames that are too old to be worth processing.
+	private final FrameDeadline frameDeadline;
+	// Caps the stream frame rate while the device is hot or low on battery.
+	private final ThrottlePolicy throttlePolicy;
+	// Compares the MlImage and InputImage paths, null unless comparison mode is on.
+	@Nullable
+	private final ImageInputComparison inputComparison;
+	// Origin of the region lastResults were detected in. Only touched on the executor thread.
+	private int lastResultsOffsetX;
+	private int lastResultsOffsetY;
+	// State of the onSuccess call in progress, read by track(). Only touched on the executor thread.
+	private long publishingFrameMs;
+	private int publishingOffsetX;
+	private int publishingOffsetY;
+	private boolean isPublishingDetection;
+	private boolean isPublishingPrediction;
+
 	protected VisionProcessorBase(Context context) {
-		activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+		MemoryGovernor.getInstance().register(context);
 		executor = new ScopedExecutor(TaskExecutors.MAIN_THREAD);
+		Arrays.fill(cameraImageScenes, CAMERA_IMAGE_NOT_SHOWN);
+		detectionScheduler = new DetectionScheduler(PreferenceUtils.getDetectionInterval(context));
+		motionGate = new MotionGate(PreferenceUtils.getMotionGateThreshold(context));
+		roiPlanner = PreferenceUtils.isRoiDetectionEnabled(context) ? new RoiPlanner() : null;
+		frameDeadline = new FrameDeadline(PreferenceUtils.getFrameDeadlineMs(context));
+		throttlePolicy = ThrottlePolicy.getInstance(context);
+		inputComparison =
+				PreferenceUtils.isImageInputComparisonEnabled(context) ? new ImageInputComparison() : null;
 		fpsTimer.scheduleAtFixedRate(
 				new TimerTask() {
 					@Override
@@ -126,35 +238,66 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 	// -----------------Code for processing single still image----------------------------------------
 	@Override
 	public void processBitmap(Bitmap bitmap, final GraphicOverlay graphicOverlay) {
+		processBitmap(bitmap, graphicOverlay, /* isStream= */ false);
+	}
+
+	// -----------------Code for processing video frames----------------------------------------------
+	@Override
+	public void processVideoFrame(Bitmap bitmap, final GraphicOverlay graphicOverlay) {
+		processBitmap(bitmap, graphicOverlay, /* isStream= */ true);
+	}
+
+	private void processBitmap(Bitmap bitmap, final GraphicOverlay graphicOverlay, boolean isStream) {
 		long frameStartMs = SystemClock.elapsedRealtime();
 
-		if (isMlImageEnabled(graphicOverlay.getContext())) {
-			MlImage mlImage = new BitmapMlImageBuilder(bitmap).build();
-			requestDetectInImage(
-					mlImage,
+		if (isStream && throttlePolicy.shouldSkipFrame(frameStartMs)) {
+			if (onProcessingCompleteListener != null) {
+				onProcessingCompleteListener.onProcessingComplete();
+			}
+			return;
+		}
+
+		if (isStream && shouldPredict(frameStartMs)) {
+			publishLastResults(
 					graphicOverlay,
 					/* originalCameraImage= */ null,
-					/* shouldShowFps= */ false,
-					frameStartMs);
-			mlImage.close();
+					frameStartMs,
+					/* captureTimeMs= */ frameStartMs,
+					/* isPredicted= */ true);
+			return;
+		}
 
+		boolean useMlImage = shouldUseMlImage(graphicOverlay.getContext());
+		Rect crop = isStream ? nextCrop(bitmap.getWidth(), bitmap.getHeight(), /* rotation= */ 0) : null;
+		if (crop != null) {
+			requestDetectInBitmap(
+					Bitmap.createBitmap(bitmap, crop.left, crop.top, crop.width(), crop.height()),
+					useMlImage,
+					graphicOverlay,
+					/* shouldShowFps= */ true,
+					frameStartMs,
+					/* roi= */ crop);
 			return;
 		}
 
-		requestDetectInImage(
-				InputImage.fromBitmap(bitmap, 0),
-				graphicOverlay,
-				/* originalCameraImage= */ null,
-				/* shouldShowFps= */ false,
-				frameStartMs);
+		requestDetectInBitmap(
+				bitmap, useMlImage, graphicOverlay, isStream, frameStartMs, /* roi= */ null);
 	}
 
 	// -----------------Code for processing live preview frame from Camera1 API-----------------------
 	@Override
 	public synchronized void processByteBuffer(
-			ByteBuffer data, final FrameMetadata frameMetadata, final GraphicOverlay graphicOverlay) {
+			ByteBuffer data,
+			final FrameMetadata frameMetadata,
+			final GraphicOverlay graphicOverlay,
+			BufferReleaseCallback releaseCallback) {
+		if (latestImage != null) {
+			// Superseded before it was picked up, the camera can refill it right away.
+			latestImageReleaseCallback.onBufferReleased(latestImage);
+		}
 		latestImage = data;
 		latestImageMetaData = frameMetadata;
+		latestImageReleaseCallback = releaseCallback;
 		if (processingImage == null && processingMetaData == null) {
 			processLatestImage(graphicOverlay);
 		}
@@ -163,54 +306,247 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 	private synchronized void processLatestImage(final GraphicOverlay graphicOverlay) {
 		processingImage = latestImage;
 		processingMetaData = latestImageMetaData;
+		processingImageReleaseCallback = latestImageReleaseCallback;
 		latestImage = null;
 		latestImageMetaData = null;
-		if (processingImage != null && processingMetaData != null && !isShutdown) {
+		latestImageReleaseCallback = null;
+		if (processingImage == null || processingMetaData == null) {
+			return;
+		}
+		if (isShutdown
+				|| frameDeadline.isStale(
+						processingMetaData.getCaptureTimeMs(), SystemClock.elapsedRealtime())) {
+			// Either nobody will process the frame anymore, or it waited behind the previous one for
+			// too long and a fresh one should be awaited instead.
+			releaseProcessingImage();
+			processingMetaData = null;
+			return;
+		}
+		try {
 			processImage(processingImage, processingMetaData, graphicOverlay);
+		} catch (RuntimeException e) {
+			// The buffer was taken from the camera already, so it is handed back here rather than by the
+			// caller, and the next frame is not held up.
+			Log.e(TAG, "Failed to process frame.", e);
+			finishProcessingImage(graphicOverlay);
+		}
+	}
+
+	/**
+	 * Hands the buffer of the frame in process back, once nothing reads it anymore.
+	 */
+	private synchronized void releaseProcessingImage() {
+		if (processingImage != null) {
+			processingImageReleaseCallback.onBufferReleased(processingImage);
+			processingImage = null;
+			processingImageReleaseCallback = null;
+		}
+	}
+
+	/**
+	 * Called when the frame in process is done, successfully or not, to move on to the latest one.
+	 */
+	private synchronized void finishProcessingImage(final GraphicOverlay graphicOverlay) {
+		releaseProcessingImage();
+		if (processingCrop != null) {
+			BitmapUtils.releaseNV21(processingCrop);
+			processingCrop = null;
 		}
+		processingMetaData = null;
+		processLatestImage(graphicOverlay);
 	}
 
 	private void processImage(
 			ByteBuffer data, final FrameMetadata frameMetadata, final GraphicOverlay graphicOverlay) {
 		long frameStartMs = SystemClock.elapsedRealtime();
+		if (throttlePolicy.shouldSkipFrame(frameStartMs)) {
+			finishProcessingImage(graphicOverlay);
+			return;
+		}
+
+		LumaPlane luma = LumaPlane.fromNv21(data, frameMetadata);
+		boolean isStatic = isStaticFrame(luma);
 
 		// If live viewport is on (that is the underneath surface view takes care of the camera preview
 		// drawing), skip the unnecessary bitmap creation that used for the manual preview drawing.
 		Bitmap bitmap =
 				PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext())
 						? null
-						: BitmapUtils.getBitmap(data, frameMetadata);
+						: nextCameraImage(data, frameMetadata, graphicOverlay);
 
-		if (isMlImageEnabled(graphicOverlay.getContext())) {
-			MlImage mlImage =
-					new ByteBufferMlImageBuilder(
-							data,
-							frameMetadata.getWidth(),
-							frameMetadata.getHeight(),
-							MlImage.IMAGE_FORMAT_NV21)
-							.setRotation(frameMetadata.getRotation())
-							.build();
+		if (isStatic || shouldPredict(frameStartMs)) {
+			publishLastResults(
+					graphicOverlay,
+					bitmap,
+					frameStartMs,
+					frameMetadata.getCaptureTimeMs(),
+					/* isPredicted= */ !isStatic);
+			finishProcessingImage(graphicOverlay);
+			return;
+		}
 
-			requestDetectInImage(mlImage, graphicOverlay, bitmap, /* shouldShowFps= */ true, frameStartMs)
-					.addOnSuccessListener(executor, results -> processLatestImage(graphicOverlay));
+		if (isLumaOnly()) {
+			trackPreviewCost(
+					requestDetectInLuma(
+							luma, graphicOverlay, bitmap, frameStartMs, frameMetadata.getCaptureTimeMs()),
+					frameMetadata.getWidth(),
+					frameMetadata.getHeight(),
+					frameStartMs)
+					// Not on the scoped executor, so frames are still released after stop().
+					.addOnCompleteListener(getFinishListener(graphicOverlay));
+			return;
+		}
 
-			// This is optional. Java Garbage collection can also close it eventually.
-			mlImage.close();
+		boolean useMlImage = shouldUseMlImage(graphicOverlay.getContext());
+		Rect crop =
+				nextCrop(frameMetadata.getWidth(), frameMetadata.getHeight(), frameMetadata.getRotation());
+		if (crop != null) {
+			int width = frameMetadata.getWidth();
+			int height = frameMetadata.getHeight();
+			int rotation = frameMetadata.getRotation();
+			long captureTimeMs = frameMetadata.getCaptureTimeMs();
+			ByteBuffer cropped = BitmapUtils.cropNV21(data, width, height, crop);
+			// The crop is a copy, so the camera can have its buffer back right away. The metadata is
+			// reused along with the buffer, so it is not read past this point.
+			releaseProcessingImage();
+			processingCrop = cropped;
+			trackPreviewCost(
+					requestDetectInNv21(
+							cropped,
+							crop.width(),
+							crop.height(),
+							rotation,
+							useMlImage,
+							graphicOverlay,
+							bitmap,
+							frameStartMs,
+							captureTimeMs,
+							BitmapUtils.rotateRect(crop, width, height, rotation)),
+					width,
+					height,
+					frameStartMs)
+					// Not on the scoped executor, so frames are still released after stop().
+					.addOnCompleteListener(getFinishListener(graphicOverlay));
 			return;
 		}
 
-		requestDetectInImage(
-				InputImage.fromByteBuffer(
+		trackPreviewCost(
+				requestDetectInNv21(
 						data,
 						frameMetadata.getWidth(),
 						frameMetadata.getHeight(),
 						frameMetadata.getRotation(),
-						InputImage.IMAGE_FORMAT_NV21),
-				graphicOverlay,
-				bitmap,
-				/* shouldShowFps= */ true,
+						useMlImage,
+						graphicOverlay,
+						bitmap,
+						frameStartMs,
+						frameMetadata.getCaptureTimeMs(),
+						/* roi= */ null),
+				frameMetadata.getWidth(),
+				frameMetadata.getHeight(),
 				frameStartMs)
-				.addOnSuccessListener(executor, results -> processLatestImage(graphicOverlay));
+				// Not on the scoped executor, so frames are still released after stop().
+				.addOnCompleteListener(getFinishListener(graphicOverlay));
+	}
+
+	/**
+	 * Converts a Camera1 frame for the overlay into the next Bitmap of the ring. If that Bitmap may
+	 * still be drawn, i.e. the overlay has not drawn a scene after the one it was published in, the
+	 * frame is converted into a new Bitmap outside the ring instead.
+	 */
+	@GuardedBy("this")
+	private Bitmap nextCameraImage(
+			ByteBuffer data, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay) {
+		int slot = nextCameraImage;
+		long scene = cameraImageScenes[slot];
+		if (scene != CAMERA_IMAGE_NOT_SHOWN
+				&& (scene == CAMERA_IMAGE_IN_FLIGHT || graphicOverlay.getDrawnScene() <= scene)) {
+			return BitmapUtils.getBitmap(data, frameMetadata);
+		}
+		nextCameraImage = (slot + 1) % CAMERA_IMAGE_RING_SIZE;
+		cameraImages[slot] = BitmapUtils.getBitmap(data, frameMetadata, cameraImages[slot]);
+		cameraImageScenes[slot] = CAMERA_IMAGE_IN_FLIGHT;
+		return cameraImages[slot];
+	}
+
+	/**
+	 * Records that a camera image of the ring was published in the given overlay scene, or with
+	 * {@link #CAMERA_IMAGE_NOT_SHOWN} that its frame ended without showing it. Other Bitmaps are
+	 * ignored.
+	 */
+	private synchronized void onCameraImagePublished(@Nullable Bitmap bitmap, long scene) {
+		for (int i = 0; i < CAMERA_IMAGE_RING_SIZE; i++) {
+			if (bitmap != null && cameraImages[i] == bitmap) {
+				cameraImageScenes[i] = scene;
+			}
+		}
+	}
+
+	/**
+	 * Returns the listener that finishes a Camera1 frame, created once per overlay.
+	 */
+	@GuardedBy("this")
+	private OnCompleteListener<T> getFinishListener(final GraphicOverlay graphicOverlay) {
+		if (finishListener == null || finishListenerOverlay != graphicOverlay) {
+			finishListenerOverlay = graphicOverlay;
+			finishListener =
+					task -> {
+						if (task.isSuccessful()) {
+							recordPreviewCost();
+						}
+						finishProcessingImage(graphicOverlay);
+					};
+		}
+		return finishListener;
+	}
+
+	/**
+	 * Returns a graphic that draws {@code bitmap}, reused if the Bitmap was shown recently. Only
+	 * mutable Bitmaps, the ones of the camera image ring, are ever shown again.
+	 */
+	private CameraImageGraphic getCameraImageGraphic(GraphicOverlay graphicOverlay, Bitmap bitmap) {
+		if (!bitmap.isMutable()) {
+			return new CameraImageGraphic(graphicOverlay, bitmap);
+		}
+		useGraphicsOf(graphicOverlay);
+		for (CameraImageGraphic graphic : cameraImageGraphics) {
+			if (graphic != null && graphic.getBitmap() == bitmap) {
+				return graphic;
+			}
+		}
+		CameraImageGraphic graphic = new CameraImageGraphic(graphicOverlay, bitmap);
+		cameraImageGraphics[nextCameraImageGraphic] = graphic;
+		nextCameraImageGraphic = (nextCameraImageGraphic + 1) % CAMERA_IMAGE_RING_SIZE;
+		return graphic;
+	}
+
+	/**
+	 * Returns the inference info graphic showing the given values, reused between frames.
+	 */
+	private InferenceInfoGraphic getInferenceInfoGraphic(
+			GraphicOverlay graphicOverlay,
+			long frameLatency,
+			long detectorLatency,
+			@Nullable Integer framesPerSecond) {
+		useGraphicsOf(graphicOverlay);
+		if (inferenceInfoGraphic == null) {
+			inferenceInfoGraphic =
+					new InferenceInfoGraphic(graphicOverlay, frameLatency, detectorLatency, framesPerSecond);
+		} else {
+			inferenceInfoGraphic.update(frameLatency, detectorLatency, framesPerSecond);
+		}
+		return inferenceInfoGraphic;
+	}
+
+	/**
+	 * Drops the reused graphics if they were created for another overlay.
+	 */
+	private void useGraphicsOf(GraphicOverlay graphicOverlay) {
+		if (graphicsOverlay != graphicOverlay) {
+			graphicsOverlay = graphicOverlay;
+			Arrays.fill(cameraImageGraphics, null);
+			inferenceInfoGraphic = null;
+		}
 	}
 
 	// -----------------Code for processing live preview frame from CameraX API-----------------------
@@ -218,59 +554,407 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 	@RequiresApi(VERSION_CODES.KITKAT)
 	@ExperimentalGetImage
 	public void processImageProxy(ImageProxy image, GraphicOverlay graphicOverlay) {
+		// When the image is from CameraX analysis use case, must call image.close() on received
+		// images when finished using them. Otherwise, new images may not be received or the camera
+		// may stall. Currently MlImage doesn't support ImageProxy directly, so the ImageProxy is
+		// closed rather than the media Image it wraps.
+		processYuvImageOrRelease(
+				image.getImage(),
+				image.getImageInfo().getRotationDegrees(),
+				image.getImageInfo().getTimestamp(),
+				graphicOverlay,
+				image::close);
+	}
+
+	// -----------------Code for processing live preview frame from Camera2 API-----------------------
+	@Override
+	@RequiresApi(VERSION_CODES.KITKAT)
+	public void processMediaImage(
+			Image image,
+			int rotationDegrees,
+			GraphicOverlay graphicOverlay,
+			ImageReleaseCallback releaseCallback) {
+		processYuvImageOrRelease(
+				image,
+				rotationDegrees,
+				image.getTimestamp(),
+				graphicOverlay,
+				() -> releaseCallback.onImageReleased(image));
+	}
+
+	/**
+	 * Runs {@link #processYuvImage}, making sure {@code closeImage} runs exactly once, also if
+	 * processing throws before or after it handed the image back.
+	 */
+	@RequiresApi(VERSION_CODES.KITKAT)
+	private void processYuvImageOrRelease(
+			Image image,
+			int rotation,
+			long timestampNs,
+			GraphicOverlay graphicOverlay,
+			Runnable closeImage) {
+		AtomicBoolean isClosed = new AtomicBoolean();
+		Runnable closeOnce =
+				() -> {
+					if (isClosed.compareAndSet(false, true)) {
+						closeImage.run();
+					}
+				};
+		try {
+			processYuvImage(image, rotation, timestampNs, graphicOverlay, closeOnce);
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Failed to process image.", e);
+			closeOnce.run();
+		}
+	}
+
+	/**
+	 * Processes a YUV_420_888 camera image, running {@code closeImage} once it is no longer read.
+	 */
+	@RequiresApi(VERSION_CODES.KITKAT)
+	private void processYuvImage(
+			Image image,
+			int rotation,
+			long timestampNs,
+			GraphicOverlay graphicOverlay,
+			Runnable closeImage) {
 		long frameStartMs = SystemClock.elapsedRealtime();
-		if (isShutdown) {
-			image.close();
+		long captureTimeMs =
+				FrameDeadline.sensorTimestampToElapsedRealtimeMs(
+						timestampNs, SystemClock.elapsedRealtimeNanos(), System.nanoTime());
+		if (isShutdown
+				|| frameDeadline.isStale(captureTimeMs, frameStartMs)
+				|| throttlePolicy.shouldSkipFrame(frameStartMs)) {
+			// Skipped frames are given back to the camera before any conversion, so it can deliver a fresh one.
+			closeImage.run();
 			return;
 		}
 
+		int width = image.getWidth();
+		int height = image.getHeight();
+		LumaPlane luma = LumaPlane.fromMediaImage(image, rotation);
+		boolean isStatic = isStaticFrame(luma);
+
 		Bitmap bitmap = null;
 		if (!PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext())) {
-			bitmap = BitmapUtils.getBitmap(image);
+			bitmap = BitmapUtils.getBitmap(image, rotation);
 		}
 
-		if (isMlImageEnabled(graphicOverlay.getContext())) {
-			MlImage mlImage =
-					new MediaMlImageBuilder(image.getImage())
-							.setRotation(image.getImageInfo().getRotationDegrees())
-							.build();
+		if (isStatic || shouldPredict(frameStartMs)) {
+			closeImage.run();
+			publishLastResults(
+					graphicOverlay, bitmap, frameStartMs, captureTimeMs, /* isPredicted= */ !isStatic);
+			return;
+		}
+
+		if (isLumaOnly()) {
+			requestDetectInLuma(luma, graphicOverlay, bitmap, frameStartMs, captureTimeMs)
+					.addOnCompleteListener(results -> closeImage.run());
+			return;
+		}
+
+		boolean useMlImage = shouldUseMlImage(graphicOverlay.getContext());
+		Rect crop = nextCrop(width, height, rotation);
+		if (crop != null) {
+			ByteBuffer nv21 = BitmapUtils.yuv420ThreePlanesToNV21(image.getPlanes(), width, height);
+			// The crop is a copy, so the camera can have its buffer back right away.
+			closeImage.run();
+			ByteBuffer cropped = BitmapUtils.cropNV21(nv21, width, height, crop);
+			BitmapUtils.releaseNV21(nv21);
+			requestDetectInNv21(
+					cropped,
+					crop.width(),
+					crop.height(),
+					rotation,
+					useMlImage,
+					graphicOverlay,
+					/* originalCameraImage= */ bitmap,
+					frameStartMs,
+					captureTimeMs,
+					BitmapUtils.rotateRect(crop, width, height, rotation))
+					.addOnCompleteListener(task -> BitmapUtils.releaseNV21(cropped));
+			return;
+		}
+
+		long wrapStartNs = SystemClock.elapsedRealtimeNanos();
+		if (useMlImage) {
+			// The media Image is wrapped as it is, without going through InputImage or a Bitmap.
+			MlImage mlImage = new MediaMlImageBuilder(image).setRotation(rotation).build();
 
 			requestDetectInImage(
 					mlImage,
 					graphicOverlay,
 					/* originalCameraImage= */ bitmap,
 					/* shouldShowFps= */ true,
-					frameStartMs)
-					// When the image is from CameraX analysis use case, must call image.close() on received
-					// images when finished using them. Otherwise, new images may not be received or the
-					// camera may stall.
-					// Currently MlImage doesn't support ImageProxy directly, so we still need to call
-					// ImageProxy.close() here.
-					.addOnCompleteListener(results -> image.close());
+					frameStartMs,
+					captureTimeMs,
+					wrapStartNs,
+					/* roi= */ null)
+					.addOnCompleteListener(results -> closeImage.run());
 			return;
 		}
 
 		requestDetectInImage(
-				InputImage.fromMediaImage(image.getImage(), image.getImageInfo().getRotationDegrees()),
+				InputImage.fromMediaImage(image, rotation),
 				graphicOverlay,
 				/* originalCameraImage= */ bitmap,
 				/* shouldShowFps= */ true,
-				frameStartMs)
-				// When the image is from CameraX analysis use case, must call image.close() on received
-				// images when finished using them. Otherwise, new images may not be received or the camera
-				// may stall.
-				.addOnCompleteListener(results -> image.close());
+				frameStartMs,
+				captureTimeMs,
+				wrapStartNs,
+				/* roi= */ null)
+				.addOnCompleteListener(results -> closeImage.run());
+	}
+
+	// -----------------Detect-every-K support--------------------------------------------------------
+
+	/**
+	 * Returns true if the detector should be skipped on the stream frame that arrived at {@code
+	 * frameStartMs}, in which case the last results are propagated to it instead.
+	 */
+	private boolean shouldPredict(long frameStartMs) {
+		if (detectionScheduler.isEveryFrame() || !isTrackingSupported()) {
+			return false;
+		}
+		return !detectionScheduler.shouldDetect(frameStartMs, lastResults != null);
+	}
+
+	/**
+	 * Returns the region of a stream frame with the given size and rotation the detector should run
+	 * on, in unrotated frame coordinates, or null if it should scan the full frame. The region is
+	 * aligned to even coordinates so that it can be cut out of an NV21 buffer.
+	 */
+	@Nullable
+	private Rect nextCrop(int width, int height, int rotation) {
+		if (roiPlanner == null || !isTrackingSupported()) {
+			return null;
+		}
+		boolean isRotated = rotation == 90 || rotation == 270;
+		int uprightWidth = isRotated ? height : width;
+		int uprightHeight = isRotated ? width : height;
+		Rect roi = roiPlanner.nextRoi(uprightWidth, uprightHeight);
+		if (roi == null) {
+			return null;
+		}
+		Rect crop = BitmapUtils.rotateRect(roi, uprightWidth, uprightHeight, (360 - rotation) % 360);
+		crop.set(
+				crop.left & ~1,
+				crop.top & ~1,
+				Math.min((crop.right + 1) & ~1, width),
+				Math.min((crop.bottom + 1) & ~1, height));
+		return crop;
+	}
+
+	/**
+	 * Returns true if the motion gate considers the frame with the given luma plane static, in which
+	 * case the last results are reused for it.
+	 */
+	private boolean isStaticFrame(LumaPlane luma) {
+		return motionGate.isEnabled() && motionGate.shouldSkip(luma, lastResults != null);
+	}
+
+	/**
+	 * Publishes the last results through {@link #onSuccess(Object, GraphicOverlay)} for the frame
+	 * that arrived at {@code frameStartMs} and was captured at {@code captureTimeMs}. If {@code isPredicted} is set, their graphics are moved
+	 * to the positions predicted for that frame, otherwise they are reused as they are.
+	 */
+	private void publishLastResults(
+			final GraphicOverlay graphicOverlay,
+			@Nullable final Bitmap originalCameraImage,
+			long frameStartMs,
+			long captureTimeMs,
+			boolean isPredicted) {
+		executor.execute(
+				() -> {
+					T results = lastResults;
+					if (results != null) {
+						frameProcessedInOneSecondInterval++;
+						frameDeadline.onDisplayed(captureTimeMs, SystemClock.elapsedRealtime());
+						throttlePolicy.onFrameProcessed(SystemClock.elapsedRealtime() - frameStartMs);
+						if (originalCameraImage != null) {
+							graphicOverlay.add(getCameraImageGraphic(graphicOverlay, originalCameraImage));
+						}
+						isPublishingPrediction = isPredicted;
+						publishingFrameMs = frameStartMs;
+						publishingOffsetX = lastResultsOffsetX;
+						publishingOffsetY = lastResultsOffsetY;
+						onSuccess(results, graphicOverlay);
+						isPublishingPrediction = false;
+						if (!PreferenceUtils.shouldHideDetectionInfo(graphicOverlay.getContext())) {
+							graphicOverlay.add(
+									getInferenceInfoGraphic(
+											graphicOverlay,
+											SystemClock.elapsedRealtime() - frameStartMs,
+											/* detectorLatency= */ 0,
+											framesPerSecond));
+						}
+						onCameraImagePublished(originalCameraImage, graphicOverlay.publish());
+					} else {
+						onCameraImagePublished(originalCameraImage, CAMERA_IMAGE_NOT_SHOWN);
+					}
+					if (onProcessingCompleteListener != null) {
+						onProcessingCompleteListener.onProcessingComplete();
+					}
+				});
+	}
+
+	/**
+	 * Called by subclasses from {@link #onSuccess(Object, GraphicOverlay)} for every graphic that
+	 * belongs to a tracked result. For detector results this records the box in the tracker, for
+	 * propagated results it moves the graphic to the predicted position and marks it as predicted.
+	 * Results detected in a region of the frame are moved back to full-frame coordinates.
+	 */
+	protected void track(
+			GraphicOverlay.Graphic graphic, @Nullable Integer trackingId, Rect boundingBox) {
+		float offsetX = publishingOffsetX;
+		float offsetY = publishingOffsetY;
+		if (isPublishingDetection) {
+			Rect frameBox = new Rect(boundingBox);
+			frameBox.offset(publishingOffsetX, publishingOffsetY);
+			if (roiPlanner != null) {
+				roiPlanner.addBox(frameBox);
+			}
+			if (trackingId != null) {
+				boxTracker.update(trackingId, frameBox, publishingFrameMs);
+			}
+		} else if (isPublishingPrediction) {
+			graphic.setPredicted(true);
+			PointF shift =
+					trackingId == null ? null : boxTracker.predictShift(trackingId, publishingFrameMs);
+			if (shift != null) {
+				offsetX += shift.x;
+				offsetY += shift.y;
+			}
+		}
+		graphic.setImageOffset(offsetX, offsetY);
+	}
+
+	/**
+	 * Returns true if the results of this processor can be propagated between detector runs, see
+	 * {@link #track(GraphicOverlay.Graphic, Integer, Rect)}.
+	 */
+	protected boolean isTrackingSupported() {
+		return false;
 	}
 
 	// -----------------Common processing logic-------------------------------------------------------
+
+	/**
+	 * Returns true if the next frame should be passed to {@link #detectInImage(MlImage)}. In
+	 * comparison mode frames alternate between both paths.
+	 */
+	private boolean shouldUseMlImage(Context context) {
+		if (!isMlImageEnabled(context)) {
+			return false;
+		}
+		return inputComparison == null || inputComparison.nextIsMlImage();
+	}
+
+	private Task<T> requestDetectInBitmap(
+			Bitmap bitmap,
+			boolean useMlImage,
+			final GraphicOverlay graphicOverlay,
+			boolean shouldShowFps,
+			long frameStartMs,
+			@Nullable Rect roi) {
+		long wrapStartNs = SystemClock.elapsedRealtimeNanos();
+		if (useMlImage) {
+			MlImage mlImage = new BitmapMlImageBuilder(bitmap).build();
+			Task<T> task =
+					requestDetectInImage(
+							mlImage,
+							graphicOverlay,
+							/* originalCameraImage= */ null,
+							shouldShowFps,
+							frameStartMs,
+							/* captureTimeMs= */ frameStartMs,
+							wrapStartNs,
+							roi);
+			mlImage.close();
+			return task;
+		}
+		return requestDetectInImage(
+				InputImage.fromBitmap(bitmap, 0),
+				graphicOverlay,
+				/* originalCameraImage= */ null,
+				shouldShowFps,
+				frameStartMs,
+				/* captureTimeMs= */ frameStartMs,
+				wrapStartNs,
+				roi);
+	}
+
+	private Task<T> requestDetectInNv21(
+			ByteBuffer nv21,
+			int width,
+			int height,
+			int rotation,
+			boolean useMlImage,
+			final GraphicOverlay graphicOverlay,
+			@Nullable final Bitmap originalCameraImage,
+			long frameStartMs,
+			long captureTimeMs,
+			@Nullable Rect roi) {
+		long wrapStartNs = SystemClock.elapsedRealtimeNanos();
+		if (useMlImage) {
+			MlImage mlImage =
+					new ByteBufferMlImageBuilder(nv21, width, height, MlImage.IMAGE_FORMAT_NV21)
+							.setRotation(rotation)
+							.build();
+			Task<T> task =
+					requestDetectInImage(
+							mlImage,
+							graphicOverlay,
+							originalCameraImage,
+							/* shouldShowFps= */ true,
+							frameStartMs,
+							captureTimeMs,
+							wrapStartNs,
+							roi);
+			// This is optional. Java Garbage collection can also close it eventually.
+			mlImage.close();
+			return task;
+		}
+		return requestDetectInImage(
+				InputImage.fromByteBuffer(nv21, width, height, rotation, InputImage.IMAGE_FORMAT_NV21),
+				graphicOverlay,
+				originalCameraImage,
+				/* shouldShowFps= */ true,
+				frameStartMs,
+				captureTimeMs,
+				wrapStartNs,
+				roi);
+	}
+
+	private Task<T> requestDetectInLuma(
+			LumaPlane luma,
+			final GraphicOverlay graphicOverlay,
+			@Nullable final Bitmap originalCameraImage,
+			long frameStartMs,
+			long captureTimeMs) {
+		return setUpListener(
+				detectInLuma(luma),
+				graphicOverlay,
+				originalCameraImage,
+				/* shouldShowFps= */ true,
+				frameStartMs,
+				captureTimeMs,
+				/* roi= */ null);
+	}
+
 	private Task<T> requestDetectInImage(
 			final InputImage image,
 			final GraphicOverlay graphicOverlay,
 			@Nullable final Bitmap originalCameraImage,
 			boolean shouldShowFps,
-			long frameStartMs) {
+			long frameStartMs,
+			long captureTimeMs,
+			long wrapStartNs,
+			@Nullable Rect roi) {
+		Task<T> task = detectInImage(image);
+		recordImageInput(/* isMlImage= */ false, wrapStartNs, task);
 		return setUpListener(
-				detectInImage(image), graphicOverlay, originalCameraImage, shouldShowFps, frameStartMs);
+				task, graphicOverlay, originalCameraImage, shouldShowFps, frameStartMs, captureTimeMs, roi);
 	}
 
 	private Task<T> requestDetectInImage(
@@ -278,9 +962,67 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 			final GraphicOverlay graphicOverlay,
 			@Nullable final Bitmap originalCameraImage,
 			boolean shouldShowFps,
-			long frameStartMs) {
+			long frameStartMs,
+			long captureTimeMs,
+			long wrapStartNs,
+			@Nullable Rect roi) {
+		Task<T> task = detectInImage(image);
+		recordImageInput(/* isMlImage= */ true, wrapStartNs, task);
 		return setUpListener(
-				detectInImage(image), graphicOverlay, originalCameraImage, shouldShowFps, frameStartMs);
+				task, graphicOverlay, originalCameraImage, shouldShowFps, frameStartMs, captureTimeMs, roi);
+	}
+
+	/**
+	 * Remembers the size and timing of the Camera1 frame in process, so that the finish listener can
+	 * feed its cost into the preview size model once the detector is done with it, see {@link
+	 * PreviewSizeTuner}. Returns {@code task}.
+	 */
+	private synchronized Task<T> trackPreviewCost(
+			Task<T> task, int width, int height, long frameStartMs) {
+		previewCostWidth = width;
+		previewCostHeight = height;
+		previewCostDispatchedMs = SystemClock.elapsedRealtime();
+		previewCostConversionMs = previewCostDispatchedMs - frameStartMs;
+		return task;
+	}
+
+	/**
+	 * Feeds the cost of the Camera1 frame in process into its preview size model.
+	 */
+	private void recordPreviewCost() {
+		int width;
+		int height;
+		long conversionMs;
+		long dispatchedMs;
+		synchronized (this) {
+			width = previewCostWidth;
+			height = previewCostHeight;
+			conversionMs = previewCostConversionMs;
+			dispatchedMs = previewCostDispatchedMs;
+		}
+		PreviewSizeTuner.getInstance()
+				.recordFrame(
+						getClass().getName(),
+						width,
+						height,
+						conversionMs,
+						SystemClock.elapsedRealtime() - dispatchedMs);
+	}
+
+	/**
+	 * Feeds the cost of a frame into the image input comparison, if it is enabled.
+	 */
+	private void recordImageInput(boolean isMlImage, long wrapStartNs, Task<T> task) {
+		if (inputComparison == null) {
+			return;
+		}
+		long dispatchedNs = SystemClock.elapsedRealtimeNanos();
+		inputComparison.onDispatched(isMlImage, dispatchedNs - wrapStartNs);
+		task.addOnSuccessListener(
+				executor,
+				results ->
+						inputComparison.onDetected(
+								isMlImage, (SystemClock.elapsedRealtimeNanos() - dispatchedNs) / 1_000_000));
 	}
 
 	private Task<T> setUpListener(
@@ -288,8 +1030,13 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 			final GraphicOverlay graphicOverlay,
 			@Nullable final Bitmap originalCameraImage,
 			boolean shouldShowFps,
-			long frameStartMs) {
+			long frameStartMs,
+			long captureTimeMs,
+			@Nullable Rect roi) {
 		final long detectorStartMs = SystemClock.elapsedRealtime();
+		// Results detected in a region are relative to its origin.
+		final int offsetX = roi == null ? 0 : roi.left;
+		final int offsetY = roi == null ? 0 : roi.top;
 		return task.addOnSuccessListener(
 						executor,
 						results -> {
@@ -299,6 +1046,15 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 							if (numRuns >= 500) {
 								resetLatencyStats();
 							}
+							// Only stream frames, the ones that show FPS, take part in detect-every-K.
+							if (shouldShowFps) {
+								frameDeadline.onDisplayed(captureTimeMs, endMs);
+								throttlePolicy.onFrameProcessed(currentFrameLatencyMs);
+								detectionScheduler.onDetectorLatency(currentDetectorLatencyMs);
+								lastResults = results;
+								lastResultsOffsetX = offsetX;
+								lastResultsOffsetY = offsetY;
+							}
 							numRuns++;
 							frameProcessedInOneSecondInterval++;
 							totalFrameMs += currentFrameLatencyMs;
@@ -307,6 +1063,8 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 							totalDetectorMs += currentDetectorLatencyMs;
 							maxDetectorMs = max(currentDetectorLatencyMs, maxDetectorMs);
 							minDetectorMs = min(currentDetectorLatencyMs, minDetectorMs);
+							frameLatencies.record(currentFrameLatencyMs);
+							detectorLatencies.record(currentDetectorLatencyMs);
 
 							// Only log inference info once per second. When frameProcessedInOneSecondInterval is
 							// equal to 1, it means this is the first frame processed during the current second.
@@ -319,7 +1077,9 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 												+ ", min="
 												+ minFrameMs
 												+ ", avg="
-												+ totalFrameMs / numRuns);
+												+ totalFrameMs / numRuns
+												+ ", "
+												+ frameLatencies);
 								Log.d(
 										TAG,
 										"Detector latency: max="
@@ -327,31 +1087,74 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 												+ ", min="
 												+ minDetectorMs
 												+ ", avg="
-												+ totalDetectorMs / numRuns);
-								MemoryInfo mi = new MemoryInfo();
-								activityManager.getMemoryInfo(mi);
-								long availableMegs = mi.availMem / 0x100000L;
-								Log.d(TAG, "Memory available in system: " + availableMegs + " MB");
+												+ totalDetectorMs / numRuns
+												+ ", "
+												+ detectorLatencies);
+								if (motionGate.isEnabled()) {
+									// Every skipped frame saves about one average detector run.
+									long savedMs = (long) motionGate.getSkippedFrames() * totalDetectorMs / numRuns;
+									Log.d(
+											TAG,
+											"Motion gate: skipped="
+													+ motionGate.getSkippedFrames()
+													+ ", passed="
+													+ motionGate.getPassedFrames()
+													+ ", gate cost avg="
+													+ motionGate.getAvgGateMicros()
+													+ " us, detector time saved="
+													+ savedMs
+													+ " ms");
+									motionGate.resetStats();
+								}
+								if (shouldShowFps) {
+									Log.d(
+											TAG,
+											"Frame age at display: max="
+													+ frameDeadline.getMaxDisplayAgeMs()
+													+ ", avg="
+													+ frameDeadline.getAvgDisplayAgeMs()
+													+ ", stale frames dropped="
+													+ frameDeadline.getDroppedFrames());
+									frameDeadline.resetStats();
+								}
+								if (inputComparison != null) {
+									Log.d(TAG, "Image input comparison: " + inputComparison);
+									inputComparison.resetStats();
+								}
+								Log.d(TAG, "Memory pools: " + MemoryGovernor.getInstance().getOccupancyReport());
 							}
 
-							graphicOverlay.clear();
 							if (originalCameraImage != null) {
-								graphicOverlay.add(new CameraImageGraphic(graphicOverlay, originalCameraImage));
+								graphicOverlay.add(getCameraImageGraphic(graphicOverlay, originalCameraImage));
+							}
+							publishingFrameMs = frameStartMs;
+							publishingOffsetX = offsetX;
+							publishingOffsetY = offsetY;
+							isPublishingDetection = true;
+							boxTracker.beginFrame();
+							if (roiPlanner != null && shouldShowFps) {
+								roiPlanner.beginResults();
 							}
 							VisionProcessorBase.this.onSuccess(results, graphicOverlay);
+							if (roiPlanner != null && shouldShowFps) {
+								roiPlanner.endResults(/* wasFullFrame= */ roi == null);
+							}
+							boxTracker.endFrame();
+							isPublishingDetection = false;
 							if (!PreferenceUtils.shouldHideDetectionInfo(graphicOverlay.getContext())) {
 								graphicOverlay.add(
-										new InferenceInfoGraphic(
+										getInferenceInfoGraphic(
 												graphicOverlay,
 												currentFrameLatencyMs,
 												currentDetectorLatencyMs,
 												shouldShowFps ? framesPerSecond : null));
 							}
-							graphicOverlay.postInvalidate();
+							onCameraImagePublished(originalCameraImage, graphicOverlay.publish());
 						})
 				.addOnFailureListener(
 						executor,
 						e -> {
+							onCameraImagePublished(originalCameraImage, CAMERA_IMAGE_NOT_SHOWN);
 							graphicOverlay.clear();
 							graphicOverlay.postInvalidate();
 							String error = "Failed to process. Error: " + e.getLocalizedMessage();
@@ -374,9 +1177,25 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 	@Override
 	public void stop() {
 		executor.shutdown();
-		isShutdown = true;
+		synchronized (this) {
+			isShutdown = true;
+			if (latestImage != null) {
+				latestImageReleaseCallback.onBufferReleased(latestImage);
+				latestImage = null;
+				latestImageMetaData = null;
+				latestImageReleaseCallback = null;
+			}
+		}
 		resetLatencyStats();
 		fpsTimer.cancel();
+		detectionScheduler.reset();
+		motionGate.reset();
+		frameDeadline.resetStats();
+		boxTracker.clear();
+		if (roiPlanner != null) {
+			roiPlanner.reset();
+		}
+		lastResults = null;
 	}
 
 	private void resetLatencyStats() {
@@ -387,10 +1206,16 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 		totalDetectorMs = 0;
 		maxDetectorMs = 0;
 		minDetectorMs = Long.MAX_VALUE;
+		frameLatencies.reset();
+		detectorLatencies.reset();
 	}
 
 	protected abstract Task<T> detectInImage(InputImage image);
 
+	/**
+	 * Runs the detector on an {@link MlImage}. Only called if {@link #isMlImageEnabled(Context)}
+	 * returns true.
+	 */
 	protected Task<T> detectInImage(MlImage image) {
 		return Tasks.forException(
 				new MlKitException(
@@ -398,14 +1223,39 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 						MlKitException.INVALID_ARGUMENT));
 	}
 
+	/**
+	 * Runs the detector on the luma plane of a stream frame. Only called if {@link #isLumaOnly()}
+	 * returns true; the plane must not be read after the returned task completes.
+	 */
+	protected Task<T> detectInLuma(LumaPlane luma) {
+		return Tasks.forException(
+				new MlKitException(
+						"Luma-only input is not supported by this feature", MlKitException.INVALID_ARGUMENT));
+	}
+
 	protected abstract void onSuccess(@NonNull T results, @NonNull GraphicOverlay graphicOverlay);
 
 	protected abstract void onFailure(@NonNull Exception e);
 
+	/**
+	 * Returns true if frames should be passed as {@link MlImage}. Subclasses that implement {@link
+	 * #detectInImage(MlImage)} return the image input setting, see {@link
+	 * PreferenceUtils#isMlImageEnabled(Context)}.
+	 */
 	protected boolean isMlImageEnabled(Context context) {
 		return false;
 	}
 
+	/**
+	 * Returns true if the detector only reads luminance, e.g. a grayscale model. Stream frames are then
+	 * passed to {@link #detectInLuma(LumaPlane)} as a view of their Y plane, without chroma copies,
+	 * color conversion or region-of-interest crops. Still images keep going through {@link
+	 * #detectInImage(InputImage)}.
+	 */
+	protected boolean isLumaOnly() {
+		return false;
+	}
+
 	public interface OnProcessingCompleteListener {
 		void onProcessingComplete();
 	}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.batch;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.StillImageLoader;
+import com.google.mlkit.vision.demo.java.memory.DetectorCache;
+import com.google.mlkit.vision.demo.java.memory.MemoryGovernor;
+import com.google.mlkit.vision.interfaces.Detector;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a detector over a batch of still images without touching the UI.
+ *
+ * <p>Images are read on a bounded I/O pool, decoded on a pool of the same size and handed to one of
+ * {@code parallelism} independent detector clients as soon as one is free. A decoding thread waits
+ * for a free client before it picks up the next image, so at most {@code ioThreads + parallelism}
+ * decoded images are held in memory at a time. Results are streamed to the {@link Callback} on a
+ * single background thread. A client is free again as soon as its task completes, so a slow
+ * callback does not hold up detection.
+ *
+ * <p>Detector clients are taken from and handed back to the {@link DetectorCache} of the {@link
+ * MemoryGovernor}, so consecutive batches with the same options do not reload the model.
+ *
+ * @param <T> The type of the detected feature.
+ */
+public class BatchImageProcessor<T> {
+
+	private static final String TAG = "BatchImageProcessor";
+	// Runs listeners on the thread that completes the task.
+	private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+	private final ContentResolver contentResolver;
+	private final DetectorCache detectorCache;
+	private final String detectorKey;
+	private final int parallelism;
+	private final int ioThreads;
+	private final ExecutorService ioExecutor;
+	private final ExecutorService decodeExecutor;
+	private final ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+	private final BlockingQueue<Detector<T>> detectors;
+
+	/**
+	 * @param detectorKey identifies the detector type and options in the detector cache
+	 * @param factory     creates the detector clients the cache has no idle ones for
+	 * @param parallelism number of detector clients that run at the same time
+	 * @param ioThreads   number of threads that read images, and of threads that decode them
+	 */
+	public BatchImageProcessor(
+			Context context,
+			String detectorKey,
+			DetectorFactory<T> factory,
+			int parallelism,
+			int ioThreads) {
+		if (parallelism < 1 || ioThreads < 1) {
+			throw new IllegalArgumentException(
+					"Invalid parallelism: " + parallelism + ", I/O threads: " + ioThreads);
+		}
+		contentResolver = context.getContentResolver();
+		MemoryGovernor.getInstance().register(context);
+		detectorCache = MemoryGovernor.getInstance().getDetectorCache();
+		this.detectorKey = detectorKey;
+		this.parallelism = parallelism;
+		this.ioThreads = ioThreads;
+		ioExecutor = Executors.newFixedThreadPool(ioThreads);
+		decodeExecutor = Executors.newFixedThreadPool(ioThreads);
+		detectors = new ArrayBlockingQueue<>(parallelism);
+		for (int i = 0; i < parallelism; i++) {
+			detectors.add(detectorCache.acquire(detectorKey, factory::create));
+		}
+	}
+
+	/**
+	 * Reads, decodes and processes the images behind the given content URIs. Reading and decoding
+	 * are pipelined, see {@link StillImageLoader#loadAll}.
+	 */
+	public void processUris(List<Uri> uris, Callback<T> callback) {
+		Batch batch = startBatch(uris.size(), callback);
+		if (batch == null) {
+			return;
+		}
+		StillImageLoader.loadAll(
+				contentResolver,
+				uris,
+				/* targetWidth= */ 0,
+				/* targetHeight= */ 0,
+				ioExecutor,
+				decodeExecutor,
+				/* maxOpen= */ 2 * ioThreads,
+				new StillImageLoader.Callback() {
+					@Override
+					public void onLoaded(int index, Bitmap bitmap) {
+						batch.detect(index, bitmap);
+					}
+
+					@Override
+					public void onFailed(int index, Exception e) {
+						batch.fail(index, e);
+					}
+				});
+	}
+
+	/**
+	 * Processes already decoded images.
+	 */
+	public void processBitmaps(List<Bitmap> bitmaps, Callback<T> callback) {
+		Batch batch = startBatch(bitmaps.size(), callback);
+		if (batch == null) {
+			return;
+		}
+		for (int i = 0; i < bitmaps.size(); i++) {
+			final int index = i;
+			ioExecutor.execute(() -> batch.detect(index, bitmaps.get(index)));
+		}
+	}
+
+	/**
+	 * Stops the pending work and hands the detector clients back to the cache. Must only be called
+	 * once all images were reported, e.g. from {@link Callback#onComplete(BatchStats)}.
+	 */
+	public void close() {
+		ioExecutor.shutdownNow();
+		decodeExecutor.shutdownNow();
+		callbackExecutor.shutdown();
+		Detector<T> detector;
+		while ((detector = detectors.poll()) != null) {
+			detectorCache.release(detectorKey, detector);
+		}
+	}
+
+	/**
+	 * Returns the state of a new batch, or null if it is empty and was completed right away.
+	 */
+	@Nullable
+	private Batch startBatch(int count, Callback<T> callback) {
+		if (count == 0) {
+			callbackExecutor.execute(
+					() -> callback.onComplete(new BatchStats(parallelism, 0, 0, 0)));
+			return null;
+		}
+		return new Batch(count, callback);
+	}
+
+	/**
+	 * Progress of one batch.
+	 */
+	private class Batch {
+		private final int count;
+		private final Callback<T> callback;
+		private final long startMs = SystemClock.elapsedRealtime();
+		private final AtomicInteger remaining;
+		private final AtomicInteger failures = new AtomicInteger();
+
+		Batch(int count, Callback<T> callback) {
+			this.count = count;
+			this.callback = callback;
+			remaining = new AtomicInteger(count);
+		}
+
+		/**
+		 * Waits for a free detector client and runs it on {@code bitmap}.
+		 */
+		void detect(int index, Bitmap bitmap) {
+			Detector<T> detector;
+			try {
+				detector = detectors.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail(index, e);
+				return;
+			}
+			try {
+				detector
+						.process(InputImage.fromBitmap(bitmap, 0))
+						// Added first, so the client is back before the results are delivered.
+						.addOnCompleteListener(DIRECT_EXECUTOR, task -> detectors.add(detector))
+						.addOnCompleteListener(
+								callbackExecutor,
+								task -> {
+									if (task.isSuccessful()) {
+										callback.onResult(index, task.getResult());
+									} else {
+										failures.incrementAndGet();
+										callback.onFailure(index, task.getException());
+									}
+									finishOne();
+								});
+			} catch (RuntimeException e) {
+				detectors.add(detector);
+				fail(index, e);
+			}
+		}
+
+		void fail(int index, Exception e) {
+			callbackExecutor.execute(
+					() -> {
+						failures.incrementAndGet();
+						callback.onFailure(index, e);
+						finishOne();
+					});
+		}
+
+		private void finishOne() {
+			if (remaining.decrementAndGet() == 0) {
+				BatchStats stats =
+						new BatchStats(
+								parallelism, count, failures.get(), SystemClock.elapsedRealtime() - startMs);
+				Log.d(TAG, stats.toString());
+				callback.onComplete(stats);
+			}
+		}
+	}
+
+	/**
+	 * Creates one detector client, e.g. {@code () -> FaceDetection.getClient(options)}.
+	 */
+	public interface DetectorFactory<T> {
+		Detector<T> create();
+	}
+
+	/**
+	 * Receives the results of a batch. All methods are called on the same background thread.
+	 */
+	public interface Callback<T> {
+		/**
+		 * Called with the results of the image at {@code index}, in completion order.
+		 */
+		void onResult(int index, @NonNull T results);
+
+		/**
+		 * Called if the image at {@code index} could not be decoded or processed.
+		 */
+		void onFailure(int index, @NonNull Exception e);
+
+		/**
+		 * Called once after all images of the batch have been reported.
+		 */
+		void onComplete(@NonNull BatchStats stats);
+	}
+
+	/**
+	 * Throughput of a finished batch.
+	 */
+	public static class BatchStats {
+		public final int parallelism;
+		public final int imageCount;
+		public final int failureCount;
+		public final long elapsedMs;
+
+		BatchStats(int parallelism, int imageCount, int failureCount, long elapsedMs) {
+			this.parallelism = parallelism;
+			this.imageCount = imageCount;
+			this.failureCount = failureCount;
+			this.elapsedMs = elapsedMs;
+		}
+
+		public float getImagesPerSecond() {
+			return elapsedMs == 0 ? 0 : imageCount * 1000f / elapsedMs;
+		}
+
+		@NonNull
+		@Override
+		public String toString() {
+			return String.format(
+					Locale.US,
+					"Batch of %d images (%d failed) with parallelism %d: %.2f images/sec",
+					imageCount,
+					failureCount,
+					parallelism,
+					getImagesPerSecond());
+		}
+	}
+}
@@ -23,9 +23,11 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.google.android.gms.tasks.Task;
+import com.google.android.odml.image.MlImage;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
+import com.google.mlkit.vision.demo.java.scheduling.ThrottlePolicy;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceDetection;
@@ -47,7 +49,9 @@ public class FaceDetectorProcessor extends VisionProcessorBase<List<Face>> {
 
 	public FaceDetectorProcessor(Context context) {
 		super(context);
-		FaceDetectorOptions faceDetectorOptions = PreferenceUtils.getFaceDetectorOptions(context);
+		FaceDetectorOptions faceDetectorOptions =
+				PreferenceUtils.getFaceDetectorOptions(
+						context, ThrottlePolicy.getInstance(context).isDetectorReduced());
 		Log.v(MANUAL_TESTING_LOG, "Face detector options: " + faceDetectorOptions);
 		detector = FaceDetection.getClient(faceDetectorOptions);
 	}
@@ -126,14 +130,31 @@ public class FaceDetectorProcessor extends VisionProcessorBase<List<Face>> {
 		return detector.process(image);
 	}
 
+	@Override
+	protected Task<List<Face>> detectInImage(MlImage image) {
+		return detector.process(image);
+	}
+
+	@Override
+	protected boolean isMlImageEnabled(Context context) {
+		return PreferenceUtils.isMlImageEnabled(context);
+	}
+
 	@Override
 	protected void onSuccess(@NonNull List<Face> faces, @NonNull GraphicOverlay graphicOverlay) {
 		for (Face face : faces) {
-			graphicOverlay.add(new FaceGraphic(graphicOverlay, face));
+			FaceGraphic faceGraphic = new FaceGraphic(graphicOverlay, face);
+			track(faceGraphic, face.getTrackingId(), face.getBoundingBox());
+			graphicOverlay.add(faceGraphic);
 			logExtrasForTesting(face);
 		}
 	}
 
+	@Override
+	protected boolean isTrackingSupported() {
+		return true;
+	}
+
 	@Override
 	protected void onFailure(@NonNull Exception e) {
 		Log.e(TAG, "Face detection failed " + e);
@@ -23,6 +23,7 @@ import android.graphics.PointF;
 
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
+import com.google.mlkit.vision.demo.GraphicStyles;
 import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceContour;
 import com.google.mlkit.vision.face.FaceLandmark;
@@ -39,26 +40,8 @@ public class FaceGraphic extends Graphic {
 	private static final float ID_TEXT_SIZE = 30.0f;
 	private static final float ID_Y_OFFSET = 40.0f;
 	private static final float BOX_STROKE_WIDTH = 5.0f;
-	private static final int NUM_COLORS = 10;
-	private static final int[][] COLORS =
-			new int[][]{
-					// {Text color, background color}
-					{Color.BLACK, Color.WHITE},
-					{Color.WHITE, Color.MAGENTA},
-					{Color.BLACK, Color.LTGRAY},
-					{Color.WHITE, Color.RED},
-					{Color.WHITE, Color.BLUE},
-					{Color.WHITE, Color.DKGRAY},
-					{Color.BLACK, Color.CYAN},
-					{Color.BLACK, Color.YELLOW},
-					{Color.WHITE, Color.BLACK},
-					{Color.BLACK, Color.GREEN}
-			};
-
-	private final Paint facePositionPaint;
-	private final Paint[] idPaints;
-	private final Paint[] boxPaints;
-	private final Paint[] labelPaints;
+	private static final GraphicStyles STYLES = GraphicStyles.get(ID_TEXT_SIZE, BOX_STROKE_WIDTH);
+	private static final Paint FACE_POSITION_PAINT = createFacePositionPaint();
 
 	private volatile Face face;
 
@@ -66,29 +49,12 @@ public class FaceGraphic extends Graphic {
 		super(overlay);
 
 		this.face = face;
-		final int selectedColor = Color.WHITE;
-
-		facePositionPaint = new Paint();
-		facePositionPaint.setColor(selectedColor);
-
-		int numColors = COLORS.length;
-		idPaints = new Paint[numColors];
-		boxPaints = new Paint[numColors];
-		labelPaints = new Paint[numColors];
-		for (int i = 0; i < numColors; i++) {
-			idPaints[i] = new Paint();
-			idPaints[i].setColor(COLORS[i][0] /* text color */);
-			idPaints[i].setTextSize(ID_TEXT_SIZE);
-
-			boxPaints[i] = new Paint();
-			boxPaints[i].setColor(COLORS[i][1] /* background color */);
-			boxPaints[i].setStyle(Paint.Style.STROKE);
-			boxPaints[i].setStrokeWidth(BOX_STROKE_WIDTH);
+	}
 
-			labelPaints[i] = new Paint();
-			labelPaints[i].setColor(COLORS[i][1] /* background color */);
-			labelPaints[i].setStyle(Paint.Style.FILL);
-		}
+	private static Paint createFacePositionPaint() {
+		Paint paint = new Paint();
+		paint.setColor(Color.WHITE);
+		return paint;
 	}
 
 	/**
@@ -104,7 +70,7 @@ public class FaceGraphic extends Graphic {
 		// Draws a circle at the position of the detected face, with the face's track id below.
 		float x = translateX(face.getBoundingBox().centerX());
 		float y = translateY(face.getBoundingBox().centerY());
-		canvas.drawCircle(x, y, FACE_POSITION_RADIUS, facePositionPaint);
+		canvas.drawCircle(x, y, FACE_POSITION_RADIUS, FACE_POSITION_PAINT);
 
 		// Calculate positions.
 		float left = x - scale(face.getBoundingBox().width() / 2.0f);
@@ -115,16 +81,18 @@ public class FaceGraphic extends Graphic {
 		float yLabelOffset = (face.getTrackingId() == null) ? 0 : -lineHeight;
 
 		// Decide color based on face ID
-		int colorID = (face.getTrackingId() == null) ? 0 : Math.abs(face.getTrackingId() % NUM_COLORS);
+		int colorID = GraphicStyles.getColorIndex(face.getTrackingId());
+		Paint idPaint = STYLES.getTextPaint(colorID);
+		Paint labelPaint = STYLES.getLabelPaint(colorID);
 
 		// Calculate width and height of label box
-		float textWidth = idPaints[colorID].measureText("ID: " + face.getTrackingId());
+		float textWidth = idPaint.measureText("ID: " + face.getTrackingId());
 		if (face.getSmilingProbability() != null) {
 			yLabelOffset -= lineHeight;
 			textWidth =
 					Math.max(
 							textWidth,
-							idPaints[colorID].measureText(
+							idPaint.measureText(
 									String.format(Locale.US, "Happiness: %.2f", face.getSmilingProbability())));
 		}
 		if (face.getLeftEyeOpenProbability() != null) {
@@ -132,7 +100,7 @@ public class FaceGraphic extends Graphic {
 			textWidth =
 					Math.max(
 							textWidth,
-							idPaints[colorID].measureText(
+							idPaint.measureText(
 									String.format(
 											Locale.US, "Left eye open: %.2f", face.getLeftEyeOpenProbability())));
 		}
@@ -141,7 +109,7 @@ public class FaceGraphic extends Graphic {
 			textWidth =
 					Math.max(
 							textWidth,
-							idPaints[colorID].measureText(
+							idPaint.measureText(
 									String.format(
 											Locale.US, "Right eye open: %.2f", face.getRightEyeOpenProbability())));
 		}
@@ -150,17 +118,17 @@ public class FaceGraphic extends Graphic {
 		textWidth =
 				Math.max(
 						textWidth,
-						idPaints[colorID].measureText(
+						idPaint.measureText(
 								String.format(Locale.US, "EulerX: %.2f", face.getHeadEulerAngleX())));
 		textWidth =
 				Math.max(
 						textWidth,
-						idPaints[colorID].measureText(
+						idPaint.measureText(
 								String.format(Locale.US, "EulerY: %.2f", face.getHeadEulerAngleY())));
 		textWidth =
 				Math.max(
 						textWidth,
-						idPaints[colorID].measureText(
+						idPaint.measureText(
 								String.format(Locale.US, "EulerZ: %.2f", face.getHeadEulerAngleZ())));
 		// Draw labels
 		canvas.drawRect(
@@ -168,11 +136,11 @@ public class FaceGraphic extends Graphic {
 				top + yLabelOffset,
 				left + textWidth + (2 * BOX_STROKE_WIDTH),
 				top,
-				labelPaints[colorID]);
+				labelPaint);
 		yLabelOffset += ID_TEXT_SIZE;
-		canvas.drawRect(left, top, right, bottom, boxPaints[colorID]);
+		canvas.drawRect(left, top, right, bottom, STYLES.getBoxPaint(colorID, isPredicted()));
 		if (face.getTrackingId() != null) {
-			canvas.drawText("ID: " + face.getTrackingId(), left, top + yLabelOffset, idPaints[colorID]);
+			canvas.drawText("ID: " + face.getTrackingId(), left, top + yLabelOffset, idPaint);
 			yLabelOffset += lineHeight;
 		}
 
@@ -180,7 +148,7 @@ public class FaceGraphic extends Graphic {
 		for (FaceContour contour : face.getAllContours()) {
 			for (PointF point : contour.getPoints()) {
 				canvas.drawCircle(
-						translateX(point.x), translateY(point.y), FACE_POSITION_RADIUS, facePositionPaint);
+						translateX(point.x), translateY(point.y), FACE_POSITION_RADIUS, FACE_POSITION_PAINT);
 			}
 		}
 
@@ -190,7 +158,7 @@ public class FaceGraphic extends Graphic {
 					"Smiling: " + String.format(Locale.US, "%.2f", face.getSmilingProbability()),
 					left,
 					top + yLabelOffset,
-					idPaints[colorID]);
+					idPaint);
 			yLabelOffset += lineHeight;
 		}
 
@@ -200,23 +168,23 @@ public class FaceGraphic extends Graphic {
 					"Left eye open: " + String.format(Locale.US, "%.2f", face.getLeftEyeOpenProbability()),
 					left,
 					top + yLabelOffset,
-					idPaints[colorID]);
+					idPaint);
 			yLabelOffset += lineHeight;
 		}
 		if (leftEye != null) {
 			float leftEyeLeft =
-					translateX(leftEye.getPosition().x) - idPaints[colorID].measureText("Left Eye") / 2.0f;
+					translateX(leftEye.getPosition().x) - idPaint.measureText("Left Eye") / 2.0f;
 			canvas.drawRect(
 					leftEyeLeft - BOX_STROKE_WIDTH,
 					translateY(leftEye.getPosition().y) + ID_Y_OFFSET - ID_TEXT_SIZE,
-					leftEyeLeft + idPaints[colorID].measureText("Left Eye") + BOX_STROKE_WIDTH,
+					leftEyeLeft + idPaint.measureText("Left Eye") + BOX_STROKE_WIDTH,
 					translateY(leftEye.getPosition().y) + ID_Y_OFFSET + BOX_STROKE_WIDTH,
-					labelPaints[colorID]);
+					labelPaint);
 			canvas.drawText(
 					"Left Eye",
 					leftEyeLeft,
 					translateY(leftEye.getPosition().y) + ID_Y_OFFSET,
-					idPaints[colorID]);
+					idPaint);
 		}
 
 		FaceLandmark rightEye = face.getLandmark(FaceLandmark.RIGHT_EYE);
@@ -225,33 +193,33 @@ public class FaceGraphic extends Graphic {
 					"Right eye open: " + String.format(Locale.US, "%.2f", face.getRightEyeOpenProbability()),
 					left,
 					top + yLabelOffset,
-					idPaints[colorID]);
+					idPaint);
 			yLabelOffset += lineHeight;
 		}
 		if (rightEye != null) {
 			float rightEyeLeft =
-					translateX(rightEye.getPosition().x) - idPaints[colorID].measureText("Right Eye") / 2.0f;
+					translateX(rightEye.getPosition().x) - idPaint.measureText("Right Eye") / 2.0f;
 			canvas.drawRect(
 					rightEyeLeft - BOX_STROKE_WIDTH,
 					translateY(rightEye.getPosition().y) + ID_Y_OFFSET - ID_TEXT_SIZE,
-					rightEyeLeft + idPaints[colorID].measureText("Right Eye") + BOX_STROKE_WIDTH,
+					rightEyeLeft + idPaint.measureText("Right Eye") + BOX_STROKE_WIDTH,
 					translateY(rightEye.getPosition().y) + ID_Y_OFFSET + BOX_STROKE_WIDTH,
-					labelPaints[colorID]);
+					labelPaint);
 			canvas.drawText(
 					"Right Eye",
 					rightEyeLeft,
 					translateY(rightEye.getPosition().y) + ID_Y_OFFSET,
-					idPaints[colorID]);
+					idPaint);
 		}
 
 		canvas.drawText(
-				"EulerX: " + face.getHeadEulerAngleX(), left, top + yLabelOffset, idPaints[colorID]);
+				"EulerX: " + face.getHeadEulerAngleX(), left, top + yLabelOffset, idPaint);
 		yLabelOffset += lineHeight;
 		canvas.drawText(
-				"EulerY: " + face.getHeadEulerAngleY(), left, top + yLabelOffset, idPaints[colorID]);
+				"EulerY: " + face.getHeadEulerAngleY(), left, top + yLabelOffset, idPaint);
 		yLabelOffset += lineHeight;
 		canvas.drawText(
-				"EulerZ: " + face.getHeadEulerAngleZ(), left, top + yLabelOffset, idPaints[colorID]);
+				"EulerZ: " + face.getHeadEulerAngleZ(), left, top + yLabelOffset, idPaint);
 
 		// Draw facial landmarks
 		drawFaceLandmark(canvas, FaceLandmark.LEFT_EYE);
@@ -267,7 +235,7 @@ public class FaceGraphic extends Graphic {
 					translateX(faceLandmark.getPosition().x),
 					translateY(faceLandmark.getPosition().y),
 					FACE_POSITION_RADIUS,
-					facePositionPaint);
+					FACE_POSITION_PAINT);
 		}
 	}
 }
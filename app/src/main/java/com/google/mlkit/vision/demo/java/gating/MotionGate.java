@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.gating;
+
+import android.os.SystemClock;
+
+import com.google.mlkit.vision.demo.LumaPlane;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Skips detection on frames that did not change since the last analyzed frame.
+ *
+ * <p>The Y (luma) plane of every frame is sampled on a fixed grid and compared against the samples
+ * of the last frame that passed the gate. If the mean absolute difference stays below the
+ * threshold, the frame is considered static and the previous results can be reused. To pick up
+ * slow changes that never cross the threshold between two frames, the reference is only replaced
+ * when a frame passes, and a frame is let through at least every {@link #MAX_CONSECUTIVE_SKIPS}
+ * frames.
+ */
+public class MotionGate {
+
+	// The luma plane is sampled on a GRID_SIZE x GRID_SIZE grid, whatever the frame size.
+	private static final int GRID_SIZE = 64;
+	private static final int MAX_CONSECUTIVE_SKIPS = 30;
+
+	private final float threshold;
+	private final byte[] reference = new byte[GRID_SIZE * GRID_SIZE];
+	private final byte[] samples = new byte[GRID_SIZE * GRID_SIZE];
+	private boolean hasReference;
+	private int consecutiveSkips;
+
+	// Stats since the last call to resetStats().
+	private int skippedFrames;
+	private int passedFrames;
+	private long totalGateNanos;
+
+	/**
+	 * @param threshold mean absolute luma difference, in 0-255 luma units, below which a frame is
+	 *                  considered static. Zero disables the gate.
+	 */
+	public MotionGate(float threshold) {
+		this.threshold = threshold;
+	}
+
+	public boolean isEnabled() {
+		return threshold > 0;
+	}
+
+	/**
+	 * Returns true if detection can be skipped on the frame whose luma plane is given.
+	 *
+	 * @param canReuse whether there are previous results that could be reused for this frame
+	 */
+	public synchronized boolean shouldSkip(LumaPlane luma, boolean canReuse) {
+		long startNs = SystemClock.elapsedRealtimeNanos();
+		ByteBuffer buffer = luma.getBuffer();
+		int width = luma.getWidth();
+		int height = luma.getHeight();
+		int rowStride = luma.getRowStride();
+		int pixelStride = luma.getPixelStride();
+		long diff = 0;
+		int i = 0;
+		for (int row = 0; row < GRID_SIZE; row++) {
+			int rowStart = (row * height / GRID_SIZE) * rowStride;
+			for (int col = 0; col < GRID_SIZE; col++, i++) {
+				byte sample = buffer.get(rowStart + (col * width / GRID_SIZE) * pixelStride);
+				diff += Math.abs((sample & 0xFF) - (reference[i] & 0xFF));
+				samples[i] = sample;
+			}
+		}
+		boolean isStatic = hasReference && diff < threshold * samples.length;
+		boolean skip = canReuse && isStatic && consecutiveSkips < MAX_CONSECUTIVE_SKIPS;
+		if (skip) {
+			consecutiveSkips++;
+			skippedFrames++;
+		} else {
+			System.arraycopy(samples, 0, reference, 0, samples.length);
+			hasReference = true;
+			consecutiveSkips = 0;
+			passedFrames++;
+		}
+		totalGateNanos += SystemClock.elapsedRealtimeNanos() - startNs;
+		return skip;
+	}
+
+	public synchronized int getSkippedFrames() {
+		return skippedFrames;
+	}
+
+	public synchronized int getPassedFrames() {
+		return passedFrames;
+	}
+
+	/**
+	 * Returns the average cost of a gate decision in microseconds.
+	 */
+	public synchronized long getAvgGateMicros() {
+		int frames = skippedFrames + passedFrames;
+		return frames == 0 ? 0 : totalGateNanos / frames / 1000;
+	}
+
+	public synchronized void resetStats() {
+		skippedFrames = 0;
+		passedFrames = 0;
+		totalGateNanos = 0;
+	}
+
+	public synchronized void reset() {
+		hasReference = false;
+		consecutiveSkips = 0;
+		resetStats();
+	}
+}
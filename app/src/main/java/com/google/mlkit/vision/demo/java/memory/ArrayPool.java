@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.memory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Keeps released arrays for reuse by later requests of the same length.
+ *
+ * <p>At most {@code maxRetained} arrays are kept; when more are released, the oldest is dropped,
+ * so arrays of a length that is no longer requested, e.g. after a resolution change, age out.
+ * Arrays are handed out with their previous content, callers must overwrite what they read.
+ *
+ * @param <T> the array type, e.g. {@code byte[]}
+ */
+public abstract class ArrayPool<T> implements Trimmable {
+
+	private final String name;
+	private final int bytesPerElement;
+	private final int maxRetained;
+	private final ArrayDeque<T> free = new ArrayDeque<>();
+
+	protected ArrayPool(String name, int bytesPerElement, int maxRetained) {
+		this.name = name;
+		this.bytesPerElement = bytesPerElement;
+		this.maxRetained = maxRetained;
+	}
+
+	/**
+	 * Returns a pool of {@code byte[]}.
+	 */
+	public static ArrayPool<byte[]> ofBytes(String name, int maxRetained) {
+		return new ArrayPool<byte[]>(name, 1, maxRetained) {
+			@Override
+			protected byte[] allocate(int length) {
+				return new byte[length];
+			}
+
+			@Override
+			protected int lengthOf(byte[] array) {
+				return array.length;
+			}
+		};
+	}
+
+	/**
+	 * Returns a pool of {@code int[]}.
+	 */
+	public static ArrayPool<int[]> ofInts(String name, int maxRetained) {
+		return new ArrayPool<int[]>(name, 4, maxRetained) {
+			@Override
+			protected int[] allocate(int length) {
+				return new int[length];
+			}
+
+			@Override
+			protected int lengthOf(int[] array) {
+				return array.length;
+			}
+		};
+	}
+
+	protected abstract T allocate(int length);
+
+	protected abstract int lengthOf(T array);
+
+	/**
+	 * Returns an array of exactly {@code length} elements, reused if one is available.
+	 */
+	public synchronized T acquire(int length) {
+		for (Iterator<T> it = free.iterator(); it.hasNext(); ) {
+			T array = it.next();
+			if (lengthOf(array) == length) {
+				it.remove();
+				return array;
+			}
+		}
+		return allocate(length);
+	}
+
+	/**
+	 * Hands an array back for reuse. It must not be used by the caller anymore.
+	 */
+	public synchronized void release(T array) {
+		if (free.size() >= maxRetained) {
+			free.pollFirst();
+		}
+		free.addLast(array);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public synchronized int getRetainedCount() {
+		return free.size();
+	}
+
+	@Override
+	public synchronized long getRetainedBytes() {
+		long bytes = 0;
+		for (T array : free) {
+			bytes += (long) lengthOf(array) * bytesPerElement;
+		}
+		return bytes;
+	}
+
+	@Override
+	public synchronized long trim(int stage) {
+		int keep = MemoryGovernor.getRetainedAfterTrim(stage, free.size());
+		long released = 0;
+		while (free.size() > keep) {
+			released += (long) lengthOf(free.pollFirst()) * bytesPerElement;
+		}
+		return released;
+	}
+}
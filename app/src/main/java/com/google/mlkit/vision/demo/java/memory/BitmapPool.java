@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.memory;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Keeps released mutable Bitmaps for reuse by later requests of the same size and config.
+ *
+ * <p>At most {@code maxRetained} Bitmaps are kept; when more are released, the oldest is recycled.
+ * Bitmaps are handed out with their previous content, callers must overwrite all pixels.
+ */
+public class BitmapPool implements Trimmable {
+
+	private final String name;
+	private final int maxRetained;
+	private final ArrayDeque<Bitmap> free = new ArrayDeque<>();
+
+	public BitmapPool(String name, int maxRetained) {
+		this.name = name;
+		this.maxRetained = maxRetained;
+	}
+
+	/**
+	 * Returns a mutable Bitmap of the given size and config, reused if one is available.
+	 */
+	public synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+		for (Iterator<Bitmap> it = free.iterator(); it.hasNext(); ) {
+			Bitmap bitmap = it.next();
+			if (bitmap.getWidth() == width
+					&& bitmap.getHeight() == height
+					&& bitmap.getConfig() == config) {
+				it.remove();
+				return bitmap;
+			}
+		}
+		return Bitmap.createBitmap(width, height, config);
+	}
+
+	/**
+	 * Hands a Bitmap back for reuse. It must not be drawn or read by the caller anymore.
+	 */
+	public synchronized void release(Bitmap bitmap) {
+		if (!bitmap.isMutable() || bitmap.isRecycled()) {
+			return;
+		}
+		if (free.size() >= maxRetained) {
+			free.pollFirst().recycle();
+		}
+		free.addLast(bitmap);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public synchronized int getRetainedCount() {
+		return free.size();
+	}
+
+	@Override
+	public synchronized long getRetainedBytes() {
+		long bytes = 0;
+		for (Bitmap bitmap : free) {
+			bytes += bitmap.getAllocationByteCount();
+		}
+		return bytes;
+	}
+
+	@Override
+	public synchronized long trim(int stage) {
+		int keep = MemoryGovernor.getRetainedAfterTrim(stage, free.size());
+		long released = 0;
+		while (free.size() > keep) {
+			Bitmap bitmap = free.pollFirst();
+			released += bitmap.getAllocationByteCount();
+			bitmap.recycle();
+		}
+		return released;
+	}
+}
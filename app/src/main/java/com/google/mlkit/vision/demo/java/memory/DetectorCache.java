@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.memory;
+
+import com.google.mlkit.vision.interfaces.Detector;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Keeps idle detector clients, so that creating one with the same options again does not reload
+ * its model.
+ *
+ * <p>Clients are looked up by a key that must identify their type and options. At most {@code
+ * maxIdle} clients are kept; when more are released, the oldest is closed. ML Kit does not report
+ * the memory held by a client, so trimming reports no bytes.
+ */
+public class DetectorCache implements Trimmable {
+
+	private final int maxIdle;
+	private final ArrayDeque<Entry> idle = new ArrayDeque<>();
+
+	public DetectorCache(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Returns an idle client for {@code key}, or a new one from {@code factory}.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Detector<T> acquire(String key, Factory<T> factory) {
+		synchronized (this) {
+			for (Iterator<Entry> it = idle.iterator(); it.hasNext(); ) {
+				Entry entry = it.next();
+				if (entry.key.equals(key)) {
+					it.remove();
+					return (Detector<T>) entry.detector;
+				}
+			}
+		}
+		return factory.create();
+	}
+
+	/**
+	 * Hands a client back for reuse under {@code key}. It must not be used by the caller anymore.
+	 */
+	public void release(String key, Detector<?> detector) {
+		Detector<?> evicted = null;
+		synchronized (this) {
+			if (idle.size() >= maxIdle) {
+				evicted = idle.pollFirst().detector;
+			}
+			idle.addLast(new Entry(key, detector));
+		}
+		if (evicted != null) {
+			evicted.close();
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "detectors";
+	}
+
+	@Override
+	public synchronized int getRetainedCount() {
+		return idle.size();
+	}
+
+	@Override
+	public long getRetainedBytes() {
+		return 0;
+	}
+
+	@Override
+	public synchronized long trim(int stage) {
+		int keep = MemoryGovernor.getRetainedAfterTrim(stage, idle.size());
+		while (idle.size() > keep) {
+			idle.pollFirst().detector.close();
+		}
+		return 0;
+	}
+
+	/**
+	 * Creates a client, e.g. {@code () -> FaceDetection.getClient(options)}.
+	 */
+	public interface Factory<T> {
+		Detector<T> create();
+	}
+
+	private static class Entry {
+		final String key;
+		final Detector<?> detector;
+
+		Entry(String key, Detector<?> detector) {
+			this.key = key;
+			this.detector = detector;
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.memory;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Owns the memory the app keeps around for reuse, and gives it up in stages when the system runs
+ * low on memory.
+ *
+ * <ul>
+ *   <li>{@link #getFramePool()}: NV21 frame buffers
+ *   <li>{@link #getPixelPool()}: ARGB pixel arrays of converted frames
+ *   <li>{@link #getBitmapPool()}: mutable Bitmaps, e.g. for segmentation masks
+ *   <li>{@link #getMaskPool()}: color arrays of segmentation masks
+ *   <li>{@link #getDetectorCache()}: idle detector clients
+ * </ul>
+ *
+ * <p>Pressure is reported by the system through {@link ComponentCallbacks2#onTrimMemory(int)}
+ * once the governor is registered with {@link #register(Context)}. Every trim is logged with the
+ * bytes reclaimed per pool.
+ */
+public final class MemoryGovernor implements ComponentCallbacks2 {
+
+	private static final String TAG = "MemoryGovernor";
+
+	/**
+	 * Memory is getting tight while the app is running: half of the idle items are released.
+	 */
+	public static final int STAGE_MODERATE = 1;
+	/**
+	 * Memory is low, or the app is no longer visible: one idle item of every pool is kept.
+	 */
+	public static final int STAGE_LOW = 2;
+	/**
+	 * Memory is critically low, or the app is in the background: all idle items are released.
+	 */
+	public static final int STAGE_CRITICAL = 3;
+
+	private static final MemoryGovernor instance = new MemoryGovernor();
+
+	private final ArrayPool<byte[]> framePool = ArrayPool.ofBytes("frames", 6);
+	private final ArrayPool<int[]> pixelPool = ArrayPool.ofInts("pixels", 2);
+	private final BitmapPool bitmapPool = new BitmapPool("bitmaps", 4);
+	private final ArrayPool<int[]> maskPool = ArrayPool.ofInts("masks", 2);
+	private final DetectorCache detectorCache = new DetectorCache(4);
+	private final List<Trimmable> trimmables =
+			Arrays.asList(framePool, pixelPool, bitmapPool, maskPool, detectorCache);
+
+	private boolean isRegistered;
+	private long totalReclaimedBytes;
+
+	private MemoryGovernor() {
+	}
+
+	public static MemoryGovernor getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns how many of {@code retained} idle items a pool keeps after a trim at {@code stage}.
+	 */
+	static int getRetainedAfterTrim(int stage, int retained) {
+		switch (stage) {
+			case STAGE_MODERATE:
+				return retained / 2;
+			case STAGE_LOW:
+				return Math.min(retained, 1);
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Starts listening to memory pressure. Does nothing if already registered.
+	 */
+	public synchronized void register(Context context) {
+		if (!isRegistered) {
+			context.getApplicationContext().registerComponentCallbacks(this);
+			isRegistered = true;
+		}
+	}
+
+	public ArrayPool<byte[]> getFramePool() {
+		return framePool;
+	}
+
+	public ArrayPool<int[]> getPixelPool() {
+		return pixelPool;
+	}
+
+	public BitmapPool getBitmapPool() {
+		return bitmapPool;
+	}
+
+	public ArrayPool<int[]> getMaskPool() {
+		return maskPool;
+	}
+
+	public DetectorCache getDetectorCache() {
+		return detectorCache;
+	}
+
+	@Override
+	public void onTrimMemory(int level) {
+		int stage;
+		switch (level) {
+			case TRIM_MEMORY_RUNNING_MODERATE:
+				stage = STAGE_MODERATE;
+				break;
+			case TRIM_MEMORY_RUNNING_LOW:
+			case TRIM_MEMORY_UI_HIDDEN:
+				stage = STAGE_LOW;
+				break;
+			default:
+				// TRIM_MEMORY_RUNNING_CRITICAL and the background levels.
+				stage = STAGE_CRITICAL;
+				break;
+		}
+		trim(stage, "onTrimMemory(" + level + ")");
+	}
+
+	@Override
+	public void onLowMemory() {
+		trim(STAGE_CRITICAL, "onLowMemory");
+	}
+
+	@Override
+	public void onConfigurationChanged(@NonNull Configuration newConfig) {
+	}
+
+	/**
+	 * Releases idle items of all pools according to {@code stage}.
+	 */
+	public void trim(int stage, String reason) {
+		long reclaimed = 0;
+		for (Trimmable trimmable : trimmables) {
+			int countBefore = trimmable.getRetainedCount();
+			long bytes = trimmable.trim(stage);
+			reclaimed += bytes;
+			Log.d(
+					TAG,
+					String.format(
+							Locale.US,
+							"Trimmed %s: released %d of %d, %d KB",
+							trimmable.getName(),
+							countBefore - trimmable.getRetainedCount(),
+							countBefore,
+							bytes / 1024));
+		}
+		synchronized (this) {
+			totalReclaimedBytes += reclaimed;
+		}
+		Log.i(
+				TAG,
+				String.format(
+						Locale.US,
+						"%s, stage %d: reclaimed %d KB, %d KB so far; now retained: %s",
+						reason,
+						stage,
+						reclaimed / 1024,
+						getTotalReclaimedBytes() / 1024,
+						getOccupancyReport()));
+	}
+
+	public synchronized long getTotalReclaimedBytes() {
+		return totalReclaimedBytes;
+	}
+
+	/**
+	 * Returns the idle items and bytes retained by every pool, e.g. for periodic stats logs. Cheap
+	 * enough to be called once per frame.
+	 */
+	public String getOccupancyReport() {
+		StringBuilder report = new StringBuilder();
+		for (Trimmable trimmable : trimmables) {
+			if (report.length() > 0) {
+				report.append(", ");
+			}
+			report
+					.append(trimmable.getName())
+					.append('=')
+					.append(trimmable.getRetainedCount());
+			long bytes = trimmable.getRetainedBytes();
+			if (bytes > 0) {
+				report.append(" (").append(bytes / 1024).append(" KB)");
+			}
+		}
+		return report.toString();
+	}
+}
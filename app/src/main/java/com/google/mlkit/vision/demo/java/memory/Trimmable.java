@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.memory;
+
+/**
+ * Memory that is kept around for reuse and can be given up under pressure, see {@link
+ * MemoryGovernor}.
+ */
+public interface Trimmable {
+
+	String getName();
+
+	/**
+	 * Returns the number of idle items retained for reuse.
+	 */
+	int getRetainedCount();
+
+	/**
+	 * Returns the size of the idle items retained for reuse, or 0 if it is unknown.
+	 */
+	long getRetainedBytes();
+
+	/**
+	 * Releases retained items according to {@code stage}, one of the {@code STAGE_} constants of
+	 * {@link MemoryGovernor}. Returns the number of bytes released.
+	 */
+	long trim(int stage);
+}
@@ -22,9 +22,11 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.google.android.gms.tasks.Task;
+import com.google.android.odml.image.MlImage;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
+import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import com.google.mlkit.vision.objects.DetectedObject;
 import com.google.mlkit.vision.objects.ObjectDetection;
 import com.google.mlkit.vision.objects.ObjectDetector;
@@ -57,14 +59,31 @@ public class ObjectDetectorProcessor extends VisionProcessorBase<List<DetectedOb
 		return detector.process(image);
 	}
 
+	@Override
+	protected Task<List<DetectedObject>> detectInImage(MlImage image) {
+		return detector.process(image);
+	}
+
+	@Override
+	protected boolean isMlImageEnabled(Context context) {
+		return PreferenceUtils.isMlImageEnabled(context);
+	}
+
 	@Override
 	protected void onSuccess(
 			@NonNull List<DetectedObject> results, @NonNull GraphicOverlay graphicOverlay) {
 		for (DetectedObject object : results) {
-			graphicOverlay.add(new ObjectGraphic(graphicOverlay, object));
+			ObjectGraphic objectGraphic = new ObjectGraphic(graphicOverlay, object);
+			track(objectGraphic, object.getTrackingId(), object.getBoundingBox());
+			graphicOverlay.add(objectGraphic);
 		}
 	}
 
+	@Override
+	protected boolean isTrackingSupported() {
+		return true;
+	}
+
 	@Override
 	protected void onFailure(@NonNull Exception e) {
 		Log.e(TAG, "Object detection failed!", e);
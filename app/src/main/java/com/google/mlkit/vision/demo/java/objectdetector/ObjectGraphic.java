@@ -17,12 +17,12 @@
 package com.google.mlkit.vision.demo.java.objectdetector;
 
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.RectF;
 
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
+import com.google.mlkit.vision.demo.GraphicStyles;
 import com.google.mlkit.vision.objects.DetectedObject;
 import com.google.mlkit.vision.objects.DetectedObject.Label;
 
@@ -35,69 +35,33 @@ public class ObjectGraphic extends Graphic {
 
 	private static final float TEXT_SIZE = 54.0f;
 	private static final float STROKE_WIDTH = 4.0f;
-	private static final int NUM_COLORS = 10;
-	private static final int[][] COLORS =
-			new int[][]{
-					// {Text color, background color}
-					{Color.BLACK, Color.WHITE},
-					{Color.WHITE, Color.MAGENTA},
-					{Color.BLACK, Color.LTGRAY},
-					{Color.WHITE, Color.RED},
-					{Color.WHITE, Color.BLUE},
-					{Color.WHITE, Color.DKGRAY},
-					{Color.BLACK, Color.CYAN},
-					{Color.BLACK, Color.YELLOW},
-					{Color.WHITE, Color.BLACK},
-					{Color.BLACK, Color.GREEN}
-			};
+	private static final GraphicStyles STYLES = GraphicStyles.get(TEXT_SIZE, STROKE_WIDTH);
 	private static final String LABEL_FORMAT = "%.2f%% confidence (index: %d)";
 
 	private final DetectedObject object;
-	private final Paint[] boxPaints;
-	private final Paint[] textPaints;
-	private final Paint[] labelPaints;
 
 	public ObjectGraphic(GraphicOverlay overlay, DetectedObject object) {
 		super(overlay);
 
 		this.object = object;
-
-		int numColors = COLORS.length;
-		textPaints = new Paint[numColors];
-		boxPaints = new Paint[numColors];
-		labelPaints = new Paint[numColors];
-		for (int i = 0; i < numColors; i++) {
-			textPaints[i] = new Paint();
-			textPaints[i].setColor(COLORS[i][0] /* text color */);
-			textPaints[i].setTextSize(TEXT_SIZE);
-
-			boxPaints[i] = new Paint();
-			boxPaints[i].setColor(COLORS[i][1] /* background color */);
-			boxPaints[i].setStyle(Paint.Style.STROKE);
-			boxPaints[i].setStrokeWidth(STROKE_WIDTH);
-
-			labelPaints[i] = new Paint();
-			labelPaints[i].setColor(COLORS[i][1] /* background color */);
-			labelPaints[i].setStyle(Paint.Style.FILL);
-		}
 	}
 
 	@Override
 	public void draw(Canvas canvas) {
 		// Decide color based on object tracking ID
-		int colorID =
-				object.getTrackingId() == null ? 0 : Math.abs(object.getTrackingId() % NUM_COLORS);
-		float textWidth = textPaints[colorID].measureText("Tracking ID: " + object.getTrackingId());
+		int colorID = GraphicStyles.getColorIndex(object.getTrackingId());
+		Paint textPaint = STYLES.getTextPaint(colorID);
+		float textWidth = textPaint.measureText("Tracking ID: " + object.getTrackingId());
 		float lineHeight = TEXT_SIZE + STROKE_WIDTH;
 		float yLabelOffset = -lineHeight;
 
 		// Calculate width and height of label box
 		for (Label label : object.getLabels()) {
-			textWidth = Math.max(textWidth, textPaints[colorID].measureText(label.getText()));
+			textWidth = Math.max(textWidth, textPaint.measureText(label.getText()));
 			textWidth =
 					Math.max(
 							textWidth,
-							textPaints[colorID].measureText(
+							textPaint.measureText(
 									String.format(
 											Locale.US, LABEL_FORMAT, label.getConfidence() * 100, label.getIndex())));
 			yLabelOffset -= 2 * lineHeight;
@@ -112,7 +76,7 @@ public class ObjectGraphic extends Graphic {
 		rect.right = Math.max(x0, x1);
 		rect.top = translateY(rect.top);
 		rect.bottom = translateY(rect.bottom);
-		canvas.drawRect(rect, boxPaints[colorID]);
+		canvas.drawRect(rect, STYLES.getBoxPaint(colorID, isPredicted()));
 
 		// Draws other object info.
 		canvas.drawRect(
@@ -120,23 +84,23 @@ public class ObjectGraphic extends Graphic {
 				rect.top + yLabelOffset,
 				rect.left + textWidth + (2 * STROKE_WIDTH),
 				rect.top,
-				labelPaints[colorID]);
+				STYLES.getLabelPaint(colorID));
 		yLabelOffset += TEXT_SIZE;
 		canvas.drawText(
 				"Tracking ID: " + object.getTrackingId(),
 				rect.left,
 				rect.top + yLabelOffset,
-				textPaints[colorID]);
+				textPaint);
 		yLabelOffset += lineHeight;
 
 		for (Label label : object.getLabels()) {
-			canvas.drawText(label.getText(), rect.left, rect.top + yLabelOffset, textPaints[colorID]);
+			canvas.drawText(label.getText(), rect.left, rect.top + yLabelOffset, textPaint);
 			yLabelOffset += lineHeight;
 			canvas.drawText(
 					String.format(Locale.US, LABEL_FORMAT, label.getConfidence() * 100, label.getIndex()),
 					rect.left,
 					rect.top + yLabelOffset,
-					textPaints[colorID]);
+					textPaint);
 
 			yLabelOffset += lineHeight;
 		}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.scheduling;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.google.mlkit.vision.demo.preference.PreferenceUtils;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Steps stream analysis down when the device heats up or runs low on battery, and back up once it
+ * recovers.
+ *
+ * <p>Every level caps the analysis frame rate, scales the analysis resolution and, from {@link
+ * #LEVEL_LIGHT} on, asks processors for cheaper detector modes. The frame rate is applied by
+ * {@link com.google.mlkit.vision.demo.java.VisionProcessorBase}; resolution and detector modes
+ * only apply to processors and streams created after a level change, so screens that run analysis
+ * register a {@link Listener} and rebuild them.
+ *
+ * <p>Levels go up as soon as the conditions call for it, and down one step at a time once the
+ * conditions allowed it for {@link #RELAX_HOLD_MS}, so the policy does not oscillate. Every
+ * transition is logged, together with the frame rate and latency before it and, once {@link
+ * #EFFECT_WINDOW_MS} of frames were processed at the new level, after it.
+ *
+ * <p>The device state is only monitored while throttling is enabled in the settings and at least
+ * one listener is registered, otherwise the level stays at {@link #LEVEL_NONE}.
+ */
+public class ThrottlePolicy {
+
+	private static final String TAG = "ThrottlePolicy";
+
+	public static final int LEVEL_NONE = 0;
+	public static final int LEVEL_LIGHT = 1;
+	public static final int LEVEL_MODERATE = 2;
+	public static final int LEVEL_SEVERE = 3;
+
+	// Indexed by level. A frame rate of 0 means unlimited.
+	private static final int[] MAX_FPS = {0, 20, 12, 6};
+	private static final float[] RESOLUTION_SCALE = {1f, 1f, 0.75f, 0.5f};
+
+	private static final int LOW_BATTERY_PERCENT = 15;
+	private static final int CRITICAL_BATTERY_PERCENT = 5;
+	private static final long RELAX_HOLD_MS = 30_000;
+	private static final long EFFECT_WINDOW_MS = 5_000;
+
+	@Nullable
+	private static ThrottlePolicy instance;
+
+	private final Context context;
+	private final PowerManager powerManager;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private final Runnable relaxRunnable = this::updateLevel;
+
+	private volatile int level = LEVEL_NONE;
+	private boolean isMonitoring;
+	private long lastTransitionMs;
+	@Nullable
+	private Object thermalListener;
+	private int batteryPercent = 100;
+	private boolean isCharging = true;
+
+	// Frame rate limiting, guarded by this.
+	private long lastAcceptedFrameMs;
+
+	// Measurement of the effect of transitions, guarded by this.
+	private long windowStartMs;
+	private int windowFrames;
+	private long windowTotalLatencyMs;
+	private float beforeFps;
+	private long beforeLatencyMs;
+	private boolean isEffectPending;
+
+	private final BroadcastReceiver batteryReceiver =
+			new BroadcastReceiver() {
+				@Override
+				public void onReceive(Context context, Intent intent) {
+					if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+						int batteryLevel = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+						int batteryScale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+						if (batteryLevel >= 0 && batteryScale > 0) {
+							batteryPercent = batteryLevel * 100 / batteryScale;
+						}
+						isCharging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+					}
+					updateLevel();
+				}
+			};
+
+	private ThrottlePolicy(Context context) {
+		this.context = context.getApplicationContext();
+		powerManager = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+	}
+
+	public static synchronized ThrottlePolicy getInstance(Context context) {
+		if (instance == null) {
+			instance = new ThrottlePolicy(context);
+		}
+		return instance;
+	}
+
+	/**
+	 * Registers a listener for level changes, and starts monitoring the device if throttling is
+	 * enabled.
+	 */
+	@MainThread
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+		if (!isMonitoring && PreferenceUtils.isPowerThrottlingEnabled(context)) {
+			startMonitoring();
+		}
+	}
+
+	/**
+	 * Unregisters a listener. Monitoring stops, and the level goes back to {@link #LEVEL_NONE}, once
+	 * the last listener is gone.
+	 */
+	@MainThread
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+		if (isMonitoring && listeners.isEmpty()) {
+			stopMonitoring();
+		}
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Returns the highest frame rate stream analysis should run at, or 0 if it is not limited.
+	 */
+	public int getMaxFps() {
+		return MAX_FPS[level];
+	}
+
+	/**
+	 * Returns the factor, at most 1, the analysis resolution should be scaled with.
+	 */
+	public float getResolutionScale() {
+		return RESOLUTION_SCALE[level];
+	}
+
+	/**
+	 * Returns true if processors should use cheaper detector modes, e.g. fast face detection without
+	 * contours.
+	 */
+	public boolean isDetectorReduced() {
+		return level >= LEVEL_LIGHT;
+	}
+
+	/**
+	 * Called for every stream frame before it is analyzed. Returns true if the frame should be
+	 * skipped to stay below {@link #getMaxFps()}.
+	 */
+	public synchronized boolean shouldSkipFrame(long frameMs) {
+		int maxFps = getMaxFps();
+		if (maxFps <= 0 || frameMs - lastAcceptedFrameMs >= 1000 / maxFps) {
+			lastAcceptedFrameMs = frameMs;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Called when results of a stream frame were displayed, to measure the effect of transitions.
+	 */
+	public synchronized void onFrameProcessed(long frameLatencyMs) {
+		long nowMs = SystemClock.elapsedRealtime();
+		if (!isEffectPending && nowMs - windowStartMs >= 2 * EFFECT_WINDOW_MS) {
+			// Keep the "before" numbers of the next transition recent.
+			windowFrames = 0;
+			windowTotalLatencyMs = 0;
+		}
+		if (windowFrames == 0) {
+			windowStartMs = nowMs;
+		}
+		windowFrames++;
+		windowTotalLatencyMs += frameLatencyMs;
+		if (isEffectPending && nowMs - windowStartMs >= EFFECT_WINDOW_MS) {
+			isEffectPending = false;
+			Log.i(
+					TAG,
+					String.format(
+							Locale.US,
+							"Throttle level %d effect: fps %.1f -> %.1f, frame latency avg %d -> %d ms",
+							level,
+							beforeFps,
+							getWindowFps(nowMs),
+							beforeLatencyMs,
+							windowTotalLatencyMs / windowFrames));
+		}
+	}
+
+	private void startMonitoring() {
+		isMonitoring = true;
+		IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+		filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+		// ACTION_BATTERY_CHANGED is sticky, so the current battery state is delivered right away.
+		context.registerReceiver(batteryReceiver, filter);
+		if (VERSION.SDK_INT >= VERSION_CODES.Q) {
+			addThermalListener();
+		}
+		updateLevel();
+	}
+
+	private void stopMonitoring() {
+		isMonitoring = false;
+		context.unregisterReceiver(batteryReceiver);
+		if (VERSION.SDK_INT >= VERSION_CODES.Q) {
+			removeThermalListener();
+		}
+		handler.removeCallbacks(relaxRunnable);
+		setLevel(LEVEL_NONE, "monitoring stopped");
+	}
+
+	@RequiresApi(VERSION_CODES.Q)
+	private void addThermalListener() {
+		PowerManager.OnThermalStatusChangedListener listener = status -> updateLevel();
+		powerManager.addThermalStatusListener(listener);
+		thermalListener = listener;
+	}
+
+	@RequiresApi(VERSION_CODES.Q)
+	private void removeThermalListener() {
+		if (thermalListener != null) {
+			powerManager.removeThermalStatusListener(
+					(PowerManager.OnThermalStatusChangedListener) thermalListener);
+			thermalListener = null;
+		}
+	}
+
+	private int getThermalStatus() {
+		return VERSION.SDK_INT >= VERSION_CODES.Q
+				? powerManager.getCurrentThermalStatus()
+				: PowerManager.THERMAL_STATUS_NONE;
+	}
+
+	/**
+	 * Returns the level the current device state calls for.
+	 */
+	private int getTargetLevel(int thermalStatus) {
+		int target;
+		if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) {
+			target = LEVEL_SEVERE;
+		} else if (thermalStatus == PowerManager.THERMAL_STATUS_MODERATE) {
+			target = LEVEL_MODERATE;
+		} else if (thermalStatus == PowerManager.THERMAL_STATUS_LIGHT) {
+			target = LEVEL_LIGHT;
+		} else {
+			target = LEVEL_NONE;
+		}
+		if (!isCharging && batteryPercent <= CRITICAL_BATTERY_PERCENT) {
+			target = Math.max(target, LEVEL_MODERATE);
+		} else if (powerManager.isPowerSaveMode()
+				|| (!isCharging && batteryPercent <= LOW_BATTERY_PERCENT)) {
+			target = Math.max(target, LEVEL_LIGHT);
+		}
+		return target;
+	}
+
+	private void updateLevel() {
+		if (!isMonitoring) {
+			return;
+		}
+		handler.removeCallbacks(relaxRunnable);
+		int thermalStatus = getThermalStatus();
+		int target = getTargetLevel(thermalStatus);
+		String reason =
+				String.format(
+						Locale.US,
+						"thermal status=%d, battery=%d%%, charging=%b, power save=%b",
+						thermalStatus,
+						batteryPercent,
+						isCharging,
+						powerManager.isPowerSaveMode());
+		if (target > level) {
+			setLevel(target, reason);
+		} else if (target < level) {
+			long heldMs = SystemClock.elapsedRealtime() - lastTransitionMs;
+			if (heldMs >= RELAX_HOLD_MS) {
+				setLevel(level - 1, reason);
+				heldMs = 0;
+			}
+			if (target < level) {
+				handler.postDelayed(relaxRunnable, RELAX_HOLD_MS - heldMs);
+			}
+		}
+	}
+
+	private void setLevel(int newLevel, String reason) {
+		if (newLevel == level) {
+			return;
+		}
+		int oldLevel = level;
+		synchronized (this) {
+			long nowMs = SystemClock.elapsedRealtime();
+			beforeFps = getWindowFps(nowMs);
+			beforeLatencyMs = windowFrames == 0 ? 0 : windowTotalLatencyMs / windowFrames;
+			Log.i(
+					TAG,
+					String.format(
+							Locale.US,
+							"Throttle level %d -> %d (%s): max fps=%d, resolution scale=%.2f, reduced detector=%b;"
+									+ " before: fps %.1f, frame latency avg %d ms",
+							oldLevel,
+							newLevel,
+							reason,
+							MAX_FPS[newLevel],
+							RESOLUTION_SCALE[newLevel],
+							newLevel >= LEVEL_LIGHT,
+							beforeFps,
+							beforeLatencyMs));
+			level = newLevel;
+			windowFrames = 0;
+			windowTotalLatencyMs = 0;
+			isEffectPending = isMonitoring;
+		}
+		lastTransitionMs = SystemClock.elapsedRealtime();
+		for (Listener listener : listeners) {
+			listener.onThrottleLevelChanged(newLevel);
+		}
+	}
+
+	private float getWindowFps(long nowMs) {
+		long elapsedMs = nowMs - windowStartMs;
+		return windowFrames == 0 || elapsedMs <= 0 ? 0 : windowFrames * 1000f / elapsedMs;
+	}
+
+	/**
+	 * Notified on the main thread when the throttle level changes.
+	 */
+	public interface Listener {
+		void onThrottleLevelChanged(int level);
+	}
+}
@@ -19,13 +19,14 @@ package com.google.mlkit.vision.demo.java.segmenter;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Matrix;
 
 import androidx.annotation.ColorInt;
 
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
+import com.google.mlkit.vision.demo.java.memory.MemoryGovernor;
+import com.google.mlkit.vision.demo.pipeline.mask.MaskColors;
 import com.google.mlkit.vision.segmentation.SegmentationMask;
 
 import java.nio.ByteBuffer;
@@ -58,13 +59,17 @@ public class SegmentationGraphic extends Graphic {
 	}
 
 	/**
-	 * Draws the segmented background on the supplied canvas.
+	 * Draws the segmented background on the supplied canvas. The color array and the Bitmap are
+	 * taken from the pools of the {@link MemoryGovernor} and handed back after drawing.
 	 */
 	@Override
 	public void draw(Canvas canvas) {
+		MemoryGovernor memoryGovernor = MemoryGovernor.getInstance();
+		int[] colors = maskColorsFromByteBuffer(mask);
 		Bitmap bitmap =
-				Bitmap.createBitmap(
-						maskColorsFromByteBuffer(mask), maskWidth, maskHeight, Config.ARGB_8888);
+				memoryGovernor.getBitmapPool().acquire(maskWidth, maskHeight, Config.ARGB_8888);
+		bitmap.setPixels(colors, 0, maskWidth, 0, 0, maskWidth, maskHeight);
+		memoryGovernor.getMaskPool().release(colors);
 		if (isRawSizeMaskEnabled) {
 			Matrix matrix = new Matrix(getTransformationMatrix());
 			matrix.preScale(scaleX, scaleY);
@@ -72,7 +77,7 @@ public class SegmentationGraphic extends Graphic {
 		} else {
 			canvas.drawBitmap(bitmap, getTransformationMatrix(), null);
 		}
-		bitmap.recycle();
+		memoryGovernor.getBitmapPool().release(bitmap);
 		// Reset byteBuffer pointer to beginning, so that the mask can be redrawn if screen is refreshed
 		mask.rewind();
 	}
@@ -82,19 +87,8 @@ public class SegmentationGraphic extends Graphic {
 	 */
 	@ColorInt
 	private int[] maskColorsFromByteBuffer(ByteBuffer byteBuffer) {
-		@ColorInt int[] colors = new int[maskWidth * maskHeight];
-		for (int i = 0; i < maskWidth * maskHeight; i++) {
-			float backgroundLikelihood = 1 - byteBuffer.getFloat();
-			if (backgroundLikelihood > 0.9) {
-				colors[i] = Color.argb(128, 255, 0, 255);
-			} else if (backgroundLikelihood > 0.2) {
-				// Linear interpolation to make sure when backgroundLikelihood is 0.2, the alpha is 0 and
-				// when backgroundLikelihood is 0.9, the alpha is 128.
-				// +0.5 to round the float value to the nearest int.
-				int alpha = (int) (182.9 * backgroundLikelihood - 36.6 + 0.5);
-				colors[i] = Color.argb(alpha, 255, 0, 255);
-			}
-		}
+		@ColorInt int[] colors = MemoryGovernor.getInstance().getMaskPool().acquire(maskWidth * maskHeight);
+		MaskColors.fromForegroundConfidence(byteBuffer, colors, maskWidth * maskHeight);
 		return colors;
 	}
 }
@@ -22,9 +22,11 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.google.android.gms.tasks.Task;
+import com.google.android.odml.image.MlImage;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
+import com.google.mlkit.vision.demo.java.scheduling.ThrottlePolicy;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import com.google.mlkit.vision.segmentation.Segmentation;
 import com.google.mlkit.vision.segmentation.SegmentationMask;
@@ -49,7 +51,9 @@ public class SegmenterProcessor extends VisionProcessorBase<SegmentationMask> {
 		SelfieSegmenterOptions.Builder optionsBuilder = new SelfieSegmenterOptions.Builder();
 		optionsBuilder.setDetectorMode(
 				isStreamMode ? SelfieSegmenterOptions.STREAM_MODE : SelfieSegmenterOptions.SINGLE_IMAGE_MODE);
-		if (PreferenceUtils.shouldSegmentationEnableRawSizeMask(context)) {
+		// Raw size masks are more expensive to produce, they are skipped while the device is throttled.
+		if (PreferenceUtils.shouldSegmentationEnableRawSizeMask(context)
+				&& !ThrottlePolicy.getInstance(context).isDetectorReduced()) {
 			optionsBuilder.enableRawSizeMask();
 		}
 
@@ -63,6 +67,16 @@ public class SegmenterProcessor extends VisionProcessorBase<SegmentationMask> {
 		return segmenter.process(image);
 	}
 
+	@Override
+	protected Task<SegmentationMask> detectInImage(MlImage image) {
+		return segmenter.process(image);
+	}
+
+	@Override
+	protected boolean isMlImageEnabled(Context context) {
+		return PreferenceUtils.isMlImageEnabled(context);
+	}
+
 	@Override
 	protected void onSuccess(
 			@NonNull SegmentationMask segmentationMask, @NonNull GraphicOverlay graphicOverlay) {
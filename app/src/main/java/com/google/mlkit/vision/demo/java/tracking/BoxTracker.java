@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.tracking;
+
+import android.graphics.PointF;
+import android.graphics.Rect;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Carries detected boxes forward between detector runs with a per-track constant-velocity model.
+ *
+ * <p>Every detector run feeds the box center of each tracking ID through {@link #update}. On the
+ * frames in between, {@link #predictShift} extrapolates how far each box has moved since it was
+ * last seen, so the previous results can be redrawn at their estimated position. Tracks that are
+ * not reported in a detector run are dropped in {@link #endFrame()}.
+ *
+ * <p>Not thread safe, all calls are expected to come from the result delivery thread.
+ */
+public class BoxTracker {
+
+	// Weight of the newest velocity measurement, smooths out detector jitter.
+	private static final float VELOCITY_SMOOTHING = 0.5f;
+	// Extrapolation is capped so a track that has not been re-detected for a while stops drifting.
+	private static final long MAX_EXTRAPOLATION_MS = 500;
+
+	private final Map<Integer, Track> tracks = new HashMap<>();
+	private final PointF shift = new PointF();
+	private int frameId;
+
+	/**
+	 * Starts a detector run. Tracks that are not updated before {@link #endFrame()} are dropped.
+	 */
+	public void beginFrame() {
+		frameId++;
+	}
+
+	/**
+	 * Records the box of a track as seen by the detector at the given time.
+	 */
+	public void update(int trackingId, Rect box, long timestampMs) {
+		Track track = tracks.get(trackingId);
+		if (track == null) {
+			track = new Track();
+			tracks.put(trackingId, track);
+		} else if (timestampMs > track.timestampMs) {
+			long dt = timestampMs - track.timestampMs;
+			float vx = (box.exactCenterX() - track.centerX) / dt;
+			float vy = (box.exactCenterY() - track.centerY) / dt;
+			track.velocityX += VELOCITY_SMOOTHING * (vx - track.velocityX);
+			track.velocityY += VELOCITY_SMOOTHING * (vy - track.velocityY);
+		}
+		track.centerX = box.exactCenterX();
+		track.centerY = box.exactCenterY();
+		track.timestampMs = timestampMs;
+		track.lastFrameId = frameId;
+	}
+
+	/**
+	 * Ends a detector run and drops the tracks that were lost in it.
+	 */
+	public void endFrame() {
+		Iterator<Track> iterator = tracks.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().lastFrameId != frameId) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns the estimated offset of the given track at {@code timestampMs} relative to where it
+	 * was last detected, or null if the track is unknown. The returned point is reused by the next
+	 * call.
+	 */
+	@Nullable
+	public PointF predictShift(int trackingId, long timestampMs) {
+		Track track = tracks.get(trackingId);
+		if (track == null) {
+			return null;
+		}
+		long dt = Math.min(Math.max(timestampMs - track.timestampMs, 0), MAX_EXTRAPOLATION_MS);
+		shift.set(track.velocityX * dt, track.velocityY * dt);
+		return shift;
+	}
+
+	public int getTrackCount() {
+		return tracks.size();
+	}
+
+	public void clear() {
+		tracks.clear();
+	}
+
+	private static class Track {
+		float centerX;
+		float centerY;
+		// Velocity in image pixels per millisecond.
+		float velocityX;
+		float velocityY;
+		long timestampMs;
+		int lastFrameId;
+	}
+}
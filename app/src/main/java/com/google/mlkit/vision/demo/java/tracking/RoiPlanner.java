@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.tracking;
+
+import android.graphics.Rect;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Plans the region of interest that the detector runs on for the next frame of a stream.
+ *
+ * <p>The region is the union of the boxes found in the last detector run, padded on every side so
+ * that moving results stay inside. A full-frame scan is requested periodically, when the last run
+ * found nothing or lost some of its results, and when the region would cover most of the frame
+ * anyway, so new entrants are still found.
+ *
+ * <p>Boxes are reported from the result delivery thread while regions are requested from the
+ * frame thread, so all methods are synchronized.
+ */
+public class RoiPlanner {
+
+	// Padding added on every side of the union, relative to the union's size.
+	private static final float PADDING = 0.5f;
+	private static final int MIN_ROI_SIZE = 160;
+	// Cropping does not pay off once the region covers most of the frame.
+	private static final float MAX_ROI_AREA_FRACTION = 0.6f;
+	private static final int FULL_FRAME_INTERVAL = 15;
+
+	private final Rect union = new Rect();
+	private final Rect pendingUnion = new Rect();
+	private int resultCount;
+	private int pendingResultCount;
+	private boolean tracksLost = true;
+	private int framesSinceFullFrame = Integer.MAX_VALUE;
+
+	/**
+	 * Starts collecting the boxes of a detector run.
+	 */
+	public synchronized void beginResults() {
+		pendingUnion.setEmpty();
+		pendingResultCount = 0;
+	}
+
+	/**
+	 * Adds a box found by the current detector run, in full-frame coordinates.
+	 */
+	public synchronized void addBox(Rect box) {
+		pendingUnion.union(box);
+		pendingResultCount++;
+	}
+
+	/**
+	 * Ends a detector run.
+	 *
+	 * @param wasFullFrame whether the run covered the full frame rather than a region
+	 */
+	public synchronized void endResults(boolean wasFullFrame) {
+		if (wasFullFrame) {
+			framesSinceFullFrame = 0;
+		}
+		tracksLost = pendingResultCount == 0 || pendingResultCount < resultCount;
+		resultCount = pendingResultCount;
+		union.set(pendingUnion);
+	}
+
+	/**
+	 * Returns the region to run the detector on for the next frame, in upright image coordinates, or
+	 * null if the full frame should be scanned.
+	 */
+	@Nullable
+	public synchronized Rect nextRoi(int imageWidth, int imageHeight) {
+		if (tracksLost || framesSinceFullFrame >= FULL_FRAME_INTERVAL) {
+			return null;
+		}
+		int padX = Math.max((int) (union.width() * PADDING), (MIN_ROI_SIZE - union.width()) / 2);
+		int padY = Math.max((int) (union.height() * PADDING), (MIN_ROI_SIZE - union.height()) / 2);
+		Rect roi = new Rect(union);
+		roi.inset(-padX, -padY);
+		if (!roi.intersect(0, 0, imageWidth, imageHeight)
+				|| roi.width() * roi.height() > MAX_ROI_AREA_FRACTION * imageWidth * imageHeight) {
+			return null;
+		}
+		framesSinceFullFrame++;
+		return roi;
+	}
+
+	public synchronized void reset() {
+		union.setEmpty();
+		resultCount = 0;
+		tracksLost = true;
+		framesSinceFullFrame = Integer.MAX_VALUE;
+	}
+}
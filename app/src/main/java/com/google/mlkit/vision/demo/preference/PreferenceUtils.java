@@ -32,6 +32,8 @@ import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.vision.demo.CameraSource;
 import com.google.mlkit.vision.demo.CameraSource.SizePair;
 import com.google.mlkit.vision.demo.R;
+import com.google.mlkit.vision.demo.pipeline.scheduling.DetectionScheduler;
+import com.google.mlkit.vision.demo.pipeline.sizing.PreviewCostModel;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
 import com.google.mlkit.vision.objects.ObjectDetectorOptionsBase.DetectorMode;
 import com.google.mlkit.vision.objects.custom.CustomObjectDetectorOptions;
@@ -41,6 +43,12 @@ import com.google.mlkit.vision.objects.defaults.ObjectDetectorOptions;
  * Utility class to retrieve shared preferences.
  */
 public class PreferenceUtils {
+    // Values of the image input preference.
+    private static final int IMAGE_INPUT_INPUT_IMAGE = 0;
+    private static final int IMAGE_INPUT_COMPARE = 2;
+    // Prefix of the learned preview cost models, which are not shown in the settings.
+    private static final String PREVIEW_COST_MODEL_KEY_PREFIX = "preview_cost_model_";
+
     private PreferenceUtils() {
     }
 
@@ -177,6 +185,14 @@ public class PreferenceUtils {
     }
 
     public static FaceDetectorOptions getFaceDetectorOptions(Context context) {
+        return getFaceDetectorOptions(context, /* isReduced= */ false);
+    }
+
+    /**
+     * Returns the face detector options from the settings. If {@code isReduced} is set, e.g. while
+     * the device is throttled, fast mode is forced and contours are turned off.
+     */
+    public static FaceDetectorOptions getFaceDetectorOptions(Context context, boolean isReduced) {
         int landmarkMode =
                 getModeTypePreferenceValue(
                         context,
@@ -197,6 +213,10 @@ public class PreferenceUtils {
                         context,
                         R.string.pref_key_live_preview_face_detection_performance_mode,
                         FaceDetectorOptions.PERFORMANCE_MODE_FAST);
+        if (isReduced) {
+            contourMode = FaceDetectorOptions.CONTOUR_MODE_NONE;
+            performanceMode = FaceDetectorOptions.PERFORMANCE_MODE_FAST;
+        }
 
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
         boolean enableFaceTracking =
@@ -240,6 +260,106 @@ public class PreferenceUtils {
         return Integer.parseInt(sharedPreferences.getString(prefKey, String.valueOf(defaultValue)));
     }
 
+    /**
+     * Returns on which stream frames the detector runs: every n-th frame, or {@link
+     * DetectionScheduler#ADAPTIVE}.
+     */
+    public static int getDetectionInterval(Context context) {
+        return getModeTypePreferenceValue(context, R.string.pref_key_detection_interval, 1);
+    }
+
+    /**
+     * Returns the mean absolute luma difference below which camera frames are considered static, or
+     * zero if motion gating is disabled.
+     */
+    public static float getMotionGateThreshold(Context context) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        String prefKey = context.getString(R.string.pref_key_motion_gate_threshold);
+        return Float.parseFloat(sharedPreferences.getString(prefKey, "0"));
+    }
+
+    public static boolean isRoiDetectionEnabled(Context context) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        String prefKey = context.getString(R.string.pref_key_roi_detection);
+        return sharedPreferences.getBoolean(prefKey, false);
+    }
+
+    /**
+     * Returns the age in milliseconds past which camera frames are dropped before processing, or zero
+     * if frames are never dropped.
+     */
+    public static int getFrameDeadlineMs(Context context) {
+        return getModeTypePreferenceValue(context, R.string.pref_key_frame_deadline, 0);
+    }
+
+    /**
+     * Returns the fixed number of preview buffers of the Camera1 source, or zero if the pool sizes
+     * itself.
+     */
+    public static int getPreviewBufferCount(Context context) {
+        return getModeTypePreferenceValue(context, R.string.pref_key_preview_buffers, 0);
+    }
+
+    /**
+     * Returns the preview cost model learned under {@code key}, or null if there is none yet.
+     */
+    @Nullable
+    public static PreviewCostModel getPreviewCostModel(Context context, String key) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        String serialized = sharedPreferences.getString(PREVIEW_COST_MODEL_KEY_PREFIX + key, null);
+        if (serialized == null) {
+            return null;
+        }
+        try {
+            return PreviewCostModel.parse(serialized);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves a preview cost model under {@code key}, serialized with {@link
+     * PreviewCostModel#serialize()}.
+     */
+    public static void savePreviewCostModel(Context context, String key, String serializedModel) {
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .edit()
+                .putString(PREVIEW_COST_MODEL_KEY_PREFIX + key, serializedModel)
+                .apply();
+    }
+
+    /**
+     * Returns true if frames should be passed to the detectors as MlImage rather than InputImage.
+     * Also true in comparison mode, where frames alternate between both.
+     */
+    public static boolean isMlImageEnabled(Context context) {
+        return getImageInput(context) != IMAGE_INPUT_INPUT_IMAGE;
+    }
+
+    public static boolean isImageInputComparisonEnabled(Context context) {
+        return getImageInput(context) == IMAGE_INPUT_COMPARE;
+    }
+
+    private static int getImageInput(Context context) {
+        return getModeTypePreferenceValue(context, R.string.pref_key_image_input, IMAGE_INPUT_INPUT_IMAGE);
+    }
+
+    public static boolean isPowerThrottlingEnabled(Context context) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        String prefKey = context.getString(R.string.pref_key_power_throttling);
+        return sharedPreferences.getBoolean(prefKey, false);
+    }
+
+    /**
+     * Returns true if the Camera1 source runs the camera and its preview callbacks on a thread of
+     * its own rather than on the main thread.
+     */
+    public static boolean isCameraThreadEnabled(Context context) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        String prefKey = context.getString(R.string.pref_key_camera_thread);
+        return sharedPreferences.getBoolean(prefKey, true);
+    }
+
     public static boolean isCameraLiveViewportEnabled(Context context) {
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
         String prefKey = context.getString(R.string.pref_key_camera_live_viewport);
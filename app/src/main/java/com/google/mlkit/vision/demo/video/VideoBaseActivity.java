@@ -24,6 +24,7 @@ import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.R;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
 import com.google.mlkit.vision.demo.java.facedetector.FaceDetectorProcessor;
+import com.google.mlkit.vision.demo.java.scheduling.ThrottlePolicy;
 import com.google.mlkit.vision.demo.java.segmenter.SegmenterProcessor;
 
 import java.util.ArrayList;
@@ -50,6 +51,9 @@ public abstract class VideoBaseActivity extends AppCompatActivity {
     private boolean pending;
     private Bitmap lastFrame;
 
+    // Detector modes only change with a new processor, the sample size is read for every frame.
+    private final ThrottlePolicy.Listener throttleListener = level -> createImageProcessor();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -76,7 +80,12 @@ public abstract class VideoBaseActivity extends AppCompatActivity {
 
     protected abstract @Nullable View createVideoFrameView();
 
+    /**
+     * Returns the size frames are sampled at, for a view of the given size, scaled down while the
+     * device is throttled.
+     */
     protected Size getSizeForDesiredSize(int width, int height, int desiredSize) {
+        desiredSize = Math.round(desiredSize * ThrottlePolicy.getInstance(this).getResolutionScale());
         int w, h;
         if (width > height) {
             w = desiredSize;
@@ -107,7 +116,7 @@ public abstract class VideoBaseActivity extends AppCompatActivity {
                         if (pending) processFrame(lastFrame);
                     }
                 });
-                imageProcessor.processBitmap(frame, graphicOverlay);
+                imageProcessor.processVideoFrame(frame, graphicOverlay);
             }
         }
     }
@@ -118,6 +127,7 @@ public abstract class VideoBaseActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
+        ThrottlePolicy.getInstance(this).addListener(throttleListener);
         createImageProcessor();
     }
 
@@ -125,6 +135,7 @@ public abstract class VideoBaseActivity extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
         player.pause();
+        ThrottlePolicy.getInstance(this).removeListener(throttleListener);
         stopImageProcessor();
     }
 
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline;
+
+import com.google.mlkit.vision.demo.pipeline.buffers.IndexedBuffer;
+import com.google.mlkit.vision.demo.pipeline.buffers.IndexedBufferSet;
+import com.google.mlkit.vision.demo.pipeline.handoff.FrameMailbox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame handoff from the camera callback thread to the detection thread under contention: the
+ * producer delivers frames back to back while the consumer takes them as fast as it can.
+ *
+ * <p>{@code locked} is the previous implementation of {@code CameraSource}, a monitor with
+ * wait/notifyAll and an IdentityHashMap from arrays to their ByteBuffers. {@code mailbox} is the
+ * {@link FrameMailbox} with an {@link IndexedBufferSet}. The producer scores are the cost of a
+ * camera callback.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameHandoffBenchmark {
+
+	// Like the preview buffer pool of CameraSource.
+	private static final int BUFFER_COUNT = 4;
+	private static final int BUFFER_SIZE = 64;
+	// Lets the consumer return at the end of an iteration once the producer stopped.
+	private static final long TAKE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final byte[][] arrays = new byte[BUFFER_COUNT][];
+	private int next;
+
+	private final IdentityHashMap<byte[], ByteBuffer> bytesToByteBuffer = new IdentityHashMap<>();
+	private final Object lock = new Object();
+	private ByteBuffer pendingFrameData;
+
+	private final IndexedBufferSet buffers = new IndexedBufferSet();
+	private final FrameMailbox<IndexedBuffer> mailbox = new FrameMailbox<>();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		for (int i = 0; i < BUFFER_COUNT; i++) {
+			arrays[i] = new byte[BUFFER_SIZE];
+			bytesToByteBuffer.put(arrays[i], ByteBuffer.wrap(arrays[i]));
+			buffers.add(arrays[i]);
+		}
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(1)
+	public ByteBuffer lockedProduce() {
+		byte[] data = nextArray();
+		synchronized (lock) {
+			ByteBuffer superseded = pendingFrameData;
+			pendingFrameData = bytesToByteBuffer.get(data);
+			lock.notifyAll();
+			return superseded;
+		}
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(1)
+	public ByteBuffer lockedConsume() throws InterruptedException {
+		synchronized (lock) {
+			if (pendingFrameData == null) {
+				lock.wait(TimeUnit.NANOSECONDS.toMillis(TAKE_TIMEOUT_NANOS));
+			}
+			ByteBuffer data = pendingFrameData;
+			pendingFrameData = null;
+			return data;
+		}
+	}
+
+	@Benchmark
+	@Group("mailbox")
+	@GroupThreads(1)
+	public IndexedBuffer mailboxProduce() {
+		return mailbox.offer(buffers.find(nextArray()));
+	}
+
+	@Benchmark
+	@Group("mailbox")
+	@GroupThreads(1)
+	public IndexedBuffer mailboxConsume() throws InterruptedException {
+		return mailbox.take(TAKE_TIMEOUT_NANOS);
+	}
+
+	private byte[] nextArray() {
+		// Only the producer thread calls this.
+		next = (next + 1) % BUFFER_COUNT;
+		return arrays[next];
+	}
+}
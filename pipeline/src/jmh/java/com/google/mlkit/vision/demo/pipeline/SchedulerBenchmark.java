@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline;
+
+import com.google.mlkit.vision.demo.pipeline.metrics.LatencyHistogram;
+import com.google.mlkit.vision.demo.pipeline.scheduling.DetectionScheduler;
+import com.google.mlkit.vision.demo.pipeline.scheduling.FrameDeadline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame overhead of the scheduling decisions and bookkeeping that run on every camera frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SchedulerBenchmark {
+
+	private final DetectionScheduler scheduler = new DetectionScheduler(DetectionScheduler.ADAPTIVE);
+	private final FrameDeadline frameDeadline = new FrameDeadline(200);
+	private final LatencyHistogram histogram = new LatencyHistogram();
+	private long frameMs = 1;
+
+	@Benchmark
+	public boolean scheduleFrame() {
+		// A 30 fps stream with a detector that takes about two frames.
+		frameMs += 33;
+		boolean shouldDetect = scheduler.shouldDetect(frameMs, /* canPredict= */ true);
+		if (shouldDetect) {
+			scheduler.onDetectorLatency(70);
+		}
+		return shouldDetect;
+	}
+
+	@Benchmark
+	public boolean checkDeadline() {
+		frameMs += 33;
+		boolean isStale = frameDeadline.isStale(frameMs, frameMs + 50);
+		frameDeadline.onDisplayed(frameMs, frameMs + 80);
+		return isStale;
+	}
+
+	@Benchmark
+	public int recordLatency() {
+		frameMs += 33;
+		histogram.record(frameMs % 120);
+		return histogram.getCount();
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline;
+
+import com.google.mlkit.vision.demo.pipeline.yuv.RowBands;
+import com.google.mlkit.vision.demo.pipeline.yuv.YuvKernels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the YUV kernels at common camera resolutions, by the number of threads they run on.
+ * The runs with one thread are the serial baseline the speedup of the others is relative to; 0
+ * stands for all cores of the machine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvKernelsBenchmark {
+
+	@Param({"640x480", "1920x1080", "3840x2160"})
+	public String resolution;
+
+	/**
+	 * Chroma layout of the YUV_420_888 input: shared VU buffer (NV21), separate planes (I420) or
+	 * shared UV buffer (NV12).
+	 */
+	@Param({"NV21", "I420", "NV12"})
+	public String layout;
+
+	/**
+	 * Bytes of padding at the end of every plane row.
+	 */
+	@Param({"0", "64"})
+	public int rowPadding;
+
+	/**
+	 * Threads of the row band pool, 0 for one per core.
+	 */
+	@Param({"1", "2", "4", "0"})
+	public int threads;
+
+	private int width;
+	private int height;
+	private byte[] nv21;
+	private int[] argb;
+	private byte[] out;
+	private ByteBuffer yBuffer;
+	private ByteBuffer uBuffer;
+	private ByteBuffer vBuffer;
+	private int yRowStride;
+	private int chromaRowStride;
+	private int chromaPixelStride;
+
+	@Setup
+	public void setUp() {
+		RowBands.setParallelism(threads > 0 ? threads : RowBands.getDefaultParallelism());
+		String[] size = resolution.split("x");
+		width = Integer.parseInt(size[0]);
+		height = Integer.parseInt(size[1]);
+		Random random = new Random(42);
+		nv21 = new byte[YuvKernels.nv21Size(width, height)];
+		random.nextBytes(nv21);
+		argb = new int[width * height];
+		out = new byte[nv21.length];
+
+		int chromaWidth = width / 2;
+		int chromaHeight = height / 2;
+		yRowStride = width + rowPadding;
+		yBuffer = randomDirectBuffer(random, yRowStride * (height - 1) + width);
+		if (layout.equals("I420")) {
+			chromaPixelStride = 1;
+			chromaRowStride = chromaWidth + rowPadding;
+			uBuffer = randomDirectBuffer(random, chromaRowStride * (chromaHeight - 1) + chromaWidth);
+			vBuffer = randomDirectBuffer(random, chromaRowStride * (chromaHeight - 1) + chromaWidth);
+		} else {
+			// Both planes are views of one buffer, one byte apart, like on most camera HALs.
+			chromaPixelStride = 2;
+			chromaRowStride = 2 * chromaWidth + rowPadding;
+			ByteBuffer chroma = randomDirectBuffer(random, chromaRowStride * (chromaHeight - 1) + 2 * chromaWidth);
+			ByteBuffer first = slice(chroma, 0, chroma.capacity() - 1);
+			ByteBuffer second = slice(chroma, 1, chroma.capacity());
+			boolean isVFirst = layout.equals("NV21");
+			vBuffer = isVFirst ? first : second;
+			uBuffer = isVFirst ? second : first;
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		RowBands.setParallelism(RowBands.getDefaultParallelism());
+	}
+
+	@Benchmark
+	public int[] nv21ToArgb() {
+		YuvKernels.nv21ToArgb(nv21, 0, width, height, 90, /* mirror= */ false, argb);
+		return argb;
+	}
+
+	@Benchmark
+	public byte[] yuv420ToNv21() {
+		YuvKernels.yuv420ToNv21(
+				yBuffer,
+				yRowStride,
+				1,
+				uBuffer,
+				chromaRowStride,
+				chromaPixelStride,
+				vBuffer,
+				chromaRowStride,
+				chromaPixelStride,
+				width,
+				height,
+				out);
+		return out;
+	}
+
+	private static ByteBuffer randomDirectBuffer(Random random, int size) {
+		byte[] bytes = new byte[size];
+		random.nextBytes(bytes);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+		buffer.put(bytes);
+		buffer.rewind();
+		return buffer;
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(start);
+		view.limit(end);
+		return view.slice();
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline.buffers;
+
+import java.util.Locale;
+
+/**
+ * Sizes a pool of camera callback buffers, e.g. those handed to {@code
+ * Camera.addCallbackBuffer()}, and keeps its occupancy metrics.
+ *
+ * <p>The pool grows by one buffer whenever the camera is left without a free buffer, which makes the
+ * driver drop the frames captured until one is handed back, and whenever such drops are detected
+ * from the gap between two frames. It shrinks by one buffer when the camera held at least two
+ * spare buffers for a whole window of frames. The pool never leaves {@code [min, max]}; with {@code
+ * min == max} it is fixed.
+ *
+ * <p>The camera cannot be asked to give buffers back, so shrinking takes effect when the owner hands
+ * a buffer back: {@link #onBufferReturned(long)} tells it to drop the buffer instead.
+ *
+ * <p>Not thread-safe, the owner guards all calls with the same lock it uses for its buffers.
+ */
+public class CallbackBufferPolicy {
+
+	// Number of frames over which the spare buffers are watched before shrinking.
+	private static final int IDLE_WINDOW_FRAMES = 90;
+	// Spare buffers the camera must have held during a whole window for the pool to shrink.
+	private static final int IDLE_SPARE_BUFFERS = 2;
+	// A gap between frames that is this much longer than usual is counted as dropped frames.
+	private static final float DROP_GAP_FACTOR = 1.5f;
+	// Weight of the newest sample in the frame interval average.
+	private static final float SMOOTHING = 0.1f;
+
+	private final int minCount;
+	private final int maxCount;
+	private int targetCount;
+	// Buffers that exist, wherever they currently are.
+	private int allocatedCount;
+	// Buffers the camera currently owns to write frames into.
+	private int queuedCount;
+
+	private long lastFrameMs = -1;
+	private float avgFrameIntervalMs;
+	// Time the camera ran out of free buffers, or -1 while it has one.
+	private long starvedSinceMs = -1;
+	private boolean starvedSinceLastFrame;
+
+	private int windowFrames;
+	private int windowMinQueued = Integer.MAX_VALUE;
+
+	private int frameCount;
+	private long queuedSum;
+	private int starvationCount;
+	private int droppedFrameCount;
+	private long starvationWaitMs;
+	private long maxStarvationWaitMs;
+	private int growCount;
+	private int shrinkCount;
+
+	/**
+	 * @param initial number of buffers to start with, clamped to {@code [min, max]}
+	 * @param min     the pool never shrinks below this
+	 * @param max     the pool never grows beyond this
+	 */
+	public CallbackBufferPolicy(int initial, int min, int max) {
+		if (min < 1 || max < min) {
+			throw new IllegalArgumentException("Invalid buffer count range: " + min + ".." + max);
+		}
+		this.minCount = min;
+		this.maxCount = max;
+		this.targetCount = Math.max(min, Math.min(max, initial));
+	}
+
+	/**
+	 * Returns the number of buffers the pool should have. The owner allocates buffers while {@link
+	 * #getAllocatedCount()} is below it.
+	 */
+	public int getTargetCount() {
+		return targetCount;
+	}
+
+	public int getAllocatedCount() {
+		return allocatedCount;
+	}
+
+	/**
+	 * Returns the number of buffers the camera currently owns.
+	 */
+	public int getQueuedCount() {
+		return queuedCount;
+	}
+
+	/**
+	 * Called when a new buffer has been handed to the camera.
+	 */
+	public void onAllocated() {
+		allocatedCount++;
+		queuedCount++;
+		// A buffer added right when the camera starved ends the starvation without any wait.
+		starvedSinceMs = -1;
+	}
+
+	/**
+	 * Called when the camera delivered a frame in one of its buffers. Returns true if the pool grew
+	 * and the owner should allocate another buffer.
+	 */
+	public boolean onFrameDelivered(long nowMs) {
+		queuedCount--;
+		frameCount++;
+		queuedSum += queuedCount;
+
+		boolean framesDropped = false;
+		if (lastFrameMs >= 0) {
+			long intervalMs = nowMs - lastFrameMs;
+			if (starvedSinceLastFrame
+					&& avgFrameIntervalMs > 0
+					&& intervalMs > DROP_GAP_FACTOR * avgFrameIntervalMs) {
+				// The camera had no buffer to capture the frames in between.
+				droppedFrameCount += Math.max(1, Math.round(intervalMs / avgFrameIntervalMs) - 1);
+				framesDropped = true;
+			} else {
+				avgFrameIntervalMs += SMOOTHING * (intervalMs - avgFrameIntervalMs);
+			}
+		}
+		lastFrameMs = nowMs;
+		starvedSinceLastFrame = false;
+
+		if (queuedCount <= 0) {
+			starvationCount++;
+			starvedSinceMs = nowMs;
+			starvedSinceLastFrame = true;
+		}
+
+		if ((framesDropped || queuedCount <= 0) && targetCount < maxCount) {
+			targetCount++;
+			growCount++;
+			resetIdleWindow();
+			return true;
+		}
+
+		windowMinQueued = Math.min(windowMinQueued, queuedCount);
+		if (++windowFrames >= IDLE_WINDOW_FRAMES) {
+			if (windowMinQueued >= IDLE_SPARE_BUFFERS && targetCount > minCount) {
+				targetCount--;
+				shrinkCount++;
+			}
+			resetIdleWindow();
+		}
+		return false;
+	}
+
+	/**
+	 * Called when a buffer is no longer read by anyone. Returns true if the owner should hand it back
+	 * to the camera, false if it should drop it because the pool shrank.
+	 */
+	public boolean onBufferReturned(long nowMs) {
+		if (allocatedCount > targetCount) {
+			allocatedCount--;
+			return false;
+		}
+		if (starvedSinceMs >= 0) {
+			long waitMs = nowMs - starvedSinceMs;
+			starvationWaitMs += waitMs;
+			maxStarvationWaitMs = Math.max(maxStarvationWaitMs, waitMs);
+			starvedSinceMs = -1;
+		}
+		queuedCount++;
+		return true;
+	}
+
+	/**
+	 * Returns how often the camera ran out of free buffers.
+	 */
+	public int getStarvationCount() {
+		return starvationCount;
+	}
+
+	/**
+	 * Returns the estimated number of frames the camera dropped for lack of a free buffer.
+	 */
+	public int getDroppedFrameCount() {
+		return droppedFrameCount;
+	}
+
+	/**
+	 * Returns the total time the camera waited for a free buffer, in milliseconds.
+	 */
+	public long getStarvationWaitMs() {
+		return starvationWaitMs;
+	}
+
+	public long getMaxStarvationWaitMs() {
+		return maxStarvationWaitMs;
+	}
+
+	/**
+	 * Returns the average number of buffers the camera owned right after delivering a frame.
+	 */
+	public float getAverageQueuedCount() {
+		return frameCount == 0 ? 0 : (float) queuedSum / frameCount;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				Locale.US,
+				"buffers %d/%d (range %d..%d, grew %d, shrank %d), avg queued %.1f, starved %d"
+						+ " (wait %d ms, max %d ms), dropped ~%d of %d frames",
+				allocatedCount,
+				targetCount,
+				minCount,
+				maxCount,
+				growCount,
+				shrinkCount,
+				getAverageQueuedCount(),
+				starvationCount,
+				starvationWaitMs,
+				maxStarvationWaitMs,
+				droppedFrameCount,
+				frameCount + droppedFrameCount);
+	}
+
+	private void resetIdleWindow() {
+		windowFrames = 0;
+		windowMinQueued = Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline.buffers;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A frame buffer as handed to a camera, e.g. through {@code Camera.addCallbackBuffer()}: the array
+ * the camera writes into, together with the ByteBuffer that wraps it for the detectors and its
+ * index in the owning {@link IndexedBufferSet}.
+ *
+ * <p>The attachment describes the frame currently held by the buffer, e.g. its metadata, and is
+ * reused along with the buffer. It is updated by the thread that owns the buffer, before the buffer
+ * is handed on.
+ */
+public final class IndexedBuffer {
+
+	private final int index;
+	private final byte[] data;
+	private final ByteBuffer buffer;
+	private Object attachment;
+
+	IndexedBuffer(int index, byte[] data) {
+		this.index = index;
+		this.data = data;
+		this.buffer = ByteBuffer.wrap(data);
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	public Object getAttachment() {
+		return attachment;
+	}
+
+	public void setAttachment(Object attachment) {
+		this.attachment = attachment;
+	}
+}
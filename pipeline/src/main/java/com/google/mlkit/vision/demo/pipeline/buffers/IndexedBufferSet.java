@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline.buffers;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The buffers of a camera stream, each wrapped once in an {@link IndexedBuffer} when it is added.
+ *
+ * <p>A camera only hands back the arrays it was given. {@link #find(byte[])} maps them back to
+ * their wrappers without taking a lock or hashing: it scans the few buffers of the set by
+ * identity. Buffers keep their index while they are in the set; the index of a removed buffer is
+ * reused by the next one added.
+ *
+ * <p>Adding and removing buffers is synchronized and copies the small index, lookups may run on
+ * any thread concurrently.
+ */
+public final class IndexedBufferSet {
+
+	private static final IndexedBuffer[] EMPTY = new IndexedBuffer[0];
+
+	private volatile IndexedBuffer[] buffers = EMPTY;
+
+	/**
+	 * Wraps {@code data} and adds it to the set.
+	 */
+	public synchronized IndexedBuffer add(byte[] data) {
+		IndexedBuffer[] current = buffers;
+		int index = 0;
+		while (index < current.length && current[index] != null) {
+			index++;
+		}
+		IndexedBuffer[] next = new IndexedBuffer[Math.max(current.length, index + 1)];
+		System.arraycopy(current, 0, next, 0, current.length);
+		IndexedBuffer buffer = new IndexedBuffer(index, data);
+		next[index] = buffer;
+		buffers = next;
+		return buffer;
+	}
+
+	/**
+	 * Removes {@code buffer} from the set. Does nothing if it is not in the set.
+	 */
+	public synchronized void remove(IndexedBuffer buffer) {
+		IndexedBuffer[] current = buffers;
+		int index = buffer.getIndex();
+		if (index < current.length && current[index] == buffer) {
+			IndexedBuffer[] next = current.clone();
+			next[index] = null;
+			buffers = next;
+		}
+	}
+
+	public synchronized void clear() {
+		buffers = EMPTY;
+	}
+
+	/**
+	 * Returns the wrapper of {@code data}, or null if it is not in the set.
+	 */
+	public IndexedBuffer find(byte[] data) {
+		for (IndexedBuffer buffer : buffers) {
+			if (buffer != null && buffer.getData() == data) {
+				return buffer;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the wrapper whose ByteBuffer is {@code buffer}, or null if it is not in the set.
+	 */
+	@SuppressWarnings("ByteBufferBackingArray")
+	public IndexedBuffer find(ByteBuffer buffer) {
+		if (!buffer.hasArray()) {
+			return null;
+		}
+		IndexedBuffer indexed = find(buffer.array());
+		return indexed != null && indexed.getBuffer() == buffer ? indexed : null;
+	}
+}
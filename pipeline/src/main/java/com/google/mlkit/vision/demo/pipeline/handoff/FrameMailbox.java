@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline.handoff;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands the latest item of a stream from one producer thread to one consumer thread, e.g. camera
+ * frames from the camera callback to the detection thread.
+ *
+ * <p>The mailbox holds at most one item. {@link #offer(Object)} replaces a pending item that the
+ * consumer has not picked up yet and returns it, so that the producer can recycle it. The producer
+ * never blocks or takes a lock; the consumer parks while the mailbox is empty and is unparked by
+ * the next offer.
+ *
+ * <p>Only a single producer and a single consumer thread may use a mailbox at a time.
+ *
+ * @param <T> the item type
+ */
+public final class FrameMailbox<T> {
+
+	private final AtomicReference<T> slot = new AtomicReference<>();
+	// The consumer while it is parked or about to park, otherwise null.
+	private volatile Thread waiter;
+	private volatile boolean closed;
+
+	/**
+	 * Makes {@code item} the pending item and wakes the consumer. Never blocks.
+	 *
+	 * @return the pending item that was replaced without being taken, or null
+	 */
+	public T offer(T item) {
+		T superseded = slot.getAndSet(item);
+		Thread consumer = waiter;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+		return superseded;
+	}
+
+	/**
+	 * Removes and returns the pending item, or returns null if there is none. Never blocks.
+	 */
+	public T poll() {
+		return slot.getAndSet(null);
+	}
+
+	/**
+	 * Removes and returns the pending item, waiting for one if there is none.
+	 *
+	 * @return the item, or null once the mailbox is closed
+	 * @throws InterruptedException if the consumer is interrupted while waiting
+	 */
+	public T take() throws InterruptedException {
+		return take(0);
+	}
+
+	/**
+	 * Like {@link #take()}, but returns null if no item arrives within {@code timeoutNanos}. A
+	 * timeout of zero waits forever.
+	 */
+	public T take(long timeoutNanos) throws InterruptedException {
+		long deadlineNanos = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+		Thread current = Thread.currentThread();
+		while (true) {
+			if (closed) {
+				return null;
+			}
+			T item = slot.getAndSet(null);
+			if (item != null) {
+				return item;
+			}
+
+			// Publish the waiter before checking the slot again: an offer either sees the waiter and
+			// unparks it, or its item is seen here, so no wakeup is lost.
+			waiter = current;
+			if (slot.get() == null && !closed) {
+				if (deadlineNanos == 0) {
+					LockSupport.park(this);
+				} else {
+					long remainingNanos = deadlineNanos - System.nanoTime();
+					if (remainingNanos <= 0) {
+						waiter = null;
+						return null;
+					}
+					LockSupport.parkNanos(this, remainingNanos);
+				}
+			}
+			waiter = null;
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * Makes {@link #take()} return null from now on, and wakes the consumer if it is waiting. Items
+	 * can still be offered, but are not taken until the mailbox is opened again.
+	 */
+	public void close() {
+		closed = true;
+		Thread consumer = waiter;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	/**
+	 * Reopens a closed mailbox. An item left pending from before is discarded and returned.
+	 */
+	public T open() {
+		T stale = slot.getAndSet(null);
+		closed = false;
+		return stale;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline.mask;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns segmentation masks into overlay colors.
+ */
+public final class MaskColors {
+
+	// Magenta, drawn with up to half opacity over the background.
+	private static final int BACKGROUND_RGB = 0xFF00FF;
+
+	private MaskColors() {
+	}
+
+	/**
+	 * Reads {@code count} foreground confidences as floats from the position of {@code mask} and
+	 * writes an ARGB color per pixel into {@code colors}. Confident background pixels get half opaque
+	 * magenta, uncertain ones fade out and foreground pixels are transparent. Every pixel is written,
+	 * so {@code colors} may hold the colors of an earlier mask.
+	 */
+	public static void fromForegroundConfidence(ByteBuffer mask, int[] colors, int count) {
+		for (int i = 0; i < count; i++) {
+			float backgroundLikelihood = 1 - mask.getFloat();
+			if (backgroundLikelihood > 0.9) {
+				colors[i] = (128 << 24) | BACKGROUND_RGB;
+			} else if (backgroundLikelihood > 0.2) {
+				// Linear interpolation to make sure when backgroundLikelihood is 0.2, the alpha is 0 and
+				// when backgroundLikelihood is 0.9, the alpha is 128.
+				// +0.5 to round the float value to the nearest int.
+				int alpha = (int) (182.9 * backgroundLikelihood - 36.6 + 0.5);
+				colors[i] = (alpha << 24) | BACKGROUND_RGB;
+			} else {
+				colors[i] = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of latencies in milliseconds, for percentiles that averages and maxima hide.
+ *
+ * <p>Latencies are counted in 1 ms buckets up to {@link #MAX_TRACKED_MS}; longer ones share an
+ * overflow bucket and are reported as that value. Recording does not allocate.
+ */
+public class LatencyHistogram {
+
+	public static final int MAX_TRACKED_MS = 1000;
+
+	private final int[] counts = new int[MAX_TRACKED_MS + 1];
+	private int totalCount;
+
+	public synchronized void record(long latencyMs) {
+		int bucket = (int) Math.max(0, Math.min(latencyMs, MAX_TRACKED_MS));
+		counts[bucket]++;
+		totalCount++;
+	}
+
+	public synchronized int getCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Returns the smallest latency that at least {@code percentile} percent of the recorded latencies
+	 * do not exceed, or 0 if nothing was recorded.
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(totalCount * percentile / 100));
+		long seen = 0;
+		for (int bucket = 0; bucket < counts.length; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank) {
+				return bucket;
+			}
+		}
+		return MAX_TRACKED_MS;
+	}
+
+	public synchronized void reset() {
+		Arrays.fill(counts, 0);
+		totalCount = 0;
+	}
+
+	/**
+	 * Returns the median and tail percentiles, e.g. for periodic stats logs.
+	 */
+	@Override
+	public synchronized String toString() {
+		return "p50="
+				+ getPercentile(50)
+				+ ", p90="
+				+ getPercentile(90)
+				+ ", p99="
+				+ getPercentile(99);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.pipeline.scheduling;
+
+/**
+ * Decides on which frames of a stream the full detector runs. In between, the previous results are
+ * propagated by a tracker, e.g. {@code BoxTracker} of the app.
+ *
+ * <p>With a fixed interval K the detector runs on every K-th frame. In {@link #ADAPTIVE} mode, K
+ * follows the ratio between the detector latency and the frame interval, so the detector is kept
+ * busy without frames queueing up behind it.
+ *
+ * <p>Frames and detector latencies may be reported from different threads.
+ */
+public class DetectionScheduler {
+
+	/**
+	 * Interval value that lets the scheduler pick K from the measured latencies.
+	 */
+	public static final int ADAPTIVE = 0;
+
+	private static final int MAX_ADAPTIVE_INTERVAL = 8;
+	// Weight of the newest sample in the moving averages below.
+	private static final float SMOOTHING = 0.1f;
+
+	private final int interval;
+	private int framesSinceDetection = Integer.MAX_VALUE;
+	private long lastFrameMs = -1;
+	private float avgFrameIntervalMs;
+	private float avgDetectorMs;
+
+	/**
+	 * @param interval run the detector on every {@code interval}-th frame, or {@link #ADAPTIVE}
+	 */
+	public DetectionScheduler(int interval) {
+		if (interval < 0) {
+			throw new IllegalArgumentException("Invalid detection interval: " + interval);
+		}
+		this.interval = interval;
+	}
+
+	/**
+	 * Returns true if the scheduler never skips the detector.
+	 */
+	public boolean isEveryFrame() {
+		return interval == 1;
+	}
+
+	/**
+	 * Called for every incoming frame. Returns true if the detector should run on it, false if the
+	 * previous results should be propagated instead.
+	 *
+	 * @param canPredict whether there are previous results that can be propagated to this frame
+	 */
+	public synchronized boolean shouldDetect(long frameMs, boolean canPredict) {
+		if (lastFrameMs >= 0) {
+			avgFrameIntervalMs += SMOOTHING * ((frameMs - lastFrameMs) - avgFrameIntervalMs);
+		}
+		lastFrameMs = frameMs;
+
+		if (!canPredict || framesSinceDetection >= getCurrentInterval() - 1) {
+			framesSinceDetection = 0;
+			return true;
+		}
+		framesSinceDetection++;
+		return false;
+	}
+
+	/**
+	 * Feeds the latency of a finished detector run into the adaptive interval.
+	 */
+	public synchronized void onDetectorLatency(long detectorMs) {
+		avgDetectorMs =
+				avgDetectorMs == 0 ? detectorMs : avgDetectorMs + SMOOTHING * (detectorMs - avgDetectorMs);
+	}
+
+	/**
+	 * Returns the K currently in use.
+	 */
+	public synchronized int getCurrentInterval() {
+		if (interval != ADAPTIVE) {
+			return interval;
+		}
+		if (avgFrameIntervalMs <= 0) {
+			return 1;
+		}
+		int adaptive = (int) Math.ceil(avgDetectorMs / avgFrameIntervalMs);
+		return Math.max(1, Math.min(adaptive, MAX_ADAPTIVE_INTERVAL));
+	}
+
+	public synchronized void reset() {
+		framesSinceDetection = Integer.MAX_VALUE;
+		lastFrameMs = -1;
+		avgFrameIntervalMs = 0;
+		avgDetectorMs = 0;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.pipeline.scheduling;
+
+/**
+ * Drops frames that waited too long before they could be processed, and keeps track of how old
+ * frames are by the time their results are displayed.
+ *
+ * <p>All times are in the {@code SystemClock.elapsedRealtime()} time base of Android, and the
+ * current time is passed in by the caller. A capture time of 0 means the capture time is unknown,
+ * such frames are never dropped.
+ */
+public class FrameDeadline {
+
+	private final long deadlineMs;
+
+	// Stats since the last call to resetStats().
+	private int droppedFrames;
+	private int displayedFrames;
+	private long totalDisplayAgeMs;
+	private long maxDisplayAgeMs;
+
+	/**
+	 * @param deadlineMs maximum age of a frame when its processing starts, or 0 to never drop frames
+	 */
+	public FrameDeadline(long deadlineMs) {
+		this.deadlineMs = deadlineMs;
+	}
+
+	/**
+	 * Converts a camera sensor timestamp to the {@code SystemClock.elapsedRealtime()} time base.
+	 *
+	 * <p>Depending on the device, sensor timestamps are either in that time base or in the one of
+	 * {@link System#nanoTime()}, which does not advance during deep sleep. The time base that gives
+	 * the smallest non-negative frame age is assumed.
+	 *
+	 * @param elapsedRealtimeNs the current {@code SystemClock.elapsedRealtimeNanos()}
+	 * @param monotonicNs       the current {@link System#nanoTime()}
+	 */
+	public static long sensorTimestampToElapsedRealtimeMs(
+			long timestampNs, long elapsedRealtimeNs, long monotonicNs) {
+		long elapsedRealtimeAgeNs = elapsedRealtimeNs - timestampNs;
+		long monotonicAgeNs = monotonicNs - timestampNs;
+		long ageNs;
+		if (elapsedRealtimeAgeNs >= 0 && (monotonicAgeNs < 0 || elapsedRealtimeAgeNs <= monotonicAgeNs)) {
+			ageNs = elapsedRealtimeAgeNs;
+		} else {
+			ageNs = Math.max(monotonicAgeNs, 0);
+		}
+		return (elapsedRealtimeNs - ageNs) / 1_000_000;
+	}
+
+	/**
+	 * Returns true if the frame captured at {@code captureTimeMs} is past the deadline at {@code
+	 * nowMs} and should be dropped without being converted or processed.
+	 */
+	public synchronized boolean isStale(long captureTimeMs, long nowMs) {
+		if (deadlineMs <= 0 || captureTimeMs <= 0) {
+			return false;
+		}
+		boolean isStale = nowMs - captureTimeMs > deadlineMs;
+		if (isStale) {
+			droppedFrames++;
+		}
+		return isStale;
+	}
+
+	/**
+	 * Records that results for the frame captured at {@code captureTimeMs} are being displayed at
+	 * {@code nowMs}.
+	 */
+	public synchronized void onDisplayed(long captureTimeMs, long nowMs) {
+		if (captureTimeMs <= 0) {
+			return;
+		}
+		long ageMs = nowMs - captureTimeMs;
+		displayedFrames++;
+		totalDisplayAgeMs += ageMs;
+		maxDisplayAgeMs = Math.max(maxDisplayAgeMs, ageMs);
+	}
+
+	public synchronized int getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	public synchronized long getAvgDisplayAgeMs() {
+		return displayedFrames == 0 ? 0 : totalDisplayAgeMs / displayedFrames;
+	}
+
+	public synchronized long getMaxDisplayAgeMs() {
+		return maxDisplayAgeMs;
+	}
+
+	public synchronized void resetStats() {
+		droppedFrames = 0;
+		displayedFrames = 0;
+		totalDisplayAgeMs = 0;
+		maxDisplayAgeMs = 0;
+	}
+}
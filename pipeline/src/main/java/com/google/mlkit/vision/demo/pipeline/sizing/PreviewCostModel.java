@@ -0,0 +1,227 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline.sizing;
+
+import java.util.Locale;
+
+/**
+ * Predicts the processing cost of a preview frame from its size, to pick the largest preview size
+ * that still keeps up with a target frame rate.
+ *
+ * <p>The cost of a frame is the time to convert it for the detector plus the detector latency. Each
+ * is modeled as a fixed part plus a part per megapixel, fitted by least squares over the recorded
+ * frames. While all frames had the same size, only the part per megapixel can be fitted, so the
+ * cost is assumed to grow in proportion to the pixels. Old frames lose weight over time, so the
+ * model follows changes, e.g. of the device's thermal state.
+ *
+ * <p>Not thread-safe.
+ */
+public final class PreviewCostModel {
+
+	/**
+	 * Frames to record before the model is used to select sizes.
+	 */
+	public static final int MIN_TRAINING_FRAMES = 30;
+	// Weight past which all recorded frames count half, which keeps about the last 300 frames.
+	private static final double MAX_WEIGHT = 300;
+	private static final String VERSION = "1";
+
+	private final LinearFit conversion;
+	private final LinearFit detector;
+
+	public PreviewCostModel() {
+		this(new LinearFit(), new LinearFit());
+	}
+
+	private PreviewCostModel(LinearFit conversion, LinearFit detector) {
+		this.conversion = conversion;
+		this.detector = detector;
+	}
+
+	/**
+	 * Returns the time per frame that keeps up with {@code targetFps}.
+	 */
+	public static double getFrameBudgetMs(float targetFps) {
+		return 1000.0 / targetFps;
+	}
+
+	/**
+	 * Records the cost of a frame of {@code pixels} pixels.
+	 */
+	public void addFrame(long pixels, double conversionMs, double detectorMs) {
+		double megapixels = pixels / 1e6;
+		conversion.add(megapixels, conversionMs);
+		detector.add(megapixels, detectorMs);
+	}
+
+	/**
+	 * Returns true once enough frames were recorded for the predictions to be used.
+	 */
+	public boolean isTrained() {
+		return conversion.weight >= MIN_TRAINING_FRAMES;
+	}
+
+	public double predictConversionMs(long pixels) {
+		return conversion.predict(pixels / 1e6);
+	}
+
+	public double predictDetectorMs(long pixels) {
+		return detector.predict(pixels / 1e6);
+	}
+
+	/**
+	 * Returns the predicted processing time of a frame of {@code pixels} pixels.
+	 */
+	public double predictFrameMs(long pixels) {
+		return predictConversionMs(pixels) + predictDetectorMs(pixels);
+	}
+
+	/**
+	 * Returns the index of the largest of {@code pixelCounts} whose predicted frame time is within
+	 * {@code budgetMs}, or of the smallest if none is. Returns -1 if there are no sizes.
+	 */
+	public int selectLargestWithinBudget(long[] pixelCounts, double budgetMs) {
+		int largest = -1;
+		int smallest = -1;
+		for (int i = 0; i < pixelCounts.length; i++) {
+			long pixels = pixelCounts[i];
+			if (smallest == -1 || pixels < pixelCounts[smallest]) {
+				smallest = i;
+			}
+			if (predictFrameMs(pixels) <= budgetMs && (largest == -1 || pixels > pixelCounts[largest])) {
+				largest = i;
+			}
+		}
+		return largest != -1 ? largest : smallest;
+	}
+
+	/**
+	 * Returns the model as a string to persist, which {@link #parse(String)} reads back.
+	 */
+	public String serialize() {
+		return VERSION + ";" + conversion.serialize() + ";" + detector.serialize();
+	}
+
+	/**
+	 * Reads a model written by {@link #serialize()}.
+	 *
+	 * @throws IllegalArgumentException if {@code serialized} is not a model of this version
+	 */
+	public static PreviewCostModel parse(String serialized) {
+		String[] parts = serialized.split(";");
+		if (parts.length != 3 || !parts[0].equals(VERSION)) {
+			throw new IllegalArgumentException("Unknown preview cost model: " + serialized);
+		}
+		return new PreviewCostModel(LinearFit.parse(parts[1]), LinearFit.parse(parts[2]));
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				Locale.US,
+				"conversion %s, detector %s, frames %.0f",
+				conversion,
+				detector,
+				conversion.weight);
+	}
+
+	/**
+	 * Weighted least squares fit of {@code y = intercept + slope * x}.
+	 */
+	private static final class LinearFit {
+
+		double weight;
+		double sumX;
+		double sumY;
+		double sumXX;
+		double sumXY;
+
+		void add(double x, double y) {
+			if (weight >= MAX_WEIGHT) {
+				weight /= 2;
+				sumX /= 2;
+				sumY /= 2;
+				sumXX /= 2;
+				sumXY /= 2;
+			}
+			weight++;
+			sumX += x;
+			sumY += y;
+			sumXX += x * x;
+			sumXY += x * y;
+		}
+
+		double predict(double x) {
+			if (weight == 0) {
+				return 0;
+			}
+			double slope = getSlope();
+			if (Double.isNaN(slope)) {
+				// A single size was recorded: assume the cost is proportional to the pixels.
+				return sumX > 0 ? sumY / sumX * x : sumY / weight;
+			}
+			return Math.max(0, (sumY - slope * sumX) / weight + slope * x);
+		}
+
+		/**
+		 * Returns the fitted slope, or NaN if the sizes recorded are too close to fit one, or the
+		 * fit is not increasing.
+		 */
+		double getSlope() {
+			double meanX = sumX / weight;
+			double varianceX = sumXX / weight - meanX * meanX;
+			// Sizes within about 1% of each other do not tell the slope apart from noise.
+			if (varianceX <= 1e-4 * meanX * meanX) {
+				return Double.NaN;
+			}
+			double slope = (sumXY / weight - meanX * sumY / weight) / varianceX;
+			return slope >= 0 ? slope : Double.NaN;
+		}
+
+		String serialize() {
+			return weight + "," + sumX + "," + sumY + "," + sumXX + "," + sumXY;
+		}
+
+		static LinearFit parse(String serialized) {
+			String[] values = serialized.split(",");
+			if (values.length != 5) {
+				throw new IllegalArgumentException("Unknown linear fit: " + serialized);
+			}
+			LinearFit fit = new LinearFit();
+			fit.weight = Double.parseDouble(values[0]);
+			fit.sumX = Double.parseDouble(values[1]);
+			fit.sumY = Double.parseDouble(values[2]);
+			fit.sumXX = Double.parseDouble(values[3]);
+			fit.sumXY = Double.parseDouble(values[4]);
+			return fit;
+		}
+
+		@Override
+		public String toString() {
+			if (weight == 0) {
+				return "unknown";
+			}
+			double slope = getSlope();
+			if (Double.isNaN(slope)) {
+				return String.format(Locale.US, "%.1f ms/MP", sumX > 0 ? sumY / sumX : 0);
+			}
+			return String.format(
+					Locale.US, "%.1f ms + %.1f ms/MP", Math.max(0, (sumY - slope * sumX) / weight), slope);
+		}
+	}
+}
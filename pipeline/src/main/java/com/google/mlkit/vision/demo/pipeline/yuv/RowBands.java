@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline.yuv;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the image kernels of {@link YuvKernels} in bands of rows on a pool shared by all callers.
+ *
+ * <p>The pool has one thread per core unless set otherwise with {@link #setParallelism(int)}, e.g.
+ * to measure how the kernels scale. Images with fewer than {@link #MIN_PARALLEL_PIXELS} pixels, and
+ * all images at a parallelism of 1, are processed on the calling thread, since forking costs more
+ * than it saves for them. Band boundaries are always even rows, so a band
+ * never splits the pair of rows that share a row of subsampled chroma values.
+ */
+public final class RowBands {
+
+	/**
+	 * Images below this size stay on the calling thread.
+	 */
+	public static final int MIN_PARALLEL_PIXELS = 320 * 240;
+	private static final int MIN_BAND_ROWS = 16;
+
+	// Not ForkJoinPool.commonPool(), which requires API level 24.
+	private static volatile ForkJoinPool pool = new ForkJoinPool(getDefaultParallelism());
+
+	private RowBands() {
+	}
+
+	/**
+	 * Returns the parallelism used unless set otherwise, the number of cores.
+	 */
+	public static int getDefaultParallelism() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	public static int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Sets the number of threads images are processed on; 1 processes them serially on the calling
+	 * thread. Must not be called while images are processed, since the previous pool is shut down.
+	 */
+	public static synchronized void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+		}
+		ForkJoinPool previous = pool;
+		if (previous.getParallelism() == parallelism) {
+			return;
+		}
+		pool = new ForkJoinPool(parallelism);
+		previous.shutdown();
+	}
+
+	/**
+	 * Processes the rows of a source image.
+	 */
+	public interface RowKernel {
+		/**
+		 * Processes the rows {@code startRow} (inclusive) to {@code endRow} (exclusive). Called
+		 * concurrently for disjoint ranges.
+		 */
+		void processRows(int startRow, int endRow);
+	}
+
+	/**
+	 * Runs {@code kernel} over {@code rows} rows of {@code rowPixels} pixels each and returns once all
+	 * rows are done.
+	 */
+	public static void run(int rows, int rowPixels, RowKernel kernel) {
+		ForkJoinPool pool = RowBands.pool;
+		int parallelism = pool.getParallelism();
+		if (parallelism < 2 || (long) rows * rowPixels < MIN_PARALLEL_PIXELS) {
+			kernel.processRows(0, rows);
+			return;
+		}
+		// Two bands per thread, so a thread that gets descheduled does not hold up the whole image.
+		int bandRows = Math.max(MIN_BAND_ROWS, rows / (parallelism * 2));
+		bandRows = (bandRows + 1) & ~1;
+		pool.invoke(new Band(kernel, 0, rows, bandRows));
+	}
+
+	private static class Band extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final RowKernel kernel;
+		private final int startRow;
+		private final int endRow;
+		private final int bandRows;
+
+		Band(RowKernel kernel, int startRow, int endRow, int bandRows) {
+			this.kernel = kernel;
+			this.startRow = startRow;
+			this.endRow = endRow;
+			this.bandRows = bandRows;
+		}
+
+		@Override
+		protected void compute() {
+			int rows = endRow - startRow;
+			if (rows <= bandRows) {
+				kernel.processRows(startRow, endRow);
+				return;
+			}
+			// Split on a band boundary, which keeps all boundaries even.
+			int splitRow = startRow + Math.max(1, rows / 2 / bandRows) * bandRows;
+			invokeAll(
+					new Band(kernel, startRow, splitRow, bandRows),
+					new Band(kernel, splitRow, endRow, bandRows));
+		}
+	}
+}
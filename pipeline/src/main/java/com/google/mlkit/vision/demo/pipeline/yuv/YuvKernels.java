@@ -0,0 +1,389 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline.yuv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversion and repacking kernels for YUV camera frames. They only depend on the JDK, so they can
+ * be benchmarked on any JVM, see the {@code jmh} source set of this module.
+ *
+ * <p>Large images are processed in parallel bands of rows, see {@link RowBands}.
+ */
+public final class YuvKernels {
+
+	private YuvKernels() {
+	}
+
+	/**
+	 * Converts an NV21 image to ARGB_8888 pixels, rotating it clockwise by {@code rotationDegrees}
+	 * (one of 0, 90, 180 or 270) and then mirroring it horizontally if {@code mirror} is set, all in
+	 * one pass.
+	 *
+	 * <p>Uses the integer BT.601 limited range coefficients of the platform's YUV decoders, so no
+	 * floating point or codec round trip is involved. {@code out} must hold {@code width * height}
+	 * pixels; its rows are {@code height} wide if the image is rotated by 90 or 270 degrees, {@code
+	 * width} wide otherwise.
+	 */
+	public static void nv21ToArgb(
+			byte[] nv21, int offset, int width, int height, int rotationDegrees, boolean mirror, int[] out) {
+		RowBands.run(
+				height,
+				width,
+				(startRow, endRow) ->
+						convertNv21Rows(
+								nv21, offset, width, height, rotationDegrees, mirror, out, startRow, endRow));
+	}
+
+	/**
+	 * Converts the source rows {@code startRow} (inclusive) to {@code endRow} (exclusive), see {@link
+	 * #nv21ToArgb}.
+	 */
+	private static void convertNv21Rows(
+			byte[] nv21,
+			int offset,
+			int width,
+			int height,
+			int rotationDegrees,
+			boolean mirror,
+			int[] out,
+			int startRow,
+			int endRow) {
+		int uvStart = offset + width * height;
+		for (int y = startRow; y < endRow; y++) {
+			// Output index of the first pixel of the row and the distance between neighbours, which
+			// together cover every rotation and mirroring.
+			int outIndex = rotatedIndex(0, y, width, height, rotationDegrees, mirror);
+			int outStep = rotatedIndex(1, y, width, height, rotationDegrees, mirror) - outIndex;
+			int yIndex = offset + y * width;
+			int uvRow = uvStart + (y >> 1) * width;
+			for (int x = 0; x < width; x++, outIndex += outStep) {
+				int uvIndex = uvRow + (x & ~1);
+				out[outIndex] =
+						yuvToArgb(nv21[yIndex + x] & 0xff, nv21[uvIndex + 1] & 0xff, nv21[uvIndex] & 0xff);
+			}
+		}
+	}
+
+	/**
+	 * Returns the index in the rotated and mirrored output of the source pixel at {@code (x, y)}.
+	 */
+	private static int rotatedIndex(
+			int x, int y, int width, int height, int rotationDegrees, boolean mirror) {
+		int outX;
+		int outY;
+		int outWidth;
+		switch (rotationDegrees) {
+			case 90:
+				outX = height - 1 - y;
+				outY = x;
+				outWidth = height;
+				break;
+			case 180:
+				outX = width - 1 - x;
+				outY = height - 1 - y;
+				outWidth = width;
+				break;
+			case 270:
+				outX = y;
+				outY = width - 1 - x;
+				outWidth = height;
+				break;
+			case 0:
+				outX = x;
+				outY = y;
+				outWidth = width;
+				break;
+			default:
+				throw new IllegalArgumentException("Rotation must be 0, 90, 180 or 270: " + rotationDegrees);
+		}
+		if (mirror) {
+			outX = outWidth - 1 - outX;
+		}
+		return outY * outWidth + outX;
+	}
+
+	/**
+	 * Converts one limited range BT.601 YUV pixel to an opaque ARGB color, using fixed point
+	 * coefficients scaled by 1024.
+	 */
+	private static int yuvToArgb(int y, int u, int v) {
+		int luma = 1192 * Math.max(y - 16, 0);
+		u -= 128;
+		v -= 128;
+		int r = clampChannel(luma + 1634 * v);
+		int g = clampChannel(luma - 833 * v - 400 * u);
+		int b = clampChannel(luma + 2066 * u);
+		return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+	}
+
+	/**
+	 * Clamps a channel scaled by 1024 to the 18 bit range the packing in {@link #yuvToArgb} expects.
+	 */
+	private static int clampChannel(int value) {
+		return value < 0 ? 0 : Math.min(value, 262143);
+	}
+
+	/**
+	 * Returns the size of an NV21 image in bytes.
+	 */
+	public static int nv21Size(int width, int height) {
+		int imageSize = width * height;
+		return imageSize + 2 * (imageSize / 4);
+	}
+
+	/**
+	 * Copies the given region of an NV21 image into {@code out}, which must hold at least {@link
+	 * #nv21Size nv21Size(cropWidth, cropHeight)} bytes. The region must start at even coordinates and
+	 * have an even size, since the VU values are shared by 2x2 pixel blocks.
+	 */
+	public static void cropNv21(
+			ByteBuffer nv21,
+			int width,
+			int height,
+			int left,
+			int top,
+			int cropWidth,
+			int cropHeight,
+			byte[] out) {
+		ByteBuffer src = nv21.duplicate();
+
+		// Copy the Y rows.
+		for (int row = 0; row < cropHeight; row++) {
+			src.position((top + row) * width + left);
+			src.get(out, row * cropWidth, cropWidth);
+		}
+		// Copy the interleaved VU rows, one for every two Y rows.
+		int uvStart = width * height;
+		int outUvStart = cropWidth * cropHeight;
+		for (int row = 0; row < cropHeight / 2; row++) {
+			src.position(uvStart + (top / 2 + row) * width + left);
+			src.get(out, outUvStart + row * cropWidth, cropWidth);
+		}
+	}
+
+	/**
+	 * Repacks the three planes of a YUV_420_888 image into NV21 in {@code out}, which must hold at
+	 * least {@link #nv21Size nv21Size(width, height)} bytes. Nothing is allocated per frame.
+	 *
+	 * <p>The NV21 format consists of a single byte array containing the Y, U and V values. For an
+	 * image of size S, the first S positions of the array contain all the Y values. The remaining
+	 * positions contain interleaved V and U values. U and V are subsampled by a factor of 2 in both
+	 * dimensions, so there are S/4 U values and S/4 V values. In summary, the NV21 array will contain
+	 * S Y values followed by S/4 VU values: YYYYYYYYYYYYYY(...)YVUVUVUVU(...)VU
+	 *
+	 * <p>The rows of the planes may be padded to their row stride. They are copied row by row,
+	 * dropping the padding:
+	 *
+	 * <ul>
+	 *   <li>The Y plane is never interleaved, so its rows are bulk copied.
+	 *   <li>If the U and V planes share one buffer in VU order with a pixel stride of 2, their rows
+	 *       already are NV21 rows and are bulk copied too.
+	 *   <li>If the U and V planes have a pixel stride of 1, the U rows are bulk copied and then
+	 *       interleaved with the V values in place.
+	 *   <li>Otherwise, e.g. for UV order, the values are interleaved in a tight loop.
+	 * </ul>
+	 */
+	public static void yuv420ToNv21(
+			ByteBuffer yBuffer,
+			int yRowStride,
+			int yPixelStride,
+			ByteBuffer uBuffer,
+			int uRowStride,
+			int uPixelStride,
+			ByteBuffer vBuffer,
+			int vRowStride,
+			int vPixelStride,
+			int width,
+			int height,
+			byte[] out) {
+		int imageSize = width * height;
+		copyLumaRows(yBuffer, yRowStride, yPixelStride, width, height, out);
+
+		int chromaWidth = width / 2;
+		int chromaHeight = height / 2;
+		if (uPixelStride == 2
+				&& vPixelStride == 2
+				&& uRowStride == vRowStride
+				&& areVUInterleaved(uBuffer, vBuffer)) {
+			copyInterleavedVURows(uBuffer, vBuffer, vRowStride, chromaWidth, chromaHeight, out, imageSize);
+		} else if (uPixelStride == 1 && vPixelStride == 1) {
+			RowBands.run(
+					chromaHeight,
+					chromaWidth,
+					(startRow, endRow) ->
+							interleavePlanarRows(
+									uBuffer,
+									uRowStride,
+									vBuffer,
+									vRowStride,
+									chromaWidth,
+									out,
+									imageSize,
+									startRow,
+									endRow));
+		} else {
+			RowBands.run(
+					chromaHeight,
+					chromaWidth,
+					(startRow, endRow) ->
+							interleaveStridedRows(
+									uBuffer,
+									uRowStride,
+									uPixelStride,
+									vBuffer,
+									vRowStride,
+									vPixelStride,
+									chromaWidth,
+									out,
+									imageSize,
+									startRow,
+									endRow));
+		}
+	}
+
+	/**
+	 * Copies the Y plane to the start of {@code out}, without row padding.
+	 */
+	private static void copyLumaRows(
+			ByteBuffer buffer, int rowStride, int pixelStride, int width, int height, byte[] out) {
+		if (pixelStride == 1 && rowStride == width) {
+			buffer.position(0);
+			buffer.get(out, 0, width * height);
+		} else if (pixelStride == 1) {
+			for (int row = 0; row < height; row++) {
+				buffer.position(row * rowStride);
+				buffer.get(out, row * width, width);
+			}
+		} else {
+			int outputPos = 0;
+			for (int row = 0; row < height; row++) {
+				int inputPos = row * rowStride;
+				for (int col = 0; col < width; col++, inputPos += pixelStride) {
+					out[outputPos++] = buffer.get(inputPos);
+				}
+			}
+		}
+		buffer.rewind();
+	}
+
+	/**
+	 * Copies U and V planes that share one buffer in VU order. Every row of the V buffer holds all V
+	 * and U values of the row but the last U value, which is read from the U buffer.
+	 */
+	private static void copyInterleavedVURows(
+			ByteBuffer uBuffer,
+			ByteBuffer vBuffer,
+			int rowStride,
+			int chromaWidth,
+			int chromaHeight,
+			byte[] out,
+			int offset) {
+		int rowBytes = 2 * chromaWidth;
+		if (rowStride == rowBytes) {
+			vBuffer.position(0);
+			vBuffer.get(out, offset, rowBytes * chromaHeight - 1);
+			out[offset + rowBytes * chromaHeight - 1] = uBuffer.get(rowBytes * chromaHeight - 2);
+		} else {
+			for (int row = 0; row < chromaHeight; row++) {
+				int outputPos = offset + row * rowBytes;
+				vBuffer.position(row * rowStride);
+				vBuffer.get(out, outputPos, rowBytes - 1);
+				out[outputPos + rowBytes - 1] = uBuffer.get(row * rowStride + rowBytes - 2);
+			}
+		}
+		vBuffer.rewind();
+	}
+
+	/**
+	 * Interleaves U and V planes with a pixel stride of 1. Each U row is bulk copied into the upper
+	 * half of its output row, which the forward interleaving only overwrites after reading it.
+	 */
+	private static void interleavePlanarRows(
+			ByteBuffer uPlaneBuffer,
+			int uRowStride,
+			ByteBuffer vBuffer,
+			int vRowStride,
+			int chromaWidth,
+			byte[] out,
+			int offset,
+			int startRow,
+			int endRow) {
+		// Bands run concurrently, so each one positions its own view of the U buffer.
+		ByteBuffer uBuffer = uPlaneBuffer.duplicate();
+		for (int row = startRow; row < endRow; row++) {
+			int outputPos = offset + row * 2 * chromaWidth;
+			uBuffer.position(row * uRowStride);
+			uBuffer.get(out, outputPos + chromaWidth, chromaWidth);
+			int vPos = row * vRowStride;
+			for (int col = 0; col < chromaWidth; col++) {
+				byte u = out[outputPos + chromaWidth + col];
+				out[outputPos + 2 * col] = vBuffer.get(vPos + col);
+				out[outputPos + 2 * col + 1] = u;
+			}
+		}
+	}
+
+	/**
+	 * Interleaves U and V planes of any other layout, e.g. with a pixel stride of 2 in UV order.
+	 */
+	private static void interleaveStridedRows(
+			ByteBuffer uBuffer,
+			int uRowStride,
+			int uPixelStride,
+			ByteBuffer vBuffer,
+			int vRowStride,
+			int vPixelStride,
+			int chromaWidth,
+			byte[] out,
+			int offset,
+			int startRow,
+			int endRow) {
+		for (int row = startRow; row < endRow; row++) {
+			int outputPos = offset + row * 2 * chromaWidth;
+			int uPos = row * uRowStride;
+			int vPos = row * vRowStride;
+			for (int col = 0; col < chromaWidth; col++) {
+				out[outputPos++] = vBuffer.get(vPos);
+				out[outputPos++] = uBuffer.get(uPos);
+				uPos += uPixelStride;
+				vPos += vPixelStride;
+			}
+		}
+	}
+
+	/**
+	 * Checks if the U and V buffers are views of one buffer in VU order, i.e. the U buffer starts one
+	 * byte after the V buffer. Every U byte but the last must equal the V byte after it; this is
+	 * checked on read-only views, since the buffers belong to the camera. Planes that match without
+	 * being views of one buffer are still copied correctly, as their bytes are the same.
+	 */
+	private static boolean areVUInterleaved(ByteBuffer uBuffer, ByteBuffer vBuffer) {
+		int uLimit = uBuffer.limit();
+		if (uLimit < 2 || vBuffer.limit() != uLimit) {
+			return false;
+		}
+		// The first V byte has no U byte before it, and the last U byte no V byte after it.
+		ByteBuffer u = uBuffer.asReadOnlyBuffer();
+		u.position(0);
+		u.limit(uLimit - 1);
+		ByteBuffer v = vBuffer.asReadOnlyBuffer();
+		v.position(1);
+		return v.compareTo(u) == 0;
+	}
+}
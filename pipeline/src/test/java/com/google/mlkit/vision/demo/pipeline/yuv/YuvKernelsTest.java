@@ -0,0 +1,397 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo.pipeline.yuv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares {@link YuvKernels#nv21ToArgb} to a floating point BT.601 reference, and checks that
+ * {@link YuvKernels#yuv420ToNv21} repacks every chroma layout of camera frames into NV21.
+ */
+public class YuvKernelsTest {
+
+	// Channel difference allowed for the fixed point coefficients and truncation of the kernel.
+	private static final int TOLERANCE = 2;
+	// Value of the row padding of camera planes, which must never show up in the output.
+	private static final byte PADDING = 0x55;
+	private static final int[] ROW_PADDINGS = {0, 64};
+
+	@After
+	public void tearDown() {
+		RowBands.setParallelism(RowBands.getDefaultParallelism());
+	}
+
+	@Test
+	public void nv21ToArgb_matchesReference_forAllRotations() {
+		for (int rotation = 0; rotation < 360; rotation += 90) {
+			assertMatchesReference(16, 10, rotation, /* mirror= */ false);
+		}
+	}
+
+	@Test
+	public void nv21ToArgb_matchesReference_forAllRotationsMirrored() {
+		for (int rotation = 0; rotation < 360; rotation += 90) {
+			assertMatchesReference(16, 10, rotation, /* mirror= */ true);
+		}
+	}
+
+	@Test
+	public void nv21ToArgb_matchesReference_inParallelBands() {
+		// Above the parallel threshold, with a height that does not divide into equal bands.
+		assertTrue(642 * 486 >= RowBands.MIN_PARALLEL_PIXELS);
+		RowBands.setParallelism(4);
+		assertMatchesReference(642, 486, 90, /* mirror= */ true);
+		assertMatchesReference(642, 486, 0, /* mirror= */ false);
+	}
+
+	@Test
+	public void nv21ToArgb_parallelBandsMatchSerial() {
+		int width = 642;
+		int height = 486;
+		byte[] nv21 = randomNv21(width, height, 7);
+		int[] serial = new int[width * height];
+		int[] parallel = new int[width * height];
+
+		RowBands.setParallelism(1);
+		YuvKernels.nv21ToArgb(nv21, 0, width, height, 270, /* mirror= */ true, serial);
+		RowBands.setParallelism(4);
+		YuvKernels.nv21ToArgb(nv21, 0, width, height, 270, /* mirror= */ true, parallel);
+
+		assertArrayEquals(serial, parallel);
+	}
+
+	@Test
+	public void nv21ToArgb_readsFromOffset() {
+		int width = 16;
+		int height = 10;
+		byte[] nv21 = randomNv21(width, height, 3);
+		byte[] shifted = new byte[nv21.length + 5];
+		System.arraycopy(nv21, 0, shifted, 5, nv21.length);
+		int[] expected = new int[width * height];
+		int[] actual = new int[width * height];
+
+		YuvKernels.nv21ToArgb(nv21, 0, width, height, 180, /* mirror= */ false, expected);
+		YuvKernels.nv21ToArgb(shifted, 5, width, height, 180, /* mirror= */ false, actual);
+
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void yuv420ToNv21_repacksVuInterleavedPlanes() {
+		for (int rowPadding : ROW_PADDINGS) {
+			assertRepacksRandomImage(16, 10, ChromaLayout.NV21, rowPadding);
+		}
+	}
+
+	@Test
+	public void yuv420ToNv21_repacksUvInterleavedPlanes() {
+		for (int rowPadding : ROW_PADDINGS) {
+			assertRepacksRandomImage(16, 10, ChromaLayout.NV12, rowPadding);
+		}
+	}
+
+	@Test
+	public void yuv420ToNv21_repacksPlanarPlanes() {
+		for (int rowPadding : ROW_PADDINGS) {
+			assertRepacksRandomImage(16, 10, ChromaLayout.I420, rowPadding);
+		}
+	}
+
+	@Test
+	public void yuv420ToNv21_repacksAllLayoutsInParallelBands() {
+		RowBands.setParallelism(4);
+		for (ChromaLayout layout : ChromaLayout.values()) {
+			for (int rowPadding : ROW_PADDINGS) {
+				assertRepacksRandomImage(642, 486, layout, rowPadding);
+			}
+		}
+	}
+
+	@Test
+	public void yuv420ToNv21_repacksUvInterleavedPlanesWithMostlyFlatChroma() {
+		// UV order where only a small region is colored, so that the U and V views of the buffer are
+		// equal almost everywhere when shifted by one byte.
+		int[][] sizes = {{16, 10}, {640, 480}, {642, 486}, {1920, 1080}};
+		for (int[] size : sizes) {
+			int width = size[0];
+			int height = size[1];
+			int chromaWidth = width / 2;
+			int chromaSize = chromaWidth * (height / 2);
+			byte[] y = new byte[width * height];
+			Arrays.fill(y, (byte) 100);
+			byte[] u = new byte[chromaSize];
+			byte[] v = new byte[chromaSize];
+			Arrays.fill(u, (byte) 128);
+			Arrays.fill(v, (byte) 128);
+			for (int row = 1; row < 3; row++) {
+				for (int col = 2; col < 5; col++) {
+					u[row * chromaWidth + col] = (byte) 90;
+					v[row * chromaWidth + col] = (byte) 200;
+				}
+			}
+			for (int rowPadding : ROW_PADDINGS) {
+				assertRepacks(width, height, ChromaLayout.NV12, rowPadding, y, u, v);
+			}
+		}
+	}
+
+	/**
+	 * Chroma layouts of YUV_420_888 camera frames.
+	 */
+	private enum ChromaLayout {
+		// One buffer, V first, pixel stride 2.
+		NV21,
+		// One buffer, U first, pixel stride 2.
+		NV12,
+		// Separate buffers, pixel stride 1.
+		I420
+	}
+
+	private static void assertRepacksRandomImage(
+			int width, int height, ChromaLayout layout, int rowPadding) {
+		Random random = new Random(31 * width + rowPadding);
+		int chromaSize = (width / 2) * (height / 2);
+		byte[] y = new byte[width * height];
+		byte[] u = new byte[chromaSize];
+		byte[] v = new byte[chromaSize];
+		random.nextBytes(y);
+		random.nextBytes(u);
+		random.nextBytes(v);
+		assertRepacks(width, height, layout, rowPadding, y, u, v);
+	}
+
+	/**
+	 * Lays the given tightly packed planes out like a camera frame and checks that they are repacked
+	 * into NV21.
+	 */
+	private static void assertRepacks(
+			int width,
+			int height,
+			ChromaLayout layout,
+			int rowPadding,
+			byte[] y,
+			byte[] u,
+			byte[] v) {
+		int chromaWidth = width / 2;
+		int chromaHeight = height / 2;
+		int yRowStride = width + rowPadding;
+		ByteBuffer yBuffer = ByteBuffer.allocateDirect(yRowStride * (height - 1) + width);
+		for (int row = 0; row < height; row++) {
+			yBuffer.position(row * yRowStride);
+			yBuffer.put(y, row * width, width);
+			fillPadding(yBuffer, rowPadding);
+		}
+		yBuffer.rewind();
+
+		ByteBuffer uBuffer;
+		ByteBuffer vBuffer;
+		int chromaRowStride;
+		int chromaPixelStride;
+		if (layout == ChromaLayout.I420) {
+			chromaPixelStride = 1;
+			chromaRowStride = chromaWidth + rowPadding;
+			uBuffer = ByteBuffer.allocateDirect(chromaRowStride * (chromaHeight - 1) + chromaWidth);
+			vBuffer = ByteBuffer.allocateDirect(uBuffer.capacity());
+			for (int row = 0; row < chromaHeight; row++) {
+				uBuffer.position(row * chromaRowStride);
+				uBuffer.put(u, row * chromaWidth, chromaWidth);
+				fillPadding(uBuffer, rowPadding);
+				vBuffer.position(row * chromaRowStride);
+				vBuffer.put(v, row * chromaWidth, chromaWidth);
+				fillPadding(vBuffer, rowPadding);
+			}
+			uBuffer.rewind();
+			vBuffer.rewind();
+		} else {
+			// Both planes are views of one buffer, one byte apart.
+			boolean isVFirst = layout == ChromaLayout.NV21;
+			chromaPixelStride = 2;
+			chromaRowStride = 2 * chromaWidth + rowPadding;
+			ByteBuffer chroma =
+					ByteBuffer.allocateDirect(chromaRowStride * (chromaHeight - 1) + 2 * chromaWidth);
+			for (int row = 0; row < chromaHeight; row++) {
+				chroma.position(row * chromaRowStride);
+				for (int col = 0; col < chromaWidth; col++) {
+					int index = row * chromaWidth + col;
+					chroma.put(isVFirst ? v[index] : u[index]);
+					chroma.put(isVFirst ? u[index] : v[index]);
+				}
+				fillPadding(chroma, rowPadding);
+			}
+			ByteBuffer first = slice(chroma, 0, chroma.capacity() - 1);
+			ByteBuffer second = slice(chroma, 1, chroma.capacity());
+			vBuffer = isVFirst ? first : second;
+			uBuffer = isVFirst ? second : first;
+		}
+
+		byte[] expected = new byte[YuvKernels.nv21Size(width, height)];
+		System.arraycopy(y, 0, expected, 0, y.length);
+		for (int i = 0; i < u.length; i++) {
+			expected[y.length + 2 * i] = v[i];
+			expected[y.length + 2 * i + 1] = u[i];
+		}
+		byte[] actual = new byte[expected.length];
+		YuvKernels.yuv420ToNv21(
+				yBuffer,
+				yRowStride,
+				/* yPixelStride= */ 1,
+				uBuffer,
+				chromaRowStride,
+				chromaPixelStride,
+				vBuffer,
+				chromaRowStride,
+				chromaPixelStride,
+				width,
+				height,
+				actual);
+
+		String image = width + "x" + height + " " + layout + " with row padding " + rowPadding;
+		assertArrayEquals(image, expected, actual);
+	}
+
+	/**
+	 * Writes the padding after a row, where there is still room for it.
+	 */
+	private static void fillPadding(ByteBuffer buffer, int rowPadding) {
+		for (int i = 0; i < rowPadding && buffer.hasRemaining(); i++) {
+			buffer.put(PADDING);
+		}
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(start);
+		view.limit(end);
+		return view.slice();
+	}
+
+	private static void assertMatchesReference(int width, int height, int rotation, boolean mirror) {
+		byte[] nv21 = randomNv21(width, height, 31 * width + rotation);
+		int[] actual = new int[width * height];
+		YuvKernels.nv21ToArgb(nv21, 0, width, height, rotation, mirror, actual);
+
+		int[] expected = referenceArgb(nv21, width, height);
+		int expectedWidth = width;
+		for (int turns = 0; turns < rotation / 90; turns++) {
+			int expectedHeight = expected.length / expectedWidth;
+			expected = rotateClockwise(expected, expectedWidth, expectedHeight);
+			expectedWidth = expectedHeight;
+		}
+		if (mirror) {
+			expected = mirror(expected, expectedWidth);
+		}
+
+		for (int i = 0; i < expected.length; i++) {
+			if (!channelsWithin(expected[i], actual[i], TOLERANCE)) {
+				fail(
+						String.format(
+								"%dx%d rotated by %d%s: pixel %d is %08x, expected %08x",
+								width,
+								height,
+								rotation,
+								mirror ? " and mirrored" : "",
+								i,
+								actual[i],
+								expected[i]));
+			}
+		}
+	}
+
+	/**
+	 * Returns a random NV21 image with values in the limited range of BT.601.
+	 */
+	private static byte[] randomNv21(int width, int height, long seed) {
+		Random random = new Random(seed);
+		byte[] nv21 = new byte[YuvKernels.nv21Size(width, height)];
+		int imageSize = width * height;
+		for (int i = 0; i < imageSize; i++) {
+			nv21[i] = (byte) (16 + random.nextInt(235 - 16 + 1));
+		}
+		for (int i = imageSize; i < nv21.length; i++) {
+			nv21[i] = (byte) (16 + random.nextInt(240 - 16 + 1));
+		}
+		return nv21;
+	}
+
+	/**
+	 * Converts an NV21 image without rotation, using the floating point BT.601 limited range
+	 * coefficients.
+	 */
+	private static int[] referenceArgb(byte[] nv21, int width, int height) {
+		int[] argb = new int[width * height];
+		int uvStart = width * height;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int uvIndex = uvStart + (y / 2) * width + (x / 2) * 2;
+				double luma = 1.164 * ((nv21[y * width + x] & 0xff) - 16);
+				double v = (nv21[uvIndex] & 0xff) - 128;
+				double u = (nv21[uvIndex + 1] & 0xff) - 128;
+				int r = clamp(luma + 1.596 * v);
+				int g = clamp(luma - 0.813 * v - 0.391 * u);
+				int b = clamp(luma + 2.018 * u);
+				argb[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+			}
+		}
+		return argb;
+	}
+
+	private static int clamp(double channel) {
+		return (int) Math.round(Math.max(0, Math.min(255, channel)));
+	}
+
+	private static int[] rotateClockwise(int[] pixels, int width, int height) {
+		int[] rotated = new int[pixels.length];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				rotated[x * height + (height - 1 - y)] = pixels[y * width + x];
+			}
+		}
+		return rotated;
+	}
+
+	private static int[] mirror(int[] pixels, int width) {
+		int[] mirrored = new int[pixels.length];
+		for (int i = 0; i < pixels.length; i++) {
+			int x = i % width;
+			mirrored[i - x + width - 1 - x] = pixels[i];
+		}
+		return mirrored;
+	}
+
+	private static boolean channelsWithin(int expected, int actual, int tolerance) {
+		if ((actual >>> 24) != 0xff) {
+			return false;
+		}
+		for (int shift = 0; shift < 24; shift += 8) {
+			int difference = ((expected >> shift) & 0xff) - ((actual >> shift) & 0xff);
+			if (Math.abs(difference) > tolerance) {
+				return false;
+			}
+		}
+		return true;
+	}
+}